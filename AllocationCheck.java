@@ -0,0 +1,298 @@
+package main;
+
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Comprobación sin OpenGL (ni ventana ni contexto, así que corre en CI) de que
+ * lo que Main hace en cada paso y en cada cuadro no reserva memoria una vez en
+ * marcha. Cada parte se mide con el contador de bytes por hilo de HotSpot
+ * después de un calentamiento:
+ *
+ * - entrada: teclas y ratón en un {@link InputState} con un reloj simulado,
+ *   {@link FixedTimestep} y cada paso grabado con {@link InputRecorder} en un
+ *   archivo temporal (como Main.pasoFijo).
+ * - reproduccion: la misma grabación con {@link InputReplay} hacia otro
+ *   InputState. Además se comprueba que cada paso ve las mismas teclas y el
+ *   mismo ratón que se grabaron.
+ * - streamer: un {@link ChunkStreamer} cuya cámara avanza sin parar a
+ *   --speed unidades por segundo, un update por cuadro de --frame-ms, con un
+ *   presupuesto de memoria chico para que también descarte chunks. Solo cuenta
+ *   el hilo que llama a update (el de OpenGL en Main), no los que generan.
+ *
+ * Cada parte se mide en --rounds rondas y cuenta la que menos reservó: lo
+ * que reserva el código se repite en todas, lo que reserva la propia JVM de vez
+ * en cuando (al cambiar de nivel de compilación, o el pool al crear una cola de
+ * envío cuando dos hilos chocan) no. Imprime una línea JSON por parte y
+ * termina con código 3 si alguna pasa de --alloc-budget bytes por paso o
+ * cuadro (0 por defecto), o con 1 si la reproducción no coincide con la grabación.
+ *
+ * Uso:
+ *   java main.AllocationCheck [--rounds=3] [--steps=100000] [--warmup=100000]
+ *        [--frames=1000] [--frame-ms=4] [--speed=40] [--alloc-budget=0]
+ */
+public class AllocationCheck {
+
+    private static final int SIM_HZ = 60;
+    private static final long WORLD_LOAD_TIMEOUT_NANOS = 30_000_000_000L;
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = parseArgs(args);
+        int rounds = Math.max(1, intOption(options, "rounds", 3));
+        int steps = intOption(options, "steps", 100_000);
+        // La grabación vacía su búfer de 64 KB cada pocos miles de pasos: el calentamiento incluye varios
+        int warmup = intOption(options, "warmup", 100_000);
+        int frames = intOption(options, "frames", 1000);
+        int frameMs = intOption(options, "frame-ms", 4);
+        int speed = intOption(options, "speed", 40);
+        int allocBudget = intOption(options, "alloc-budget", 0);
+
+        com.sun.management.ThreadMXBean threads = threadMXBean();
+        if (threads == null) {
+            System.err.println("Error: esta JVM no permite medir las asignaciones por hilo.");
+            System.exit(3);
+            return;
+        }
+
+        Path file = Files.createTempFile("entrada", ".inpt");
+        boolean failed = false;
+        try {
+            Entrada entrada = new Entrada(warmup + rounds * steps, rounds + 1);
+            InputRecorder recorder = new InputRecorder(file, 1L, SIM_HZ, Main.FIELD_SIZE, Main.NUM_TREES,
+                    Main.APPLES_PER_TREE);
+            double[] porPaso = new double[rounds];
+            entrada.grabar(recorder, warmup);
+            for (int r = 0; r < rounds; r++) {
+                long start = threads.getCurrentThreadAllocatedBytes();
+                int grabados = entrada.grabar(recorder, steps);
+                porPaso[r] = (threads.getCurrentThreadAllocatedBytes() - start) / (double) grabados;
+            }
+            recorder.finish(entrada.pasos);
+            failed |= informar("entrada", steps, porPaso, allocBudget);
+
+            InputReplay replay = InputReplay.open(file);
+            Reproduccion reproduccion = new Reproduccion(entrada);
+            reproduccion.reproducir(replay, warmup);
+            for (int r = 0; r < rounds; r++) {
+                long start = threads.getCurrentThreadAllocatedBytes();
+                reproduccion.reproducir(replay, steps);
+                porPaso[r] = (threads.getCurrentThreadAllocatedBytes() - start) / (double) steps;
+            }
+            reproduccion.reproducir(replay, entrada.pasos - reproduccion.paso); // los que grabar() hizo de más
+            failed |= informar("reproduccion", steps, porPaso, allocBudget);
+            if (reproduccion.distintos > 0) {
+                System.err.println("Error: " + reproduccion.distintos + " pasos reproducidos no ven la entrada grabada.");
+                System.exit(1);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+
+        ChunkStreamer streamer = new ChunkStreamer(1L, Main.FIELD_SIZE, Main.NUM_TREES, Main.APPLES_PER_TREE,
+                3, 4L * 1024 * 1024);
+        try {
+            Vuelo vuelo = new Vuelo(streamer, speed / 1000.0f * frameMs, frameMs);
+            vuelo.esperarMundo();
+            // El calentamiento cruza chunks y llega a descartar: llena los depósitos de tareas
+            vuelo.volar(frames);
+            double[] porCuadro = new double[rounds];
+            for (int r = 0; r < rounds; r++) {
+                long start = threads.getCurrentThreadAllocatedBytes();
+                vuelo.volar(frames);
+                porCuadro[r] = (threads.getCurrentThreadAllocatedBytes() - start) / (double) frames;
+            }
+            failed |= informar("streamer", frames, porCuadro, allocBudget);
+        } finally {
+            streamer.shutdown();
+        }
+        if (failed) System.exit(3);
+    }
+
+    /** Entrada simulada con un reloj propio: cuadros de 4 a 30 ms, teclas y ratón como en Main. */
+    private static final class Entrada {
+        final InputState estado = new InputState();
+        final FixedTimestep timestep = new FixedTimestep(SIM_HZ);
+        final long[] teclas = new long[InputState.keyWords()];
+        final SplittableRandom rand = new SplittableRandom(42);
+        // Lo que vio cada paso, para comparar con la reproducción
+        final long[] teclasPorPaso;
+        final long[] ratonPorPaso;
+        long pasos = 0;
+        long reloj = 0;
+        float recorrido = 0.0f; // para que el JIT no descarte axis()
+
+        Entrada(int maxPasos, int llamadas) {
+            // Cada llamada a grabar() puede pasarse por los pasos de un cuadro
+            int capacidad = maxPasos + llamadas * FixedTimestep.MAX_STEPS_PER_FRAME;
+            teclasPorPaso = new long[capacidad * teclas.length];
+            ratonPorPaso = new long[capacidad];
+        }
+
+        /** @return los pasos simulados: al menos max (termina el cuadro en curso) */
+        int grabar(InputRecorder recorder, int max) throws IOException {
+            int hechos = 0;
+            while (hechos < max) {
+                reloj += 4_000_000L + rand.nextInt(26_000_000);
+                int n = timestep.advance(reloj);
+
+                // Lo que haría el hilo de AWT entre dos cuadros
+                int key = KeyEvent.VK_A + rand.nextInt(26);
+                if (rand.nextBoolean()) estado.press(key); else estado.release(key);
+                if (rand.nextInt(4) == 0) estado.addMouseDelta(rand.nextInt(41) - 20, rand.nextInt(41) - 20);
+
+                for (int i = 0; i < n; i++) {
+                    long paso = timestep.getTotalSteps() - n + i;
+                    estado.copyKeys(teclas);
+                    recorder.keys(paso, teclas);
+                    long delta = estado.takeMouseDelta();
+                    recorder.mouse(paso, InputState.unpackX(delta), InputState.unpackY(delta));
+                    if (paso % 97 == 0) recorder.click(paso);
+                    recorrido += InputState.axis(teclas, KeyEvent.VK_S, KeyEvent.VK_W) * timestep.getStepSeconds();
+
+                    System.arraycopy(teclas, 0, teclasPorPaso, (int) paso * teclas.length, teclas.length);
+                    ratonPorPaso[(int) paso] = delta;
+                }
+                hechos += n;
+                pasos = timestep.getTotalSteps();
+            }
+            return hechos;
+        }
+    }
+
+    /** Reproduce en lockstep hacia otro InputState y compara cada paso con lo grabado. */
+    private static final class Reproduccion implements InputReplay.Target {
+        final Entrada grabada;
+        final InputState estado = new InputState();
+        final long[] teclas = new long[InputState.keyWords()];
+        long paso = 0;
+        int distintos = 0;
+
+        Reproduccion(Entrada grabada) {
+            this.grabada = grabada;
+        }
+
+        void reproducir(InputReplay replay, long pasos) {
+            for (long i = 0; i < pasos; i++, paso++) {
+                replay.applyInput(paso, this);
+                estado.copyKeys(teclas);
+                long delta = estado.takeMouseDelta();
+                boolean igual = delta == grabada.ratonPorPaso[(int) paso];
+                for (int w = 0; w < teclas.length; w++) {
+                    igual &= teclas[w] == grabada.teclasPorPaso[(int) paso * teclas.length + w];
+                }
+                if (!igual) distintos++;
+            }
+        }
+
+        @Override
+        public void keyPressed(int keyCode) {
+            estado.press(keyCode);
+        }
+
+        @Override
+        public void keyReleased(int keyCode) {
+            estado.release(keyCode);
+        }
+
+        @Override
+        public void mouseDelta(int dx, int dy) {
+            estado.addMouseDelta(dx, dy);
+        }
+
+        @Override
+        public void click() { }
+    }
+
+    /** Cámara que avanza en línea recta sobre el streamer, un update por cuadro. */
+    private static final class Vuelo {
+        final ChunkStreamer streamer;
+        final float avancePorCuadro;
+        final long cuadroNanos;
+        float x = 0.0f;
+        long arboles = 0; // para que el JIT no descarte el recorrido
+
+        Vuelo(ChunkStreamer streamer, float avancePorCuadro, int cuadroMs) {
+            this.streamer = streamer;
+            this.avancePorCuadro = avancePorCuadro;
+            this.cuadroNanos = cuadroMs * 1_000_000L;
+        }
+
+        void esperarMundo() {
+            long deadline = System.nanoTime() + WORLD_LOAD_TIMEOUT_NANOS;
+            do {
+                streamer.update(x, 0.0f);
+                LockSupport.parkNanos(cuadroNanos);
+            } while ((streamer.getPendingCount() > 0 || streamer.getLoadedCount() == 0) && System.nanoTime() < deadline);
+        }
+
+        void volar(int cuadros) {
+            for (int i = 0; i < cuadros; i++) {
+                x += avancePorCuadro;
+                streamer.update(x, 0.0f);
+                // Lo que Main lee de la lista activa en cada cuadro
+                for (int c = 0; c < streamer.getActiveChunks().size(); c++) {
+                    arboles += streamer.getActiveChunks().get(c).treeCount;
+                }
+                if (streamer.findActive(streamer.chunkCoord(x), 0) == null) arboles--;
+                LockSupport.parkNanos(cuadroNanos);
+            }
+        }
+    }
+
+    /** Imprime la línea de una parte. @return true si la ronda que menos reservó pasa del límite */
+    private static boolean informar(String parte, int pasos, double[] porPaso, int allocBudget) {
+        double min = Double.MAX_VALUE, max = 0.0;
+        for (double bytes : porPaso) {
+            min = Math.min(min, bytes);
+            max = Math.max(max, bytes);
+        }
+        System.out.println(String.format(Locale.ROOT, "{\"check\":\"%s\",\"rounds\":%d,\"steps\":%d,"
+                + "\"alloc_bytes_per_step\":%.3f,\"max_alloc_bytes_per_step\":%.3f}", parte, porPaso.length, pasos, min, max));
+        if (min <= allocBudget) return false;
+        System.err.printf(Locale.ROOT, "Error: %s reservó %.3f bytes por paso (límite %d).%n", parte, min, allocBudget);
+        return true;
+    }
+
+    /** Bean de HotSpot con el contador de bytes reservados por hilo, o null si la JVM no lo ofrece. */
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported()) return null;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                System.err.println("Argumento ignorado: " + arg);
+                continue;
+            }
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+
+    private static int intOption(Map<String, String> options, String key, int defaultValue) {
+        String value = options.get(key);
+        if (value == null) return defaultValue;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Valor no válido para --" + key + ": " + value);
+            System.exit(2);
+            return defaultValue;
+        }
+    }
+}
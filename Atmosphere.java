@@ -0,0 +1,152 @@
+package main;
+
+import java.util.Arrays;
+
+/**
+ * Curvas del ciclo día/noche horneadas en una tabla indexada por el ángulo del
+ * sol (0 = mediodía, 90 = atardecer, 180 = medianoche, 270 = amanecer; la
+ * altura del sol es cos(ángulo)). Cada fila guarda el color del cielo, la luz
+ * ambiente y difusa, la opacidad de las estrellas y la dirección del sol, así
+ * que el costo por cuadro es leer e interpolar dos filas, sin trigonometría.
+ *
+ * Cada escena arma su paleta con gradientes de varias paradas ({@link Gradient});
+ * las bandas de amanecer y atardecer son simplemente paradas cerca de 90 y 270.
+ * Los mismos colores del cielo se pueden subir como textura 1D para usarlos
+ * desde la GPU (ver {@link AtmosphereTexture}).
+ */
+public final class Atmosphere {
+
+    /** Filas de la tabla por vuelta completa (unos 0.35 grados por fila). */
+    public static final int SIZE = 1024;
+
+    // Columnas de cada fila
+    private static final int SKY = 0, AMBIENT = 3, DIFFUSE = 6, STARS = 9, SUN_COS = 10, SUN_SIN = 11;
+    private static final int STRIDE = 12;
+
+    private final float[] table = new float[(SIZE + 1) * STRIDE]; // la última fila repite la primera
+
+    /**
+     * Gradiente de color con paradas en grados. Entre paradas se interpola en
+     * línea recta y después de la última se vuelve a la primera (el ciclo es cerrado).
+     */
+    public static final class Gradient {
+        private float[] stops = new float[4 * 8]; // ángulo, r, g, b
+        private int count = 0;
+
+        /** Agrega una parada; los ángulos deben ir en orden creciente dentro de [0, 360). */
+        public Gradient stop(float degrees, float r, float g, float b) {
+            if (count > 0 && degrees <= stops[(count - 1) * 4]) {
+                throw new IllegalArgumentException("Paradas fuera de orden: " + degrees);
+            }
+            if (count * 4 == stops.length) stops = Arrays.copyOf(stops, stops.length * 2);
+            stops[count * 4] = degrees;
+            stops[count * 4 + 1] = r;
+            stops[count * 4 + 2] = g;
+            stops[count * 4 + 3] = b;
+            count++;
+            return this;
+        }
+
+        /**
+         * Mezcla de día a noche según la altura del sol, (cos(ángulo) + 1) / 2, con
+         * una parada cada 30 grados: la curva que antes se calculaba cada cuadro.
+         */
+        public static Gradient dayNight(float dayR, float dayG, float dayB, float nightR, float nightG, float nightB) {
+            Gradient gradient = new Gradient();
+            for (int degrees = 0; degrees < 360; degrees += 30) {
+                float day = (float) (Math.cos(Math.toRadians(degrees)) + 1.0) / 2.0f;
+                gradient.stop(degrees, nightR + (dayR - nightR) * day, nightG + (dayG - nightG) * day,
+                        nightB + (dayB - nightB) * day);
+            }
+            return gradient;
+        }
+
+        /** Parada de un solo valor (r = g = b), p. ej. para la opacidad de las estrellas. */
+        public Gradient stop(float degrees, float value) {
+            return stop(degrees, value, value, value);
+        }
+
+        void sample(float degrees, float[] out, int offset) {
+            if (count == 0) throw new IllegalStateException("Gradiente sin paradas");
+            // Parada siguiente; si no hay, la primera de la vuelta siguiente
+            int next = 0;
+            while (next < count && stops[next * 4] <= degrees) next++;
+            int prev = (next + count - 1) % count;
+            next %= count;
+
+            float a0 = stops[prev * 4];
+            float a1 = stops[next * 4];
+            float span = a1 - a0;
+            float d = degrees - a0;
+            if (span <= 0.0f) span += 360.0f;
+            if (d < 0.0f) d += 360.0f;
+            float t = span > 0.0f ? d / span : 0.0f;
+
+            for (int c = 1; c <= 3; c++) {
+                float v0 = stops[prev * 4 + c];
+                float v1 = stops[next * 4 + c];
+                out[offset + c - 1] = v0 + (v1 - v0) * t;
+            }
+        }
+    }
+
+    /** Resultado de una consulta; se reutiliza entre cuadros. */
+    public static final class State {
+        public float skyR, skyG, skyB;
+        /** RGBA listos para glLightfv. */
+        public final float[] ambient = { 0.0f, 0.0f, 0.0f, 1.0f };
+        public final float[] diffuse = { 0.0f, 0.0f, 0.0f, 1.0f };
+        public float starAlpha;
+        /** cos y sin del ángulo del sol: altura y avance de la órbita. */
+        public float sunCos, sunSin;
+    }
+
+    public Atmosphere(Gradient sky, Gradient ambient, Gradient diffuse, Gradient stars) {
+        float[] tmp = new float[3];
+        for (int i = 0; i <= SIZE; i++) {
+            float degrees = (i % SIZE) * 360.0f / SIZE;
+            int row = i * STRIDE;
+            sky.sample(degrees, table, row + SKY);
+            ambient.sample(degrees, table, row + AMBIENT);
+            diffuse.sample(degrees, table, row + DIFFUSE);
+            stars.sample(degrees, tmp, 0);
+            table[row + STARS] = tmp[0];
+            double rad = Math.toRadians(degrees);
+            table[row + SUN_COS] = (float) Math.cos(rad);
+            table[row + SUN_SIN] = (float) Math.sin(rad);
+        }
+    }
+
+    /** Llena out con los valores del ángulo dado (en grados, cualquier vuelta). */
+    public void sample(float degrees, State out) {
+        float f = degrees / 360.0f;
+        f -= (float) Math.floor(f);
+        float pos = f * SIZE;
+        int i = Math.min(SIZE - 1, (int) pos);
+        float t = pos - i;
+        int r0 = i * STRIDE;
+        int r1 = r0 + STRIDE;
+
+        out.skyR = lerp(r0, r1, SKY, t);
+        out.skyG = lerp(r0, r1, SKY + 1, t);
+        out.skyB = lerp(r0, r1, SKY + 2, t);
+        for (int c = 0; c < 3; c++) {
+            out.ambient[c] = lerp(r0, r1, AMBIENT + c, t);
+            out.diffuse[c] = lerp(r0, r1, DIFFUSE + c, t);
+        }
+        out.starAlpha = lerp(r0, r1, STARS, t);
+        out.sunCos = lerp(r0, r1, SUN_COS, t);
+        out.sunSin = lerp(r0, r1, SUN_SIN, t);
+    }
+
+    private float lerp(int row0, int row1, int column, float t) {
+        float a = table[row0 + column];
+        return a + (table[row1 + column] - a) * t;
+    }
+
+    /** Color del cielo de la fila i (0..SIZE-1), para armar la textura. */
+    public float skyR(int i) { return table[i * STRIDE + SKY]; }
+    public float skyG(int i) { return table[i * STRIDE + SKY + 1]; }
+    public float skyB(int i) { return table[i * STRIDE + SKY + 2]; }
+    public float starAlpha(int i) { return table[i * STRIDE + STARS]; }
+}
@@ -0,0 +1,56 @@
+package main;
+
+import com.jogamp.opengl.GL2;
+
+import java.nio.ByteBuffer;
+
+/**
+ * La tabla de {@link Atmosphere} como textura 1D RGBA de {@link Atmosphere#SIZE}
+ * texeles: color del cielo en RGB y opacidad de las estrellas en A. Un shader
+ * la lee con s = ángulo del sol / 360; el filtro lineal interpola entre filas
+ * y GL_REPEAT cierra el ciclo entre 360 y 0.
+ */
+public class AtmosphereTexture {
+
+    private final int[] texture = new int[1];
+
+    private AtmosphereTexture() { }
+
+    /** Crea la textura a partir de la tabla ya horneada. Se llama una sola vez desde init(). */
+    public static AtmosphereTexture upload(GL2 gl, Atmosphere atmosphere) {
+        ByteBuffer texels = ByteBuffer.allocateDirect(Atmosphere.SIZE * 4);
+        for (int i = 0; i < Atmosphere.SIZE; i++) {
+            texels.put(toByte(atmosphere.skyR(i)));
+            texels.put(toByte(atmosphere.skyG(i)));
+            texels.put(toByte(atmosphere.skyB(i)));
+            texels.put(toByte(atmosphere.starAlpha(i)));
+        }
+        texels.flip();
+
+        AtmosphereTexture result = new AtmosphereTexture();
+        gl.glGenTextures(1, result.texture, 0);
+        gl.glBindTexture(GL2.GL_TEXTURE_1D, result.texture[0]);
+        gl.glTexParameteri(GL2.GL_TEXTURE_1D, GL2.GL_TEXTURE_MIN_FILTER, GL2.GL_LINEAR);
+        gl.glTexParameteri(GL2.GL_TEXTURE_1D, GL2.GL_TEXTURE_MAG_FILTER, GL2.GL_LINEAR);
+        gl.glTexParameteri(GL2.GL_TEXTURE_1D, GL2.GL_TEXTURE_WRAP_S, GL2.GL_REPEAT);
+        gl.glTexImage1D(GL2.GL_TEXTURE_1D, 0, GL2.GL_RGBA8, Atmosphere.SIZE, 0,
+                GL2.GL_RGBA, GL2.GL_UNSIGNED_BYTE, texels);
+        gl.glBindTexture(GL2.GL_TEXTURE_1D, 0);
+        return result;
+    }
+
+    private static byte toByte(float value) {
+        return (byte) Math.round(Math.max(0.0f, Math.min(1.0f, value)) * 255.0f);
+    }
+
+    public int getTexture() {
+        return texture[0];
+    }
+
+    public void dispose(GL2 gl) {
+        if (texture[0] != 0) {
+            gl.glDeleteTextures(1, texture, 0);
+            texture[0] = 0;
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package main;
+
+import com.jogamp.opengl.GLAutoDrawable;
+import com.jogamp.opengl.GLCapabilities;
+import com.jogamp.opengl.GLDrawableFactory;
+import com.jogamp.opengl.GLEventListener;
+import com.jogamp.opengl.GLException;
+import com.jogamp.opengl.GLOffscreenAutoDrawable;
+import com.jogamp.opengl.GLProfile;
+
+import java.awt.event.KeyEvent;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Modo benchmark sin ventana: dibuja una escena en un GLAutoDrawable fuera de
+ * pantalla (pbuffer o FBO, lo que elija GLDrawableFactory; funciona con el
+ * rasterizador por software de Mesa) durante N cuadros, sin límite de FPS, e
+ * imprime una línea JSON con FPS y percentiles del tiempo por cuadro.
+ *
+ * También mide los bytes reservados por el hilo de dibujo durante los cuadros
+ * medidos (ThreadMXBean de HotSpot). Con --alloc-gate el proceso termina con
+ * código 3 si pasan de --alloc-budget bytes por cuadro (0 por defecto), para
+ * detectar en CI cualquier asignación nueva en el bucle de dibujo.
+ *
+ * Uso:
+ *   java main.Benchmark --scene=main|flight|stars [--frames=600] [--warmup=120]
+ *        [--width=800] [--height=600] [--trees=30] [--apples=8] [--field=40] [--stars=300]
+ *        [--alloc-gate] [--alloc-budget=0] [--replay=archivo] [--fly[=40]]
+ *
+ * Con --replay (solo escena main) se repite una entrada grabada con
+ * -Dinput.record: semilla y tamaños salen de la grabación y, si no se da
+ * --frames, se miden los pasos que queden después del calentamiento.
+ *
+ * Con --fly (solo escena main, sin --replay) la cámara avanza sin parar a esa
+ * velocidad (unidades por segundo) desde que el mundo inicial está cargado: el
+ * calentamiento y los cuadros medidos cruzan chunks, así la medición y
+ * --alloc-gate incluyen pedir, integrar y soltar chunks. Las asignaciones sin
+ * OpenGL de la simulación y del streamer las comprueba {@link AllocationCheck}.
+ */
+public class Benchmark {
+
+    private static final long WORLD_LOAD_TIMEOUT_NANOS = 30_000_000_000L;
+
+    public static void main(String[] args) {
+        Map<String, String> options = parseArgs(args);
+
+        String scene = options.getOrDefault("scene", "main");
+        int frames = intOption(options, "frames", 600);
+        int fly = "true".equals(options.get("fly")) ? 40 : intOption(options, "fly", 0); // --fly sola es --fly=40
+        // Volando, el calentamiento también llena los depósitos de tareas y VBO del streamer
+        int warmup = intOption(options, "warmup", fly > 0 ? 600 : 120);
+        int width = intOption(options, "width", 800);
+        int height = intOption(options, "height", 600);
+        int trees = intOption(options, "trees", Main.NUM_TREES);
+        int apples = intOption(options, "apples", Main.APPLES_PER_TREE);
+        int field = intOption(options, "field", Main.FIELD_SIZE);
+        int stars = intOption(options, "stars", DynamicFlight2D.STAR_COUNT);
+        boolean allocGate = options.containsKey("alloc-gate");
+        int allocBudget = intOption(options, "alloc-budget", 0);
+
+        GLProfile glp;
+        try {
+            glp = GLProfile.get(GLProfile.GL2);
+        } catch (GLException e) {
+            System.err.println("Error fatal: el benchmark necesita un perfil GL2.");
+            System.exit(1);
+            return;
+        }
+
+        GLCapabilities caps = new GLCapabilities(glp);
+        caps.setOnscreen(false);
+        caps.setDepthBits(16);
+        caps.setSampleBuffers(false);
+
+        GLEventListener listener;
+        switch (scene) {
+            // Sin ritmo adaptativo: siempre a resolución completa para que las corridas sean comparables
+            case "main":
+                if (options.containsKey("replay")) {
+                    if (fly > 0) {
+                        System.err.println("--fly y --replay no se pueden usar juntos: la reproducción ya mueve la cámara");
+                        System.exit(2);
+                        return;
+                    }
+                    System.setProperty("input.replay", options.get("replay"));
+                }
+                if (fly > 0) System.setProperty("camera.speed", Integer.toString(fly));
+                Main main = new Main(caps, trees, apples, field);
+                main.pacer.setAdaptive(false);
+                long pasos = main.pasosReproduccion();
+                if (pasos >= 0 && !options.containsKey("frames")) {
+                    // Un paso por cuadro; el primero se lo lleva el display() que inicializa
+                    frames = (int) Math.max(1, Math.min(Integer.MAX_VALUE, pasos - warmup - 1));
+                }
+                listener = main;
+                break;
+            case "flight":
+                DynamicFlight2D flight = new DynamicFlight2D(caps, stars);
+                flight.pacer.setAdaptive(false);
+                listener = flight;
+                break;
+            case "stars":
+                TwoDStarField starField = new TwoDStarField(caps, stars);
+                starField.pacer.setAdaptive(false);
+                listener = starField;
+                break;
+            default:
+                System.err.println("Escena desconocida: " + scene + " (usar main, flight o stars)");
+                System.exit(2);
+                return;
+        }
+
+        GLOffscreenAutoDrawable drawable = GLDrawableFactory.getFactory(glp)
+                .createOffscreenAutoDrawable(null, caps, null, width, height);
+        drawable.addGLEventListener(listener);
+        FinCuadro finCuadro = new FinCuadro();
+        drawable.addGLEventListener(finCuadro);
+
+        com.sun.management.ThreadMXBean threads = threadMXBean();
+        boolean failed = false;
+        try {
+            // El primer display() dispara init() y reshape()
+            drawable.display();
+            esperarMundo(drawable, listener);
+            if (fly > 0) ((Main) listener).mantenerPulsada(KeyEvent.VK_W);
+
+            for (int i = 0; i < warmup; i++) {
+                drawable.display();
+            }
+
+            long[] frameNanos = new long[frames];
+            long glThread = finCuadro.threadId;
+            long allocStart = threads != null ? threads.getThreadAllocatedBytes(glThread) : -1;
+            long start = System.nanoTime();
+            for (int i = 0; i < frames; i++) {
+                long t0 = System.nanoTime();
+                drawable.display();
+                frameNanos[i] = System.nanoTime() - t0;
+            }
+            long total = System.nanoTime() - start;
+            long allocEnd = threads != null ? threads.getThreadAllocatedBytes(glThread) : -1;
+            double allocPerFrame = allocStart >= 0 && allocEnd >= 0 && frames > 0
+                    ? (allocEnd - allocStart) / (double) frames : -1.0;
+
+            imprimirResultado(scene, width, height, trees, apples, field, stars, fly, frameNanos, total, allocPerFrame);
+
+            if (allocGate) {
+                if (allocPerFrame < 0) {
+                    System.err.println("Error: esta JVM no permite medir las asignaciones por hilo.");
+                    failed = true;
+                } else if (allocPerFrame > allocBudget) {
+                    System.err.printf(Locale.ROOT, "Error: el bucle de dibujo reservó %.1f bytes por cuadro (límite %d).%n",
+                            allocPerFrame, allocBudget);
+                    failed = true;
+                }
+            }
+        } finally {
+            drawable.destroy();
+        }
+        if (failed) System.exit(3);
+    }
+
+    /** glFinish al final de cada cuadro para medir también el trabajo de la GPU; anota el hilo de dibujo. */
+    private static final class FinCuadro implements GLEventListener {
+        volatile long threadId = -1;
+
+        @Override
+        public void init(GLAutoDrawable drawable) {
+            threadId = Thread.currentThread().getId();
+        }
+
+        @Override
+        public void display(GLAutoDrawable drawable) {
+            drawable.getGL().glFinish();
+        }
+
+        @Override
+        public void reshape(GLAutoDrawable drawable, int x, int y, int width, int height) { }
+
+        @Override
+        public void dispose(GLAutoDrawable drawable) { }
+    }
+
+    /** Bean de HotSpot con el contador de bytes reservados por hilo, o null si la JVM no lo ofrece. */
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported()) return null;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    /** En la escena 3D los chunks llegan en segundo plano: se espera a que estén todos. */
+    private static void esperarMundo(GLAutoDrawable drawable, GLEventListener listener) {
+        if (!(listener instanceof Main)) return;
+        Main main = (Main) listener;
+
+        long deadline = System.nanoTime() + WORLD_LOAD_TIMEOUT_NANOS;
+        while (!main.mundoListo() && System.nanoTime() < deadline) {
+            drawable.display();
+        }
+        if (!main.mundoListo()) {
+            System.err.println("Aviso: el mundo no terminó de cargarse antes de medir.");
+        }
+    }
+
+    private static void imprimirResultado(String scene, int width, int height, int trees, int apples, int field,
+                                          int stars, int fly, long[] frameNanos, long totalNanos, double allocPerFrame) {
+        long[] sorted = frameNanos.clone();
+        Arrays.sort(sorted);
+        int n = sorted.length;
+        double fps = n / (totalNanos / 1_000_000_000.0);
+
+        StringBuilder json = new StringBuilder();
+        json.append('{');
+        json.append("\"scene\":\"").append(scene).append('"');
+        json.append(",\"width\":").append(width);
+        json.append(",\"height\":").append(height);
+        if (scene.equals("main")) {
+            json.append(",\"trees\":").append(trees);
+            json.append(",\"apples_per_tree\":").append(apples);
+            json.append(",\"field_size\":").append(field);
+            json.append(",\"fly\":").append(fly);
+        } else {
+            json.append(",\"stars\":").append(stars);
+        }
+        json.append(",\"frames\":").append(n);
+        json.append(String.format(Locale.ROOT, ",\"fps\":%.2f", fps));
+        json.append(String.format(Locale.ROOT, ",\"mean_ms\":%.4f", totalNanos / 1_000_000.0 / Math.max(1, n)));
+        json.append(String.format(Locale.ROOT, ",\"p50_ms\":%.4f", percentile(sorted, 50)));
+        json.append(String.format(Locale.ROOT, ",\"p90_ms\":%.4f", percentile(sorted, 90)));
+        json.append(String.format(Locale.ROOT, ",\"p99_ms\":%.4f", percentile(sorted, 99)));
+        json.append(String.format(Locale.ROOT, ",\"max_ms\":%.4f", n == 0 ? 0.0 : sorted[n - 1] / 1_000_000.0));
+        json.append(String.format(Locale.ROOT, ",\"alloc_bytes_per_frame\":%.1f", allocPerFrame));
+        json.append('}');
+        System.out.println(json);
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0.0;
+        int index = (int) Math.ceil(p / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1_000_000.0;
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                System.err.println("Argumento ignorado: " + arg);
+                continue;
+            }
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                options.put(arg.substring(2), "true");
+            } else {
+                options.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+        }
+        return options;
+    }
+
+    private static int intOption(Map<String, String> options, String key, int defaultValue) {
+        String value = options.get(key);
+        if (value == null) return defaultValue;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            System.err.println("Valor no válido para --" + key + ": " + value);
+            System.exit(2);
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package main;
+
+/**
+ * Jerarquía de cajas envolventes (BVH) sobre primitivas dadas por su caja.
+ * Se construye una sola vez partiendo por la mediana del eje más largo de los
+ * centros, y se guarda aplanada en arreglos (el hijo izquierdo de un nodo
+ * interior es el nodo siguiente), así una consulta no reserva memoria.
+ *
+ * La prueba exacta de cada primitiva la hace quien consulta (p. ej. esfera o
+ * cilindro) a través de {@link Intersector}.
+ *
+ * Las primitivas se pueden quitar una a una: cada nodo cuenta las que siguen
+ * vivas y los subárboles vacíos no se recorren. Las cajas no se encogen.
+ * Consultas y bajas deben hacerse desde un mismo hilo.
+ */
+public final class BoundingVolumeHierarchy {
+
+    /** Prueba exacta de una primitiva contra el rayo. */
+    public interface Intersector {
+        /** Distancia del impacto, o +inf si no hay impacto antes de ray.tMax. */
+        float intersect(int primitive, Ray ray);
+    }
+
+    private static final int MAX_LEAF_SIZE = 4;
+    private static final int MAX_DEPTH = 64;
+
+    private final int primitiveCount;
+    private final int[] order;       // primitivas ordenadas por hoja
+    private final int[] leafOf;      // hoja que contiene cada primitiva
+    private final boolean[] removed;
+
+    // Nodos (estructura de arreglos)
+    private final float[] bounds;    // 6 por nodo: min x, y, z, max x, y, z
+    private final int[] right;       // hijo derecho (interiores) o -1 (hojas)
+    private final int[] first;       // primera posición en order (hojas)
+    private final int[] count;       // primitivas de la hoja
+    private final int[] parent;
+    private final int[] alive;       // primitivas vivas bajo el nodo
+    private int nodeCount = 0;
+
+    private final int[] stack = new int[MAX_DEPTH];
+
+    /**
+     * @param primitiveBounds 6 valores por primitiva: min x, y, z, max x, y, z
+     */
+    public BoundingVolumeHierarchy(float[] primitiveBounds, int primitiveCount) {
+        this.primitiveCount = primitiveCount;
+        this.order = new int[primitiveCount];
+        this.leafOf = new int[primitiveCount];
+        this.removed = new boolean[primitiveCount];
+        for (int i = 0; i < primitiveCount; i++) order[i] = i;
+
+        int maxNodes = Math.max(1, 2 * primitiveCount - 1);
+        this.bounds = new float[maxNodes * 6];
+        this.right = new int[maxNodes];
+        this.first = new int[maxNodes];
+        this.count = new int[maxNodes];
+        this.parent = new int[maxNodes];
+        this.alive = new int[maxNodes];
+
+        float[] centers = new float[primitiveCount * 3];
+        for (int i = 0; i < primitiveCount; i++) {
+            for (int axis = 0; axis < 3; axis++) {
+                centers[i * 3 + axis] = (primitiveBounds[i * 6 + axis] + primitiveBounds[i * 6 + 3 + axis]) * 0.5f;
+            }
+        }
+        construir(primitiveBounds, centers, 0, primitiveCount, -1, 0);
+    }
+
+    private int construir(float[] primitiveBounds, float[] centers, int start, int end, int parentNode, int depth) {
+        int node = nodeCount++;
+        parent[node] = parentNode;
+        alive[node] = end - start;
+
+        // Caja del nodo y de los centros
+        float[] cMin = { Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE };
+        float[] cMax = { -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE };
+        for (int axis = 0; axis < 3; axis++) {
+            bounds[node * 6 + axis] = Float.MAX_VALUE;
+            bounds[node * 6 + 3 + axis] = -Float.MAX_VALUE;
+        }
+        for (int k = start; k < end; k++) {
+            int p = order[k];
+            for (int axis = 0; axis < 3; axis++) {
+                bounds[node * 6 + axis] = Math.min(bounds[node * 6 + axis], primitiveBounds[p * 6 + axis]);
+                bounds[node * 6 + 3 + axis] = Math.max(bounds[node * 6 + 3 + axis], primitiveBounds[p * 6 + 3 + axis]);
+                cMin[axis] = Math.min(cMin[axis], centers[p * 3 + axis]);
+                cMax[axis] = Math.max(cMax[axis], centers[p * 3 + axis]);
+            }
+        }
+
+        int axis = 0;
+        if (cMax[1] - cMin[1] > cMax[axis] - cMin[axis]) axis = 1;
+        if (cMax[2] - cMin[2] > cMax[axis] - cMin[axis]) axis = 2;
+
+        // Hoja: pocas primitivas, todas en el mismo punto o profundidad máxima de la pila
+        if (end - start <= MAX_LEAF_SIZE || cMax[axis] - cMin[axis] <= 0.0f || depth >= MAX_DEPTH - 2) {
+            right[node] = -1;
+            first[node] = start;
+            count[node] = end - start;
+            for (int k = start; k < end; k++) leafOf[order[k]] = node;
+            return node;
+        }
+
+        int mid = (start + end) >>> 1;
+        seleccionar(centers, axis, start, end - 1, mid);
+
+        count[node] = 0;
+        construir(primitiveBounds, centers, start, mid, node, depth + 1); // siempre node + 1
+        right[node] = construir(primitiveBounds, centers, mid, end, node, depth + 1);
+        return node;
+    }
+
+    /** Deja en order[k] el elemento k-ésimo según el eje, con los menores antes (quickselect). */
+    private void seleccionar(float[] centers, int axis, int lo, int hi, int k) {
+        while (lo < hi) {
+            float pivot = centers[order[(lo + hi) >>> 1] * 3 + axis];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (centers[order[i] * 3 + axis] < pivot) i++;
+                while (centers[order[j] * 3 + axis] > pivot) j--;
+                if (i <= j) {
+                    int tmp = order[i];
+                    order[i] = order[j];
+                    order[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) hi = j;
+            else if (k >= i) lo = i;
+            else return;
+        }
+    }
+
+    /**
+     * Primitiva viva más cercana que corta el rayo, o -1. Si hay impacto,
+     * ray.tMax queda en su distancia.
+     */
+    public int raycast(Ray ray, Intersector intersector) {
+        if (nodeCount == 0 || alive[0] == 0) return -1;
+
+        int closest = -1;
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            if (alive[node] == 0 || cajaNodo(ray, node) == Float.POSITIVE_INFINITY) continue;
+
+            if (right[node] < 0) {
+                int end = first[node] + count[node];
+                for (int k = first[node]; k < end; k++) {
+                    int p = order[k];
+                    if (removed[p]) continue;
+                    float t = intersector.intersect(p, ray);
+                    if (t < ray.tMax) {
+                        ray.tMax = t;
+                        closest = p;
+                    }
+                }
+                continue;
+            }
+
+            // El hijo más cercano se recorre primero: acorta tMax antes de mirar el otro
+            int left = node + 1;
+            int rightChild = right[node];
+            float tLeft = cajaNodo(ray, left);
+            float tRight = cajaNodo(ray, rightChild);
+            if (tLeft <= tRight) {
+                if (tRight != Float.POSITIVE_INFINITY) stack[top++] = rightChild;
+                if (tLeft != Float.POSITIVE_INFINITY) stack[top++] = left;
+            } else {
+                if (tLeft != Float.POSITIVE_INFINITY) stack[top++] = left;
+                stack[top++] = rightChild;
+            }
+        }
+        return closest;
+    }
+
+    private float cajaNodo(Ray ray, int node) {
+        int b = node * 6;
+        return ray.intersectBox(bounds[b], bounds[b + 1], bounds[b + 2], bounds[b + 3], bounds[b + 4], bounds[b + 5]);
+    }
+
+    /** Quita una primitiva de las consultas siguientes. @return false si ya estaba quitada. */
+    public boolean remove(int primitive) {
+        if (removed[primitive]) return false;
+        removed[primitive] = true;
+        for (int node = leafOf[primitive]; node >= 0; node = parent[node]) {
+            alive[node]--;
+        }
+        return true;
+    }
+
+    public boolean isRemoved(int primitive) {
+        return removed[primitive];
+    }
+
+    public int getPrimitiveCount() {
+        return primitiveCount;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /** Memoria aproximada de los arreglos, para el presupuesto del LRU. */
+    public long sizeInBytes() {
+        long perPrimitive = 2L * Integer.BYTES + 1;
+        long perNode = 6L * Float.BYTES + 5L * Integer.BYTES;
+        return primitiveCount * perPrimitive + (long) bounds.length / 6 * perNode + MAX_DEPTH * Integer.BYTES;
+    }
+}
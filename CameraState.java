@@ -0,0 +1,43 @@
+package main;
+
+/**
+ * Posición y orientación de la cámara (o de la nave en las demos 2D, que solo
+ * usan x e y).
+ *
+ * Tiene dos usos. La simulación publica una instantánea por paso fijo en un
+ * {@link TripleBuffer}: posición del paso anterior y del actual más la
+ * orientación. El dibujo toma la última instantánea con TripleBuffer.update()
+ * y la interpola en su propia copia con {@link #interpolate}. Así el dibujo
+ * nunca lee las variables de la simulación, y la simulación podría correr en
+ * otro hilo sin cambiar nada de este lado.
+ */
+public final class CameraState {
+
+    public float x, y, z;
+    public float yaw, pitch;
+    public float prevX, prevY, prevZ; // paso anterior (solo en las instantáneas de la simulación)
+
+    /** Instantánea de un paso: posición anterior y actual, orientación actual. */
+    public void setStep(float prevX, float prevY, float prevZ, float x, float y, float z, float yaw, float pitch) {
+        this.prevX = prevX;
+        this.prevY = prevY;
+        this.prevZ = prevZ;
+        this.x = x;
+        this.y = y;
+        this.z = z;
+        this.yaw = yaw;
+        this.pitch = pitch;
+    }
+
+    /** Deja en este objeto la posición de step interpolada en alpha (0: paso anterior, 1: actual). */
+    public void interpolate(CameraState step, float alpha) {
+        x = step.prevX + (step.x - step.prevX) * alpha;
+        y = step.prevY + (step.y - step.prevY) * alpha;
+        z = step.prevZ + (step.z - step.prevZ) * alpha;
+        prevX = x;
+        prevY = y;
+        prevZ = z;
+        yaw = step.yaw;
+        pitch = step.pitch;
+    }
+}
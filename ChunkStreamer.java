@@ -0,0 +1,386 @@
+package main;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Carga los chunks del mundo alrededor de la cámara.
+ *
+ * - Los chunks se generan en un ForkJoinPool y se entregan por una cola al hilo
+ *   de OpenGL, que integra como mucho {@link #MAX_CHUNKS_PER_FRAME} por cuadro.
+ *   Cada chunk reparte a su vez su generación en tareas del mismo pool (ver
+ *   {@link WorldChunk#generate}): con pocos chunks pedidos los hilos que
+ *   sobran roban árboles de los que ya están en marcha.
+ * - Los chunks cargados viven en un {@link LongMap} en orden de acceso (LRU). Los
+ *   que quedan fuera del radio se conservan como caché hasta superar el
+ *   presupuesto de memoria; entonces se descartan empezando por el más antiguo.
+ * - Las manzanas recogidas se recuerdan por chunk, así un chunk descartado y
+ *   regenerado más tarde no las vuelve a mostrar.
+ * - Con un {@link WorldFile} los chunks que cubre se mapean del archivo en vez
+ *   de generarse; los demás se generan como siempre.
+ * - En modo síncrono (reproducción de entrada) update() espera a los chunks
+ *   pedidos y los integra todos, así el mundo no depende de los tiempos.
+ * - Mientras la cámara recorre el mundo el hilo de OpenGL no reserva memoria:
+ *   las claves son long sin envolver y las tareas de carga se reutilizan.
+ *
+ * Todos los métodos públicos, salvo el trabajo de los hilos de fondo, se llaman
+ * desde el hilo de OpenGL.
+ */
+public class ChunkStreamer {
+
+    private static final int MAX_CHUNKS_PER_FRAME = 4;
+
+    private final long worldSeed;
+    private final int chunkSize;
+    private final int treesPerChunk;
+    private final int applesPerTree;
+    private final int radius;
+    private final long memoryBudget;
+    private final WorldFile saved; // null: todo se genera
+
+    private final ForkJoinPool workers;
+    private final LongMap<Carga> pending;
+    // Cargas sacadas de pending que el pool todavía no terminó; después pasan a libres
+    private final List<Carga> terminando;
+    private final ArrayDeque<Carga> libres;
+    private final ConcurrentLinkedQueue<WorldChunk> ready = new ConcurrentLinkedQueue<>();
+    private final LongMap<WorldChunk> loaded = new LongMap<>(64, true);
+    private long loadedBytes = 0;
+    private final LongMap<BitSet> recogidas = new LongMap<>(64, false);
+    // Descartados en el último update
+    private final List<WorldChunk> evicted;
+    // Salieron del radio en el último update, para que quien dibuja devuelva sus VBO
+    private final List<WorldChunk> deactivated;
+
+    // Chunks cargados dentro del radio; se recalcula solo cuando cambia algo
+    private List<WorldChunk> active;
+    private List<WorldChunk> previousActive;
+    private boolean activeDirty = true;
+    private boolean synchronous = false;
+    private int centerX = Integer.MIN_VALUE, centerZ = Integer.MIN_VALUE;
+
+    public ChunkStreamer(long worldSeed, int chunkSize, int treesPerChunk, int applesPerTree,
+                         int radius, long memoryBudget) {
+        this(worldSeed, chunkSize, treesPerChunk, applesPerTree, radius, memoryBudget, null);
+    }
+
+    /** Igual, pero los chunks que estén en saved se leen de ahí (sus parámetros deben coincidir). */
+    public ChunkStreamer(long worldSeed, int chunkSize, int treesPerChunk, int applesPerTree,
+                         int radius, long memoryBudget, WorldFile saved) {
+        this.saved = saved;
+        this.worldSeed = worldSeed;
+        this.chunkSize = chunkSize;
+        this.treesPerChunk = treesPerChunk;
+        this.applesPerTree = applesPerTree;
+        this.radius = radius;
+        this.memoryBudget = memoryBudget;
+        // Todo con lugar para el radio entero desde el principio: no crecen mientras la cámara se mueve
+        int side = 2 * radius + 1;
+        this.pending = new LongMap<>(side * side, false);
+        this.terminando = new ArrayList<>(side * side);
+        this.libres = new ArrayDeque<>(side * side);
+        this.evicted = new ArrayList<>(side * side);
+        this.deactivated = new ArrayList<>(side * side);
+        this.active = new ArrayList<>(side * side);
+        this.previousActive = new ArrayList<>(side * side);
+
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        AtomicInteger counter = new AtomicInteger();
+        // Los hilos de un ForkJoinPool ya son daemon
+        this.workers = new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            t.setName("generador-chunks-" + counter.incrementAndGet());
+            t.setPriority(Thread.NORM_PRIORITY - 1);
+            return t;
+        }, null, false);
+    }
+
+    /**
+     * Pide los chunks que faltan alrededor de (camX, camZ), integra los que ya
+     * están listos y aplica el presupuesto de memoria. Nunca espera a un hilo de fondo.
+     */
+    public void update(float camX, float camZ) {
+        evicted.clear();
+        deactivated.clear();
+        int ccx = chunkCoord(camX);
+        int ccz = chunkCoord(camZ);
+        if (ccx != centerX || ccz != centerZ) {
+            centerX = ccx;
+            centerZ = ccz;
+            solicitarFaltantes();
+            activeDirty = true;
+        }
+
+        if (synchronous) esperarPendientes();
+
+        int max = synchronous ? Integer.MAX_VALUE : MAX_CHUNKS_PER_FRAME;
+        int integrated = 0;
+        WorldChunk chunk;
+        while (integrated < max && (chunk = ready.poll()) != null) {
+            long key = chunk.key();
+            Carga carga = pending.remove(key);
+            if (carga != null) terminando.add(carga);
+            if (loaded.put(key, chunk) == null) {
+                loadedBytes += chunk.sizeInBytes();
+            }
+            restaurarRecogidas(chunk);
+            integrated++;
+            activeDirty = true;
+        }
+        if (!pending.isEmpty()) retirarFallidos();
+        if (!terminando.isEmpty()) reciclarTerminadas();
+
+        if (activeDirty) {
+            recalcularActivos();
+            aplicarPresupuesto();
+            activeDirty = false;
+        }
+    }
+
+    /** Bloquea el hilo de OpenGL hasta que terminen los chunks pedidos (siguen generándose en paralelo). */
+    private void esperarPendientes() {
+        for (int slot = 0; slot < pending.capacity(); slot++) {
+            Carga carga = pending.valueAt(slot);
+            // Si falló, lo avisa y lo retira retirarFallidos()
+            if (carga != null) carga.quietlyJoin();
+        }
+    }
+
+    /**
+     * Quita de pending los chunks cuya carga terminó con una excepción: su chunk
+     * nunca llegará a ready. Se avisa una vez por cada uno y se vuelven a pedir
+     * la próxima vez que la cámara cambie de chunk.
+     */
+    private void retirarFallidos() {
+        for (int slot = 0; slot < pending.capacity(); ) {
+            Carga carga = pending.valueAt(slot);
+            if (carga != null && carga.isCompletedAbnormally()) {
+                System.err.println("Aviso: no se pudo cargar el chunk " + carga.cx + ", " + carga.cz
+                        + ": " + carga.getException());
+                pending.removeAt(slot);
+                terminando.add(carga);
+                continue; // removeAt pudo correr otra entrada a este hueco
+            }
+            slot++;
+        }
+    }
+
+    /** Devuelve a libres las cargas que el pool ya terminó (también las descartadas antes de empezar). */
+    private void reciclarTerminadas() {
+        for (int i = terminando.size() - 1; i >= 0; i--) {
+            Carga carga = terminando.get(i);
+            if (!carga.isDone()) continue;
+            int last = terminando.size() - 1;
+            terminando.set(i, terminando.get(last));
+            terminando.remove(last);
+            carga.reinitialize();
+            libres.push(carga);
+        }
+    }
+
+    /** Con true, update() no vuelve hasta tener integrados todos los chunks del radio. */
+    public void setSynchronous(boolean synchronous) {
+        this.synchronous = synchronous;
+    }
+
+    public int chunkCoord(float world) {
+        return (int) Math.floor((world + chunkSize / 2.0f) / chunkSize);
+    }
+
+    private boolean dentroDelRadio(int cx, int cz) {
+        return Math.abs(cx - centerX) <= radius && Math.abs(cz - centerZ) <= radius;
+    }
+
+    private void solicitarFaltantes() {
+        // Descarta lo que quedó lejos antes de empezar a generarse
+        for (int slot = 0; slot < pending.capacity(); ) {
+            Carga carga = pending.valueAt(slot);
+            if (carga != null && !dentroDelRadio(carga.cx, carga.cz) && carga.descartar()) {
+                pending.removeAt(slot);
+                terminando.add(carga);
+                continue; // removeAt pudo correr otra entrada a este hueco
+            }
+            slot++;
+        }
+
+        // Anillos desde el centro hacia afuera, así lo más cercano llega primero
+        for (int ring = 0; ring <= radius; ring++) {
+            for (int dz = -ring; dz <= ring; dz++) {
+                for (int dx = -ring; dx <= ring; dx++) {
+                    if (Math.max(Math.abs(dx), Math.abs(dz)) != ring) continue;
+                    solicitar(centerX + dx, centerZ + dz);
+                }
+            }
+        }
+    }
+
+    private void solicitar(int cx, int cz) {
+        long key = WorldChunk.key(cx, cz);
+        if (loaded.containsKey(key) || pending.containsKey(key)) return;
+
+        Carga carga = libres.poll();
+        if (carga == null) carga = new Carga();
+        carga.preparar(cx, cz);
+        pending.put(key, carga);
+        workers.execute(carga);
+    }
+
+    /**
+     * Carga de un chunk en el pool. Se reutiliza cuando el pool la terminó, así
+     * pedir un chunk no crea una tarea nueva. Se puede descartar mientras no haya
+     * empezado: como no se saca de la cola del pool, el hilo que la tome la
+     * termina sin hacer nada.
+     */
+    private final class Carga extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private static final int ESPERA = 0, EN_CURSO = 1, DESCARTADA = 2;
+
+        private final AtomicInteger fase = new AtomicInteger();
+        private int cx, cz;
+
+        void preparar(int cx, int cz) {
+            this.cx = cx;
+            this.cz = cz;
+            fase.set(ESPERA);
+        }
+
+        /** @return false si ya empezó (su chunk llegará a ready de todos modos) */
+        boolean descartar() {
+            return fase.compareAndSet(ESPERA, DESCARTADA);
+        }
+
+        @Override
+        protected void compute() {
+            if (!fase.compareAndSet(ESPERA, EN_CURSO)) return;
+            ready.add(cargar(cx, cz));
+        }
+    }
+
+    /** Hilo de fondo: del archivo si lo tiene, si no (o si falla la lectura) se genera. */
+    private WorldChunk cargar(int cx, int cz) {
+        if (saved != null && saved.contains(cx, cz)) {
+            try {
+                return saved.load(cx, cz);
+            } catch (IOException e) {
+                System.err.println("Aviso: no se pudo leer el chunk " + cx + ", " + cz + " del archivo ("
+                        + e.getMessage() + "); se genera.");
+            }
+        }
+        return WorldChunk.generate(worldSeed, cx, cz, chunkSize, treesPerChunk, applesPerTree);
+    }
+
+    private void restaurarRecogidas(WorldChunk chunk) {
+        BitSet apples = recogidas.get(chunk.key());
+        if (apples == null) return;
+        for (int a = apples.nextSetBit(0); a >= 0; a = apples.nextSetBit(a + 1)) {
+            chunk.removeApple(a);
+        }
+    }
+
+    /** Recoge una manzana de un chunk cargado y lo recuerda para cuando se regenere. */
+    public boolean removeApple(WorldChunk chunk, int apple) {
+        if (!chunk.removeApple(apple)) return false;
+        BitSet apples = recogidas.get(chunk.key());
+        if (apples == null) {
+            apples = new BitSet(chunk.treeCount * chunk.applesPerTree);
+            recogidas.put(chunk.key(), apples);
+        }
+        apples.set(apple);
+        return true;
+    }
+
+    private void recalcularActivos() {
+        List<WorldChunk> previous = active;
+        active = previousActive;
+        previousActive = previous;
+        active.clear();
+        for (int dz = -radius; dz <= radius; dz++) {
+            for (int dx = -radius; dx <= radius; dx++) {
+                // get() también marca el chunk como usado recientemente en el LRU
+                WorldChunk chunk = loaded.get(WorldChunk.key(centerX + dx, centerZ + dz));
+                if (chunk != null) active.add(chunk);
+            }
+        }
+        for (int i = 0; i < previous.size(); i++) {
+            WorldChunk chunk = previous.get(i);
+            if (!dentroDelRadio(chunk.cx, chunk.cz)) deactivated.add(chunk);
+        }
+    }
+
+    private void aplicarPresupuesto() {
+        while (loadedBytes > memoryBudget && !loaded.isEmpty()) {
+            int slot = loaded.eldest();
+            WorldChunk chunk = loaded.valueAt(slot);
+            if (dentroDelRadio(chunk.cx, chunk.cz)) {
+                // El resto del mapa se usó más recientemente que este
+                break;
+            }
+            loaded.removeAt(slot);
+            loadedBytes -= chunk.sizeInBytes();
+            evicted.add(chunk);
+        }
+    }
+
+    /** Chunks cargados dentro del radio de la cámara. Se alternan dos listas: pedirla después de cada update. */
+    public List<WorldChunk> getActiveChunks() {
+        return active;
+    }
+
+    /** Chunks que el último update sacó de la caché. La lista se reutiliza entre cuadros. */
+    public List<WorldChunk> getEvictedChunks() {
+        return evicted;
+    }
+
+    /**
+     * Chunks que el último update sacó del radio (pueden seguir en la caché). Un
+     * chunk sale del radio antes de que se lo descarte. La lista se reutiliza entre cuadros.
+     */
+    public List<WorldChunk> getDeactivatedChunks() {
+        return deactivated;
+    }
+
+    /** Chunk activo (cx, cz) o null; recorre la lista activa para no crear claves Long en cada paso. */
+    public WorldChunk findActive(int cx, int cz) {
+        for (int i = 0; i < active.size(); i++) {
+            WorldChunk chunk = active.get(i);
+            if (chunk.cx == cx && chunk.cz == cz) return chunk;
+        }
+        return null;
+    }
+
+    public int getLoadedCount() {
+        return loaded.size();
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public long getLoadedBytes() {
+        return loadedBytes;
+    }
+
+    public int getMaxActiveTrees() {
+        int side = 2 * radius + 1;
+        return side * side * treesPerChunk;
+    }
+
+    public void shutdown() {
+        workers.shutdownNow();
+        try {
+            workers.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
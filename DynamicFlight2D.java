@@ -11,6 +11,8 @@ import com.jogamp.opengl.glu.GLU;
 
 import javax.swing.JFrame;
 import java.awt.Dimension;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.util.Random;
@@ -18,52 +20,86 @@ import java.util.Random;
 public class DynamicFlight2D extends GLCanvas implements GLEventListener, KeyListener {
 
     private static final String TITULO = "Trabajo Final: Vuelo 2D con Ciclo Atmosférico";
-    private static final int FPS = 60;
     private static final int WORLD_SIZE = 100; // Espacio 2D virtual 100x100
     
-    // Variables del jugador
+    // Variables del jugador (solo las toca la simulación)
     private float playerX;
     private float playerY;
-    private final float playerSpeed = 1.0f; // Aumentamos la velocidad para que se sienta más rápido
+    private float prevPlayerX, prevPlayerY; // paso anterior, para interpolar
+    private float velX = 0.0f, velY = 0.0f; // unidades por segundo
+    // La simulación publica la nave de cada paso; el dibujo toma la última y la interpola en jugador
+    private final TripleBuffer<CameraState> nave = new TripleBuffer<>(CameraState::new);
+    private final CameraState jugador = new CameraState();
+    // Teclas pulsadas, escritas por el hilo de AWT
+    private final InputState entrada = new InputState();
+    private final float playerSpeed = 30.0f; // unidades por segundo (antes 1.0 por repetición de tecla)
+    private final float playerAcceleration = 200.0f; // unidades por segundo al cuadrado
     
     // Variables del campo de estrellas
-    private static final int STAR_COUNT = 300;
-    private final float[][] starPositions = new float[STAR_COUNT][3]; // x, y, velocidad
-    private final float starMinSpeed = 0.5f;
-    private final float starMaxSpeed = 1.5f;
+    static final int STAR_COUNT = 300;
+    private static final float STAR_MIN_SPEED = 30.0f; // unidades/segundo (antes 0.5 por cuadro a 60 FPS)
+    private static final float STAR_MAX_SPEED = 90.0f; // antes 1.5 por cuadro a 60 FPS
+    private final StarField stars;
     
     // Variables del ciclo de Amanecer/Anochecer
     private float sunAngle = 270.0f; // Empezamos de noche (Luna alta)
-    private final float sunCycleSpeed = 0.05f; // Velocidad de la transición
+    private float prevSunAngle = 270.0f;
+    private float renderSunAngle = 270.0f; // ángulo interpolado que se dibuja en este cuadro
+    private final float sunCycleSpeed = 3.0f; // Velocidad de la transición, grados por segundo (antes 0.05 por cuadro)
+    private final float[] circuloSolLuna = MeshFactory.crearCirculo(8.0f, 50); // se calcula una sola vez
+    // Cielo, estrellas y posición del sol horneados por ángulo; cada cuadro solo se lee la tabla
+    private final Atmosphere atmosfera = crearAtmosfera();
+    private final Atmosphere.State cielo = new Atmosphere.State();
+    
+    // SIMULACIÓN A PASO FIJO, independiente de los FPS de dibujo
+    private static final int SIM_HZ = 60;
+    private final FixedTimestep timestep = new FixedTimestep(SIM_HZ);
+    private float alpha = 0.0f;
+    
+    // MEDICIÓN POR FASES (F3 muestra/oculta el overlay)
+    private static final int FASE_UPDATE = 0, FASE_DIBUJO = 1;
+    private final FrameProfiler profiler = new FrameProfiler("update", "dibujo");
+    
+    // RITMO: sin resolución dinámica (la escena 2D es barata), solo baja la tasa objetivo si no llega
+    final FramePacer pacer = new FramePacer(FramePacer.Settings.fromSystemProperties());
+    
+    // GRABACIÓN (F9): PBOs en anillo y codificación en hilos de fondo
+    private final FrameCapture captura = new FrameCapture();
     
     private GLU glu; 
     private Random rand;
 
     public DynamicFlight2D(GLCapabilities capabilities) {
+        this(capabilities, STAR_COUNT);
+    }
+    
+    /** Escena con un número de estrellas propio; la usa Benchmark. */
+    DynamicFlight2D(GLCapabilities capabilities, int starCount) {
         super(capabilities);
-        
         this.rand = new Random();
+        this.stars = new StarField(starCount, WORLD_SIZE, STAR_MIN_SPEED, STAR_MAX_SPEED, rand);
+        
         this.playerX = WORLD_SIZE / 2.0f;
         this.playerY = WORLD_SIZE / 2.0f; // Empezamos en el centro
+        this.prevPlayerX = playerX;
+        this.prevPlayerY = playerY;
         
         this.setPreferredSize(new Dimension(800, 600));
         this.addGLEventListener(this);
         
         this.addKeyListener(this);
+        this.addFocusListener(new FocusAdapter() {
+            @Override
+            public void focusLost(FocusEvent e) {
+                // Sin foco no llegan los keyReleased: se sueltan todas las teclas
+                entrada.releaseAll();
+            }
+        });
         this.setFocusable(true);
         
         this.glu = new GLU();
     }
     
-    private void generateStarField() {
-        for (int i = 0; i < STAR_COUNT; i++) {
-            starPositions[i][0] = rand.nextFloat() * WORLD_SIZE; 
-            starPositions[i][1] = rand.nextFloat() * WORLD_SIZE; 
-            // La velocidad simula la profundidad y la sensación de avance
-            starPositions[i][2] = rand.nextFloat() * (starMaxSpeed - starMinSpeed) + starMinSpeed;
-        }
-    }
-
 
     // ============================= GLEventListener Implementación =============================
 
@@ -71,7 +107,10 @@ public class DynamicFlight2D extends GLCanvas implements GLEventListener, KeyLis
     public void init(GLAutoDrawable drawable) {
         GL2 gl = drawable.getGL().getGL2();
         
-        generateStarField();
+        stars.generate();
+        publicarJugador(); // el primer cuadro puede llegar antes del primer paso
+        pacer.init(drawable);
+        pacer.setScalingAvailable(false);
 
         gl.glDisable(GL2.GL_DEPTH_TEST);
         gl.glDisable(GL2.GL_CULL_FACE);
@@ -82,52 +121,73 @@ public class DynamicFlight2D extends GLCanvas implements GLEventListener, KeyLis
     @Override
     public void display(GLAutoDrawable drawable) {
         GL2 gl = drawable.getGL().getGL2();
+        // Los cuadros saltados dejan en pantalla el anterior; la simulación se pone al día en el siguiente
+        if (!pacer.beginFrame()) return;
         
-        // 1. ACTUALIZAR CICLO DÍA/NOCHE
-        sunAngle = (sunAngle + sunCycleSpeed) % 360.0f;
-        float dayFactor = updateColors(gl); // Obtener factor para las estrellas
+        profiler.beginFrame(gl);
+        
+        // 1. SIMULACIÓN A PASO FIJO (ciclo día/noche y estrellas)
+        profiler.begin(gl, FASE_UPDATE);
+        int steps = timestep.advance(System.nanoTime());
+        for (int i = 0; i < steps; i++) {
+            actualizarSimulacion(timestep.getStepSeconds());
+        }
+        alpha = timestep.getAlpha();
+        nave.update();
+        jugador.interpolate(nave.front(), alpha);
+        renderSunAngle = FixedTimestep.lerpAngle(prevSunAngle, sunAngle, alpha);
+        profiler.end(gl, FASE_UPDATE);
+        
+        // 2. DIBUJO (interpolado entre los dos últimos pasos)
+        profiler.begin(gl, FASE_DIBUJO);
+        updateColors(gl);
         
         gl.glLoadIdentity();
         
-        // 2. ANIMACIÓN Y DIBUJO
-        updateStarField();
         dibujarSolLuna(gl);
-        dibujarEstrellas(gl, dayFactor);
+        dibujarEstrellas(gl);
         dibujarJugador(gl);
+        profiler.end(gl, FASE_DIBUJO);
+        
+        profiler.drawOverlay(gl, drawable.getSurfaceHeight());
+        profiler.endFrame();
+        captura.capture(gl, drawable.getSurfaceWidth(), drawable.getSurfaceHeight());
+        pacer.endFrame(drawable);
+    }
+    
+    /** Lee la atmósfera del ángulo actual y pinta el fondo con el color del cielo. */
+    private void updateColors(GL2 gl) {
+        atmosfera.sample(renderSunAngle, cielo);
+        gl.glClearColor(cielo.skyR, cielo.skyG, cielo.skyB, 1.0f);
+        gl.glClear(GL2.GL_COLOR_BUFFER_BIT);
     }
     
     /**
-     * Actualiza el color de fondo (Cielo) y devuelve el factor de iluminación.
-     * @return float Factor de 0.0 (noche profunda) a 1.0 (día brillante).
+     * Paleta del vuelo: noche profunda (0.0, 0.0, 0.1) -> amanecer (0.8, 0.4, 0.1)
+     * -> día (0.3, 0.7, 1.0), con las paradas intermedias de la antigua mezcla por
+     * altura del sol. Las estrellas se desvanecen del todo a menos de 60 grados del mediodía.
      */
-    private float updateColors(GL2 gl) {
-        float angleRad = (float) Math.toRadians(sunAngle);
-        // El factor 0.0 (noche) a 1.0 (día) se basa en la altura del sol (coseno)
-        float dayFactor = (float) (Math.cos(angleRad) + 1.0) / 2.0f; 
-        
-        float r, g, b;
-        
-        // --- Interpolación de Color del Cielo ---
-        // Noche Profunda (0.0, 0.0, 0.1) -> Amanecer (0.8, 0.4, 0.1) -> Día (0.3, 0.7, 1.0)
-        
-        if (dayFactor < 0.5f) { 
-            // Noche a Amanecer
-            float f = dayFactor * 2.0f; 
-            r = 0.0f * (1.0f - f) + 0.8f * f;
-            g = 0.0f * (1.0f - f) + 0.4f * f;
-            b = 0.1f * (1.0f - f) + 0.1f * f;
-        } else { 
-            // Amanecer a Día
-            float f = (dayFactor - 0.5f) * 2.0f; 
-            r = 0.8f * (1.0f - f) + 0.3f * f;
-            g = 0.4f * (1.0f - f) + 0.7f * f;
-            b = 0.1f * (1.0f - f) + 1.0f * f;
-        }
-
-        gl.glClearColor(r, g, b, 1.0f);
-        gl.glClear(GL2.GL_COLOR_BUFFER_BIT);
-        
-        return dayFactor;
+    private static Atmosphere crearAtmosfera() {
+        Atmosphere.Gradient sky = new Atmosphere.Gradient()
+                .stop(0.0f, 0.30f, 0.70f, 1.00f)     // día
+                .stop(45.0f, 0.45f, 0.61f, 0.74f)
+                .stop(90.0f, 0.80f, 0.40f, 0.10f)    // atardecer
+                .stop(135.0f, 0.23f, 0.12f, 0.10f)
+                .stop(180.0f, 0.00f, 0.00f, 0.10f)   // noche profunda
+                .stop(225.0f, 0.23f, 0.12f, 0.10f)
+                .stop(270.0f, 0.80f, 0.40f, 0.10f)   // amanecer
+                .stop(315.0f, 0.45f, 0.61f, 0.74f);
+        Atmosphere.Gradient stars = new Atmosphere.Gradient()
+                .stop(0.0f, 0.0f)
+                .stop(30.0f, 0.27f)
+                .stop(45.0f, 0.59f)
+                .stop(60.0f, 1.0f)
+                .stop(300.0f, 1.0f)
+                .stop(315.0f, 0.59f)
+                .stop(330.0f, 0.27f);
+        // La escena 2D no usa iluminación
+        Atmosphere.Gradient sinLuz = new Atmosphere.Gradient().stop(0.0f, 1.0f);
+        return new Atmosphere(sky, sinLuz, sinLuz, stars);
     }
     
     @Override
@@ -146,33 +206,29 @@ public class DynamicFlight2D extends GLCanvas implements GLEventListener, KeyLis
     }
     
     @Override
-    public void dispose(GLAutoDrawable drawable) { /* Limpieza */ }
+    public void dispose(GLAutoDrawable drawable) {
+        GL2 gl = drawable.getGL().getGL2();
+        captura.dispose(gl);
+        profiler.dispose(gl);
+    }
 
 
     // ============================= MÉTODOS DE ANIMACIÓN Y DIBUJO =============================
 
-    private void updateStarField() {
-        // La velocidad de las estrellas está ligada a su variable [2]
-        for (int i = 0; i < STAR_COUNT; i++) {
-            // Mover la estrella hacia abajo (simulando avance)
-            starPositions[i][1] -= starPositions[i][2]; 
-            
-            // Si la estrella sale por la parte inferior, resetearla
-            if (starPositions[i][1] < 0.0f) {
-                starPositions[i][1] = WORLD_SIZE;
-                starPositions[i][0] = rand.nextFloat() * WORLD_SIZE;
-            }
-        }
+    /** Un paso fijo de simulación de dt segundos. */
+    private void actualizarSimulacion(float dt) {
+        prevSunAngle = sunAngle;
+        sunAngle = (sunAngle + sunCycleSpeed * dt) % 360.0f;
+        stars.update(dt);
+        moverJugador(dt);
     }
 
     private void dibujarSolLuna(GL2 gl) {
-        float angleRad = (float) Math.toRadians(sunAngle);
-        float radius = 8.0f;
         float orbitRadius = WORLD_SIZE * 0.9f;
         
         // Calcula la posición circular del Sol/Luna alrededor del centro de la pantalla
-        float objX = WORLD_SIZE / 2.0f + (float) (orbitRadius * Math.sin(angleRad)); 
-        float objY = WORLD_SIZE / 2.0f + (float) (orbitRadius * Math.cos(angleRad)); 
+        float objX = WORLD_SIZE / 2.0f + orbitRadius * cielo.sunSin; 
+        float objY = WORLD_SIZE / 2.0f + orbitRadius * cielo.sunCos; 
         
         gl.glPushMatrix();
         gl.glTranslatef(objX, objY, 0.0f);
@@ -189,23 +245,17 @@ public class DynamicFlight2D extends GLCanvas implements GLEventListener, KeyLis
         // Dibujar círculo simple (Polígono de muchos lados)
         gl.glBegin(GL2.GL_TRIANGLE_FAN);
             gl.glVertex2f(0.0f, 0.0f); // Centro
-            int segments = 50;
-            for (int i = 0; i <= segments; i++) {
-                float currentAngle = (float) (2.0 * Math.PI * i / segments);
-                gl.glVertex2f((float) Math.cos(currentAngle) * radius, 
-                              (float) Math.sin(currentAngle) * radius);
+            for (int i = 0; i < circuloSolLuna.length; i += 2) {
+                gl.glVertex2f(circuloSolLuna[i], circuloSolLuna[i + 1]);
             }
         gl.glEnd();
         
         gl.glPopMatrix();
     }
 
-    private void dibujarEstrellas(GL2 gl, float dayFactor) {
-        // La opacidad de las estrellas disminuye a medida que el día avanza (dayFactor -> 1.0)
-        float starAlpha = 1.0f - dayFactor; 
-        
-        // Multiplicamos por 4 para acelerar el desvanecimiento y que desaparezcan completamente rápido.
-        starAlpha = Math.max(0.0f, starAlpha * 4.0f); 
+    private void dibujarEstrellas(GL2 gl) {
+        // La opacidad de las estrellas disminuye a medida que el día avanza (ver crearAtmosfera)
+        float starAlpha = cielo.starAlpha;
         
         if (starAlpha < 0.01f) return; 
 
@@ -213,25 +263,65 @@ public class DynamicFlight2D extends GLCanvas implements GLEventListener, KeyLis
         
         gl.glBegin(GL2.GL_POINTS);
         
-        for (int i = 0; i < STAR_COUNT; i++) {
-            float speed = starPositions[i][2];
-            
+        for (int i = 0; i < stars.getCount(); i++) {
             // Brillo base: estrellas más rápidas/cercanas son más brillantes
-            float baseBrightness = (speed - starMinSpeed) / (starMaxSpeed - starMinSpeed) * 0.5f + 0.5f;
+            float baseBrightness = stars.getBrightness(i) * 0.5f + 0.5f;
             
             // Aplicar el desvanecimiento de la noche (starAlpha)
             float finalColor = baseBrightness * starAlpha;
             
             gl.glColor3f(finalColor, finalColor, finalColor);
-            gl.glVertex2f(starPositions[i][0], starPositions[i][1]);
+            gl.glVertex2f(stars.getX(i), stars.getY(i, alpha));
         }
         
         gl.glEnd();
     }
     
+    /**
+     * Mueve la nave con las teclas pulsadas en este paso (W, S, A, D, también en
+     * diagonal): la velocidad se acerca a la deseada con aceleración limitada.
+     */
+    private void moverJugador(float dt) {
+        prevPlayerX = playerX;
+        prevPlayerY = playerY;
+        
+        float wishX = entrada.axis(KeyEvent.VK_A, KeyEvent.VK_D);
+        float wishY = entrada.axis(KeyEvent.VK_S, KeyEvent.VK_W);
+        float length = (float) Math.sqrt(wishX * wishX + wishY * wishY);
+        if (length > 0.0f) {
+            wishX *= playerSpeed / length;
+            wishY *= playerSpeed / length;
+        }
+        
+        float maxDelta = playerAcceleration * dt;
+        velX = acercar(velX, wishX, maxDelta);
+        velY = acercar(velY, wishY, maxDelta);
+        
+        // Limitar movimiento dentro de la pantalla (con un pequeño margen); contra el borde se detiene
+        float margin = 2.0f;
+        float newX = playerX + velX * dt;
+        float newY = playerY + velY * dt;
+        if (newX < margin || newX > WORLD_SIZE - margin) velX = 0.0f;
+        if (newY < margin || newY > WORLD_SIZE - margin) velY = 0.0f;
+        playerX = Math.max(margin, Math.min(newX, WORLD_SIZE - margin));
+        playerY = Math.max(margin, Math.min(newY, WORLD_SIZE - margin));
+        publicarJugador();
+    }
+    
+    private static float acercar(float actual, float objetivo, float maxDelta) {
+        if (actual < objetivo) return Math.min(actual + maxDelta, objetivo);
+        return Math.max(actual - maxDelta, objetivo);
+    }
+    
+    /** Publica la nave del paso (anterior y actual) para el dibujo. */
+    private void publicarJugador() {
+        nave.back().setStep(prevPlayerX, prevPlayerY, 0.0f, playerX, playerY, 0.0f, 0.0f, 0.0f);
+        nave.publish();
+    }
+    
     private void dibujarJugador(GL2 gl) {
         gl.glPushMatrix();
-        gl.glTranslatef(playerX, playerY, 0.0f); 
+        gl.glTranslatef(jugador.x, jugador.y, 0.0f); 
 
         // Color del jugador (Azul/Cian brillante)
         gl.glColor3f(0.0f, 0.7f, 1.0f); 
@@ -252,31 +342,23 @@ public class DynamicFlight2D extends GLCanvas implements GLEventListener, KeyLis
     
     @Override
     public void keyPressed(KeyEvent e) {
-        float newX = playerX;
-        float newY = playerY;
-
-        // El movimiento ahora es más dinámico (W, S, A, D)
-        if (e.getKeyCode() == KeyEvent.VK_W) {
-            newY += playerSpeed;
-        } 
-        else if (e.getKeyCode() == KeyEvent.VK_S) {
-            newY -= playerSpeed;
-        }
-        else if (e.getKeyCode() == KeyEvent.VK_A) { 
-            newX -= playerSpeed;
+        // El movimiento lo integra la simulación con las teclas que estén pulsadas
+        entrada.press(e.getKeyCode());
+        
+        // Overlay de tiempos por fase
+        if (e.getKeyCode() == KeyEvent.VK_F3) {
+            profiler.toggleOverlay();
         }
-        else if (e.getKeyCode() == KeyEvent.VK_D) { 
-            newX += playerSpeed;
+        // Grabación de la ventana (ver FrameCapture)
+        if (e.getKeyCode() == KeyEvent.VK_F9) {
+            captura.toggle();
         }
-        
-        // Limitar movimiento dentro de la pantalla (con un pequeño margen)
-        float margin = 2.0f;
-        playerX = Math.max(margin, Math.min(newX, WORLD_SIZE - margin));
-        playerY = Math.max(margin, Math.min(newY, WORLD_SIZE - margin));
     }
 
     @Override
-    public void keyReleased(KeyEvent e) { /* No usado */ }
+    public void keyReleased(KeyEvent e) {
+        entrada.release(e.getKeyCode());
+    }
     
     @Override
     public void keyTyped(KeyEvent e) { /* No usado */ }
@@ -304,7 +386,7 @@ public class DynamicFlight2D extends GLCanvas implements GLEventListener, KeyLis
         JFrame frame = new JFrame(TITULO);
         frame.getContentPane().add(canvas);
         
-        final FPSAnimator animator = new FPSAnimator(canvas, FPS, true);
+        final FPSAnimator animator = new FPSAnimator(canvas, canvas.pacer.getMaxFps(), true);
 
         frame.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE); 
         frame.pack(); 
@@ -317,6 +399,8 @@ public class DynamicFlight2D extends GLCanvas implements GLEventListener, KeyLis
             public void windowClosing(java.awt.event.WindowEvent windowEvent) {
                 if (animator.isStarted())
                     animator.stop();
+                canvas.destroy(); // dispose(): termina de escribir la grabación
+                canvas.profiler.writeCsvIfRequested();
                 System.exit(0);
             }
         });
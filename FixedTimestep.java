@@ -0,0 +1,81 @@
+package main;
+
+/**
+ * Paso de simulación fijo con acumulador, compartido por las tres demos.
+ *
+ * Cada cuadro se llama a {@link #advance(long)} con el tiempo actual; devuelve
+ * cuántos pasos de {@link #getStepSeconds()} hay que simular. Lo que sobra queda
+ * en el acumulador y {@link #getAlpha()} indica cuánto interpolar entre el estado
+ * anterior y el actual al dibujar. Así la velocidad del mundo no depende de los
+ * FPS que consiga el FPSAnimator.
+ */
+public class FixedTimestep {
+
+    /** Si un cuadro tarda muchísimo (p. ej. la ventana se arrastra) no se intenta recuperar todo. */
+    static final int MAX_STEPS_PER_FRAME = 8;
+
+    private final double stepSeconds;
+    private final long stepNanos;
+    private long lastNanos = -1;
+    private long accumulatorNanos = 0;
+    private long totalSteps = 0;
+
+    public FixedTimestep(double stepsPerSecond) {
+        this.stepSeconds = 1.0 / stepsPerSecond;
+        this.stepNanos = Math.round(1_000_000_000.0 / stepsPerSecond);
+    }
+
+    /**
+     * Suma el tiempo transcurrido desde la llamada anterior.
+     * @return cuántos pasos fijos hay que simular en este cuadro.
+     */
+    public int advance(long nowNanos) {
+        if (lastNanos < 0) {
+            lastNanos = nowNanos;
+            return 0;
+        }
+        accumulatorNanos += nowNanos - lastNanos;
+        lastNanos = nowNanos;
+
+        int steps = (int) Math.min(MAX_STEPS_PER_FRAME, accumulatorNanos / stepNanos);
+        accumulatorNanos -= steps * stepNanos;
+        if (accumulatorNanos >= stepNanos) {
+            // Se descarta el atraso que no se pudo simular (evita la espiral de la muerte)
+            accumulatorNanos %= stepNanos;
+        }
+        totalSteps += steps;
+        return steps;
+    }
+
+    /**
+     * Un paso sin mirar el reloj, para reproducir entrada grabada en lockstep
+     * (un paso por cuadro). El acumulador queda en cero.
+     */
+    public void step() {
+        totalSteps++;
+        accumulatorNanos = 0;
+        lastNanos = -1;
+    }
+
+    /** Fracción [0, 1) del siguiente paso ya transcurrida, para interpolar el dibujo. */
+    public float getAlpha() {
+        return (float) accumulatorNanos / stepNanos;
+    }
+
+    public float getStepSeconds() {
+        return (float) stepSeconds;
+    }
+
+    public long getTotalSteps() {
+        return totalSteps;
+    }
+
+    /** Interpola un ángulo en grados [0, 360) por el camino corto. */
+    public static float lerpAngle(float previous, float current, float alpha) {
+        float delta = current - previous;
+        if (delta > 180.0f) delta -= 360.0f;
+        if (delta < -180.0f) delta += 360.0f;
+        float angle = previous + delta * alpha;
+        return angle < 0.0f ? angle + 360.0f : angle % 360.0f;
+    }
+}
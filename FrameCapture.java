@@ -0,0 +1,263 @@
+package main;
+
+import com.jogamp.opengl.GL2;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Grabación de la ventana cuadro a cuadro sin detener el pipeline.
+ *
+ * Cada cuadro se lee con glReadPixels a uno de los {@link #RING} PBOs
+ * (GL_PIXEL_PACK_BUFFER): la llamada solo encola la copia y vuelve. El PBO se
+ * mapea cuando le vuelve a tocar, RING cuadros después, cuando la GPU ya
+ * terminó; se copia a un buffer libre y lo codifica un hilo de fondo.
+ *
+ * La contrapresión la dan los buffers libres (tantos como hilos más los de la
+ * cola): si los codificadores no dan abasto no hay buffer y el cuadro se
+ * descarta y se cuenta, nunca se bloquea el hilo de OpenGL.
+ *
+ * Ajustes (propiedades del sistema):
+ *   -Dcapture.dir=capturas     carpeta de salida
+ *   -Dcapture.format=png|raw   png: una imagen por cuadro; raw: BGRA de abajo hacia arriba,
+ *                              p. ej. ffmpeg -f rawvideo -pix_fmt bgra -s AxB -i ... -vf vflip
+ *   -Dcapture.threads=N        hilos codificadores (por defecto la mitad de los núcleos)
+ *   -Dcapture.queue=N          cuadros que pueden esperar a un codificador (por defecto 2 por hilo)
+ *
+ * toggle() se puede llamar desde cualquier hilo; el resto desde el hilo de OpenGL.
+ */
+public class FrameCapture {
+
+    private static final int RING = 3;
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private final Path directory;
+    private final boolean png;
+    private final int threads;
+    private final int queue;
+
+    // PBOs: cuadro pendiente de cada uno y su tamaño
+    private final int[] pbos = new int[RING];
+    private final int[] slotWidth = new int[RING];
+    private final int[] slotHeight = new int[RING];
+    private final int[] slotCapacity = new int[RING];
+    private final long[] slotFrame = new long[RING];
+    private final boolean[] slotPending = new boolean[RING];
+    private int slot = 0;
+
+    private ArrayBlockingQueue<ByteBuffer> libres;
+    private ThreadPoolExecutor encoders;
+
+    private volatile boolean solicitado = false;
+    private boolean activo = false;
+    private long frame = 0;
+    private int session = 0;
+
+    // Contadores (escribe el hilo de OpenGL o los codificadores, lee el overlay)
+    private final AtomicLong escritos = new AtomicLong();
+    private final AtomicLong errores = new AtomicLong();
+    private volatile long descartados = 0;
+    private volatile long lastNanos = 0;
+
+    public FrameCapture() {
+        this.directory = Path.of(System.getProperty("capture.dir", "capturas"));
+        this.png = !"raw".equalsIgnoreCase(System.getProperty("capture.format", "png"));
+        this.threads = Math.max(1, Integer.getInteger("capture.threads",
+                Math.max(1, Runtime.getRuntime().availableProcessors() / 2)));
+        this.queue = Math.max(1, Integer.getInteger("capture.queue", 2 * threads));
+    }
+
+    /** Empieza o termina la grabación al principio del siguiente capture(). */
+    public void toggle() {
+        solicitado = !solicitado;
+    }
+
+    public boolean isRecording() {
+        return activo;
+    }
+
+    /**
+     * Lee el cuadro actual del framebuffer enlazado (la ventana, antes del
+     * intercambio) y entrega el de hace RING cuadros a los codificadores.
+     */
+    public void capture(GL2 gl, int width, int height) {
+        if (solicitado != activo) {
+            if (solicitado) iniciar(gl); else detener(gl);
+        }
+        if (!activo || width <= 0 || height <= 0) return;
+        long start = System.nanoTime();
+
+        int s = slot;
+        if (slotPending[s]) recoger(gl, s);
+
+        int bytes = width * height * BYTES_PER_PIXEL;
+        gl.glBindBuffer(GL2.GL_PIXEL_PACK_BUFFER, pbos[s]);
+        if (slotCapacity[s] < bytes) {
+            gl.glBufferData(GL2.GL_PIXEL_PACK_BUFFER, bytes, null, GL2.GL_STREAM_READ);
+            slotCapacity[s] = bytes;
+        }
+        gl.glPixelStorei(GL2.GL_PACK_ALIGNMENT, 4);
+        // BGRA es el orden nativo de casi todos los framebuffers: la copia no convierte nada
+        gl.glReadPixels(0, 0, width, height, GL2.GL_BGRA, GL2.GL_UNSIGNED_BYTE, 0L);
+        gl.glBindBuffer(GL2.GL_PIXEL_PACK_BUFFER, 0);
+        slotWidth[s] = width;
+        slotHeight[s] = height;
+        slotFrame[s] = frame++;
+        slotPending[s] = true;
+        slot = (s + 1) % RING;
+
+        lastNanos = System.nanoTime() - start;
+    }
+
+    /** Mapea el PBO (ya terminado) y manda su cuadro a codificar, o lo descarta si no hay buffer libre. */
+    private void recoger(GL2 gl, int s) {
+        slotPending[s] = false;
+        ByteBuffer destino = libres.poll();
+        if (destino == null) {
+            descartados++;
+            return;
+        }
+        int bytes = slotWidth[s] * slotHeight[s] * BYTES_PER_PIXEL;
+        if (destino.capacity() < bytes) {
+            destino = ByteBuffer.allocateDirect(bytes); // solo tras agrandar la ventana
+        }
+
+        gl.glBindBuffer(GL2.GL_PIXEL_PACK_BUFFER, pbos[s]);
+        ByteBuffer mapped = gl.glMapBuffer(GL2.GL_PIXEL_PACK_BUFFER, GL2.GL_READ_ONLY);
+        if (mapped == null) {
+            gl.glBindBuffer(GL2.GL_PIXEL_PACK_BUFFER, 0);
+            libres.add(destino);
+            errores.incrementAndGet();
+            return;
+        }
+        mapped.limit(bytes);
+        destino.clear();
+        destino.put(mapped).flip();
+        gl.glUnmapBuffer(GL2.GL_PIXEL_PACK_BUFFER);
+        gl.glBindBuffer(GL2.GL_PIXEL_PACK_BUFFER, 0);
+
+        final ByteBuffer pixels = destino;
+        final int width = slotWidth[s];
+        final int height = slotHeight[s];
+        final Path file = directory.resolve(String.format(Locale.ROOT, "s%02d_cuadro_%06d.%s", session, slotFrame[s],
+                png ? "png" : "bgra"));
+        encoders.execute(() -> {
+            try {
+                if (png) escribirPng(pixels, width, height, file); else escribirRaw(pixels, file);
+                escritos.incrementAndGet();
+            } catch (IOException e) {
+                if (errores.getAndIncrement() == 0) {
+                    System.err.println("Aviso: no se pudo escribir " + file + ": " + e.getMessage());
+                }
+            } finally {
+                libres.add(pixels);
+            }
+        });
+    }
+
+    private void iniciar(GL2 gl) {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            System.err.println("Aviso: no se pudo crear " + directory + ": " + e.getMessage());
+            solicitado = false;
+            return;
+        }
+        if (encoders == null) {
+            gl.glGenBuffers(RING, pbos, 0);
+            libres = new ArrayBlockingQueue<>(threads + queue);
+            for (int i = 0; i < threads + queue; i++) libres.add(ByteBuffer.allocateDirect(0));
+            AtomicInteger counter = new AtomicInteger();
+            // Cola acotada: nunca hay más tareas que buffers, así que execute() no la llena
+            encoders = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(threads + queue), r -> {
+                        Thread t = new Thread(r, "captura-" + counter.incrementAndGet());
+                        t.setDaemon(true);
+                        t.setPriority(Thread.NORM_PRIORITY - 1);
+                        return t;
+                    });
+        }
+        session++;
+        frame = 0;
+        activo = true;
+        System.out.println("Grabando en " + directory.toAbsolutePath() + " (" + (png ? "png" : "bgra") + ")");
+    }
+
+    /** Entrega los cuadros que quedaban en los PBOs; aquí sí se espera a la GPU. */
+    private void detener(GL2 gl) {
+        for (int i = 1; i <= RING; i++) {
+            int s = (slot + i) % RING; // del más antiguo al más nuevo
+            if (slotPending[s]) recoger(gl, s);
+        }
+        activo = false;
+        System.out.println("Grabación detenida: " + escritos.get() + " cuadros escritos, " + descartados + " descartados");
+    }
+
+    private static void escribirPng(ByteBuffer bgra, int width, int height, Path file) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        // OpenGL entrega las filas de abajo hacia arriba
+        for (int y = 0; y < height; y++) {
+            int src = (height - 1 - y) * width * BYTES_PER_PIXEL;
+            int dst = y * width;
+            for (int x = 0; x < width; x++, src += BYTES_PER_PIXEL) {
+                pixels[dst + x] = (bgra.get(src + 2) & 0xFF) << 16 | (bgra.get(src + 1) & 0xFF) << 8
+                        | (bgra.get(src) & 0xFF);
+            }
+        }
+        ImageIO.write(image, "png", file.toFile());
+    }
+
+    private static void escribirRaw(ByteBuffer bgra, Path file) throws IOException {
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer view = bgra.duplicate();
+            while (view.hasRemaining()) out.write(view);
+        }
+    }
+
+    /** Tiempo del hilo de OpenGL en el último capture(), en nanosegundos. */
+    public long getLastNanos() {
+        return lastNanos;
+    }
+
+    public long getWrittenCount() {
+        return escritos.get();
+    }
+
+    public long getDroppedCount() {
+        return descartados;
+    }
+
+    /** Termina la grabación, espera a que se escriba lo pendiente y libera los PBOs. */
+    public void dispose(GL2 gl) {
+        if (activo) detener(gl);
+        solicitado = false;
+        if (encoders != null) {
+            encoders.shutdown();
+            try {
+                encoders.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            encoders = null;
+            gl.glDeleteBuffers(RING, pbos, 0);
+            Arrays.fill(pbos, 0);
+            Arrays.fill(slotCapacity, 0);
+        }
+    }
+}
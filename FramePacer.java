@@ -0,0 +1,221 @@
+package main;
+
+import com.jogamp.opengl.GLAutoDrawable;
+
+import java.util.Arrays;
+
+/**
+ * Ritmo de cuadros adaptativo: mira el tiempo de trabajo de los últimos cuadros
+ * (desde el principio de display() hasta después del intercambio de buffers) y
+ * lo compara con el presupuesto, una fracción del intervalo de la tasa objetivo.
+ *
+ * Cada {@code ventana} cuadros se toma el p90: si se pasa del presupuesto primero
+ * baja la escala de resolución (ver {@link ScaledFramebuffer}) y, ya en la mínima,
+ * baja la tasa objetivo a la siguiente fracción entera (60, 30, 20...). Si sobra
+ * más de la histéresis, deshace en orden inverso: primero la tasa, luego la
+ * escala. Tras cada cambio se descarta una ventana para no medir la transición.
+ *
+ * Ajustes (propiedades del sistema):
+ *   -Dpacer.fps=60           tasa objetivo máxima
+ *   -Dpacer.minFps=20        tasa más baja a la que se puede bajar
+ *   -Dpacer.budget=0.9       fracción del intervalo de cada cuadro que puede usar el trabajo
+ *   -Dpacer.scale=1.0        escala de resolución inicial
+ *   -Dpacer.minScale=0.5     escala más baja
+ *   -Dpacer.hysteresis=0.2   margen bajo el presupuesto antes de volver a subir
+ *   -Dpacer.window=30        cuadros por decisión
+ *
+ * El animador corre siempre a la tasa máxima ({@link #getMaxFps()}) y la tasa
+ * objetivo se aplica dentro de display(): {@link #beginFrame()} deja pasar uno
+ * de cada {@code divisor} cuadros y los demás se saltan sin dibujar ni
+ * intercambiar buffers. Así nunca hay que parar y rearrancar el animador.
+ *
+ * beginFrame/endFrame se llaman desde el hilo de OpenGL.
+ */
+public final class FramePacer {
+
+    /** Paso de la escala entre decisiones (el costo va más o menos con el cuadrado). */
+    private static final float SCALE_STEP = 0.1f;
+
+    /** Ajustes del ritmo; por defecto salen de las propiedades del sistema. */
+    public static final class Settings {
+        public final int fps;
+        public final int minFps;
+        public final float budget;
+        public final float scale;
+        public final float minScale;
+        public final float hysteresis;
+        public final int window;
+
+        public Settings(int fps, int minFps, float budget, float scale, float minScale, float hysteresis, int window) {
+            if (fps <= 0 || minFps <= 0 || minFps > fps) {
+                throw new IllegalArgumentException("Tasas no válidas: fps=" + fps + ", minFps=" + minFps);
+            }
+            if (!(budget > 0.0f) || !(minScale > 0.0f) || minScale > 1.0f || hysteresis < 0.0f || hysteresis >= 1.0f
+                    || window <= 0) {
+                throw new IllegalArgumentException("Ajustes de ritmo no válidos");
+            }
+            this.fps = fps;
+            this.minFps = minFps;
+            this.budget = budget;
+            this.scale = Math.max(minScale, Math.min(1.0f, scale));
+            this.minScale = minScale;
+            this.hysteresis = hysteresis;
+            this.window = window;
+        }
+
+        public static Settings fromSystemProperties() {
+            int fps = Integer.getInteger("pacer.fps", 60);
+            return new Settings(fps,
+                    Math.min(fps, Integer.getInteger("pacer.minFps", 20)),
+                    floatProperty("pacer.budget", 0.9f),
+                    floatProperty("pacer.scale", 1.0f),
+                    floatProperty("pacer.minScale", 0.5f),
+                    floatProperty("pacer.hysteresis", 0.2f),
+                    Integer.getInteger("pacer.window", 30));
+        }
+
+        private static float floatProperty(String key, float defaultValue) {
+            String value = System.getProperty(key);
+            if (value == null) return defaultValue;
+            try {
+                return Float.parseFloat(value);
+            } catch (NumberFormatException e) {
+                System.err.println("Valor no válido para -D" + key + ": " + value);
+                return defaultValue;
+            }
+        }
+    }
+
+    private final Settings settings;
+    private final long[] samples;
+    private final long[] scratch;
+    private int sampleCount = 0;
+    private boolean descartarVentana = true; // la primera ventana incluye la carga inicial
+    private long frameStart;
+    private int saltados = 0; // cuadros del animador saltados desde el último dibujado
+
+    private boolean adaptive = true;
+    private boolean scalingAvailable = true;
+    private volatile float scale;
+    private volatile int divisor = 1;     // tasa objetivo = fps / divisor
+    private volatile long lastP90Nanos = 0;
+
+    public FramePacer(Settings settings) {
+        this.settings = settings;
+        this.samples = new long[settings.window];
+        this.scratch = new long[settings.window];
+        this.scale = settings.scale;
+    }
+
+    /**
+     * Quita el intercambio automático de buffers (endFrame lo hace después de
+     * medir, y un cuadro saltado no debe intercambiar) y la espera al refresco
+     * vertical, que contaría como trabajo: el FPSAnimator ya marca el ritmo. Se
+     * llama desde init().
+     */
+    public void init(GLAutoDrawable drawable) {
+        drawable.setAutoSwapBufferMode(false);
+        drawable.getGL().setSwapInterval(0);
+    }
+
+    /** Sin FBO escalable (o en el benchmark) la escala queda fija en 1 y solo se ajusta la tasa. */
+    public void setScalingAvailable(boolean available) {
+        scalingAvailable = available;
+        if (!available) scale = 1.0f;
+    }
+
+    /** Con false se congelan escala y tasa (el benchmark mide siempre a resolución completa). */
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+        if (!adaptive) {
+            scale = 1.0f;
+            divisor = 1;
+        }
+    }
+
+    // ============================= Medición =============================
+
+    /**
+     * Al principio de display().
+     * @return false si este cuadro del animador se salta para quedar en la tasa
+     *         objetivo: display() vuelve sin simular, dibujar ni llamar a endFrame.
+     */
+    public boolean beginFrame() {
+        if (++saltados < divisor) return false;
+        saltados = 0;
+        frameStart = System.nanoTime();
+        return true;
+    }
+
+    /** Intercambia los buffers, anota el tiempo del cuadro y, cada ventana, decide. */
+    public void endFrame(GLAutoDrawable drawable) {
+        drawable.swapBuffers();
+        samples[sampleCount++] = System.nanoTime() - frameStart;
+        if (sampleCount < samples.length) return;
+        sampleCount = 0;
+
+        System.arraycopy(samples, 0, scratch, 0, samples.length);
+        Arrays.sort(scratch);
+        long p90 = scratch[(int) Math.ceil(0.9 * scratch.length) - 1];
+        lastP90Nanos = p90;
+
+        if (descartarVentana) {
+            descartarVentana = false;
+            return;
+        }
+        if (adaptive) decidir(p90);
+    }
+
+    private void decidir(long p90) {
+        float minScale = scalingAvailable ? settings.minScale : 1.0f;
+        if (p90 > presupuesto(divisor)) {
+            if (scale > minScale) {
+                cambiarEscala(Math.max(minScale, scale - SCALE_STEP));
+            } else if (settings.fps / (divisor + 1) >= settings.minFps) {
+                divisor++;
+                descartarVentana = true;
+            }
+        } else if (divisor > 1 && p90 < presupuesto(divisor - 1) * (1.0f - settings.hysteresis)) {
+            divisor--;
+            descartarVentana = true;
+        } else if (divisor == 1 && scale < 1.0f && p90 < presupuesto(1) * (1.0f - settings.hysteresis)) {
+            cambiarEscala(Math.min(1.0f, scale + SCALE_STEP));
+        }
+    }
+
+    private void cambiarEscala(float nueva) {
+        // Redondeada a centésimas para que los pasos repetidos no acumulen error
+        scale = Math.round(nueva * 100.0f) / 100.0f;
+        descartarVentana = true;
+    }
+
+    /** Nanosegundos de trabajo permitidos por cuadro a la tasa fps / divisor. */
+    private float presupuesto(int divisor) {
+        return settings.budget * 1_000_000_000.0f * divisor / settings.fps;
+    }
+
+    // ============================= Consulta =============================
+
+    /** Fracción del tamaño de la ventana a la que se dibuja la escena (minScale..1). */
+    public float getScale() {
+        return scale;
+    }
+
+    public int getTargetFps() {
+        return settings.fps / divisor;
+    }
+
+    /** Tasa fija del animador; la objetivo se consigue saltando cuadros. */
+    public int getMaxFps() {
+        return settings.fps;
+    }
+
+    /** p90 del tiempo por cuadro de la última ventana, en nanosegundos. */
+    public long getLastP90Nanos() {
+        return lastP90Nanos;
+    }
+
+    public float getBudgetMillis() {
+        return presupuesto(divisor) / 1_000_000.0f;
+    }
+}
@@ -0,0 +1,261 @@
+package main;
+
+import com.jogamp.opengl.GL2;
+import com.jogamp.opengl.util.gl2.GLUT;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Medición por fases de cada cuadro: tiempo de CPU con System.nanoTime y, si el
+ * driver lo soporta, tiempo de GPU con consultas GL_TIME_ELAPSED.
+ *
+ * Cada fase guarda una ventana móvil de las últimas {@link #WINDOW} muestras y de
+ * ahí salen p50/p99/máximo. Las consultas de GPU se leen con varios cuadros de
+ * retraso para no detener el pipeline. Las fases no se pueden anidar (una sola
+ * consulta GL_TIME_ELAPSED puede estar activa a la vez).
+ */
+public class FrameProfiler {
+
+    private static final int WINDOW = 240;
+    private static final int QUERY_RING = 4;
+    private static final long OVERLAY_REFRESH_NANOS = 250_000_000L;
+
+    private final String[] names; // la última entrada es el cuadro completo
+    private final int framePhase;
+    private final RollingStats[] cpu;
+    private final RollingStats[] gpu;
+    private final long[] startNanos;
+
+    // GPU: un anillo de consultas por fase
+    private boolean gpuChecked = false;
+    private boolean gpuSupported = false;
+    private int[] queries;
+    private boolean[] queryPending;
+    private final int[] queryAvailable = new int[1];
+    private final long[] queryResult = new long[1];
+    private int activeQuery = -1;
+    private long frameIndex = 0;
+
+    // Overlay
+    private final GLUT glut = new GLUT();
+    private volatile boolean overlayVisible = false;
+    private long lastOverlayRefresh = 0;
+    private String[] overlayLines = new String[0];
+    private Supplier<String[]> extraLines = () -> new String[0];
+
+    public FrameProfiler(String... phases) {
+        this.names = Arrays.copyOf(phases, phases.length + 1);
+        this.framePhase = phases.length;
+        this.names[framePhase] = "cuadro";
+
+        this.cpu = new RollingStats[names.length];
+        this.gpu = new RollingStats[names.length];
+        for (int i = 0; i < names.length; i++) {
+            cpu[i] = new RollingStats();
+            gpu[i] = new RollingStats();
+        }
+        this.startNanos = new long[names.length];
+    }
+
+    // ============================= Medición =============================
+
+    public void beginFrame(GL2 gl) {
+        if (!gpuChecked) {
+            iniciarGpu(gl);
+        }
+        if (gpuSupported) {
+            recogerConsultas(gl);
+        }
+        startNanos[framePhase] = System.nanoTime();
+    }
+
+    public void endFrame() {
+        cpu[framePhase].add(System.nanoTime() - startNanos[framePhase]);
+        frameIndex++;
+    }
+
+    public void begin(GL2 gl, int phase) {
+        if (gpuSupported && activeQuery < 0) {
+            int slot = phase * QUERY_RING + (int) (frameIndex % QUERY_RING);
+            // Si la consulta de hace QUERY_RING cuadros no terminó, se omite esta muestra de GPU
+            if (!queryPending[slot]) {
+                gl.glBeginQuery(GL2.GL_TIME_ELAPSED, queries[slot]);
+                activeQuery = slot;
+            }
+        }
+        startNanos[phase] = System.nanoTime();
+    }
+
+    public void end(GL2 gl, int phase) {
+        cpu[phase].add(System.nanoTime() - startNanos[phase]);
+        if (activeQuery >= 0 && activeQuery / QUERY_RING == phase) {
+            gl.glEndQuery(GL2.GL_TIME_ELAPSED);
+            queryPending[activeQuery] = true;
+            activeQuery = -1;
+        }
+    }
+
+    private void iniciarGpu(GL2 gl) {
+        gpuChecked = true;
+        gpuSupported = gl.isFunctionAvailable("glBeginQuery")
+                && (gl.isExtensionAvailable("GL_ARB_timer_query") || gl.isExtensionAvailable("GL_EXT_timer_query"));
+        if (!gpuSupported) return;
+
+        queries = new int[names.length * QUERY_RING];
+        queryPending = new boolean[queries.length];
+        gl.glGenQueries(queries.length, queries, 0);
+    }
+
+    private void recogerConsultas(GL2 gl) {
+        for (int slot = 0; slot < queries.length; slot++) {
+            if (!queryPending[slot]) continue;
+            gl.glGetQueryObjectiv(queries[slot], GL2.GL_QUERY_RESULT_AVAILABLE, queryAvailable, 0);
+            if (queryAvailable[0] == 0) continue;
+            gl.glGetQueryObjectui64v(queries[slot], GL2.GL_QUERY_RESULT, queryResult, 0);
+            gpu[slot / QUERY_RING].add(queryResult[0]);
+            queryPending[slot] = false;
+        }
+    }
+
+    public boolean isGpuSupported() {
+        return gpuSupported;
+    }
+
+    /** Percentil (0-100) de la fase en nanosegundos; la última fase es el cuadro completo. */
+    public long cpuPercentile(int phase, double percentile) {
+        return cpu[phase].percentile(percentile);
+    }
+
+    public int getFramePhase() {
+        return framePhase;
+    }
+
+    // ============================= Overlay =============================
+
+    public void toggleOverlay() {
+        overlayVisible = !overlayVisible;
+    }
+
+    public boolean isOverlayVisible() {
+        return overlayVisible;
+    }
+
+    /** Líneas propias de la escena (contadores, etc.) que se muestran debajo de la tabla. */
+    public void setExtraLines(Supplier<String[]> extraLines) {
+        this.extraLines = extraLines;
+    }
+
+    /**
+     * Dibuja la tabla de tiempos en la esquina superior izquierda. El texto se
+     * recalcula cuatro veces por segundo.
+     */
+    public void drawOverlay(GL2 gl, int height) {
+        if (!overlayVisible) return;
+
+        long now = System.nanoTime();
+        if (now - lastOverlayRefresh > OVERLAY_REFRESH_NANOS) {
+            lastOverlayRefresh = now;
+            overlayLines = construirLineas(extraLines.get());
+        }
+
+        gl.glPushAttrib(GL2.GL_ENABLE_BIT | GL2.GL_CURRENT_BIT);
+        gl.glDisable(GL2.GL_LIGHTING);
+        gl.glDisable(GL2.GL_DEPTH_TEST);
+        gl.glDisable(GL2.GL_TEXTURE_2D);
+        gl.glColor3f(1.0f, 1.0f, 0.3f);
+        for (int i = 0; i < overlayLines.length; i++) {
+            gl.glWindowPos2i(8, height - 16 * (i + 1));
+            glut.glutBitmapString(GLUT.BITMAP_8_BY_13, overlayLines[i]);
+        }
+        gl.glPopAttrib();
+    }
+
+    private String[] construirLineas(String[] extraLines) {
+        String[] lines = new String[names.length + 1 + extraLines.length];
+        lines[0] = String.format(Locale.ROOT, "%-10s %21s %21s", "fase (ms)", "CPU p50/p99/max",
+                gpuSupported ? "GPU p50/p99/max" : "GPU n/d");
+        for (int i = 0; i < names.length; i++) {
+            lines[i + 1] = String.format(Locale.ROOT, "%-10s %21s %21s", names[i], cpu[i].resumen(),
+                    gpuSupported && gpu[i].count > 0 ? gpu[i].resumen() : "-");
+        }
+        System.arraycopy(extraLines, 0, lines, names.length + 1, extraLines.length);
+        return lines;
+    }
+
+    // ============================= CSV =============================
+
+    /** Escribe una fila por fase con muestras, p50, p99 y máximo (ms) de CPU y GPU. */
+    public void writeCsv(Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            out.println("fase,muestras,cpu_p50_ms,cpu_p99_ms,cpu_max_ms,gpu_muestras,gpu_p50_ms,gpu_p99_ms,gpu_max_ms");
+            for (int i = 0; i < names.length; i++) {
+                out.printf(Locale.ROOT, "%s,%d,%.4f,%.4f,%.4f,%d,%.4f,%.4f,%.4f%n", names[i],
+                        cpu[i].count, ms(cpu[i].percentile(50)), ms(cpu[i].percentile(99)), ms(cpu[i].max()),
+                        gpu[i].count, ms(gpu[i].percentile(50)), ms(gpu[i].percentile(99)), ms(gpu[i].max()));
+            }
+        }
+    }
+
+    /** Guarda el CSV si se pidió con -Dprofiler.csv=archivo. Pensado para el cierre de la ventana. */
+    public void writeCsvIfRequested() {
+        String file = System.getProperty("profiler.csv");
+        if (file == null) return;
+        try {
+            writeCsv(Path.of(file));
+            System.out.println("Tiempos por fase guardados en " + file);
+        } catch (IOException e) {
+            System.err.println("No se pudo escribir " + file + ": " + e.getMessage());
+        }
+    }
+
+    public void dispose(GL2 gl) {
+        if (queries != null) {
+            gl.glDeleteQueries(queries.length, queries, 0);
+            queries = null;
+        }
+        gpuSupported = false;
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    /** Ventana circular de muestras en nanosegundos. */
+    private static final class RollingStats {
+        private final long[] samples = new long[WINDOW];
+        private final long[] scratch = new long[WINDOW];
+        private int next = 0;
+        private int count = 0;
+
+        void add(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % WINDOW;
+            if (count < WINDOW) count++;
+        }
+
+        long percentile(double p) {
+            if (count == 0) return 0;
+            System.arraycopy(samples, 0, scratch, 0, count);
+            Arrays.sort(scratch, 0, count);
+            int index = (int) Math.ceil(p / 100.0 * count) - 1;
+            return scratch[Math.max(0, Math.min(count - 1, index))];
+        }
+
+        long max() {
+            long max = 0;
+            for (int i = 0; i < count; i++) max = Math.max(max, samples[i]);
+            return max;
+        }
+
+        String resumen() {
+            return String.format(Locale.ROOT, "%6.2f/%6.2f/%6.2f", ms(percentile(50)), ms(percentile(99)), ms(max()));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package main;
+
+/**
+ * Planos del volumen de visión en coordenadas de mundo, extraídos de
+ * proyección * vista (método de Gribb y Hartmann). Las matrices se arman en
+ * Java con el mismo orden que glFrustumf, glRotatef y glTranslatef, así no hay
+ * que leer nada de vuelta de la GPU.
+ */
+public class Frustum {
+
+    // 6 planos (izq, der, abajo, arriba, cerca, lejos) como a*x + b*y + c*z + d >= 0
+    private final float[] planes = new float[24];
+
+    // Matrices en orden de columnas, igual que OpenGL
+    private final float[] projection = new float[16];
+    private final float[] view = new float[16];
+    private final float[] clip = new float[16];
+    private final float[] tmp = new float[16];
+
+    private float left, right, bottom, top, near, far;
+
+    // Rectángulo XZ que envuelve las 8 esquinas del volumen (para acotar consultas espaciales)
+    private float minX, maxX, minZ, maxZ;
+
+    /** Guarda los mismos parámetros que se pasan a glFrustumf en reshape(). */
+    public void setPerspective(float left, float right, float bottom, float top, float near, float far) {
+        this.left = left; this.right = right;
+        this.bottom = bottom; this.top = top;
+        this.near = near; this.far = far;
+
+        for (int i = 0; i < 16; i++) projection[i] = 0.0f;
+        projection[0] = 2.0f * near / (right - left);
+        projection[5] = 2.0f * near / (top - bottom);
+        projection[8] = (right + left) / (right - left);
+        projection[9] = (top + bottom) / (top - bottom);
+        projection[10] = -(far + near) / (far - near);
+        projection[11] = -1.0f;
+        projection[14] = -2.0f * far * near / (far - near);
+    }
+
+    /**
+     * Recalcula los planos para la cámara de Main:
+     * glRotatef(pitch, 1, 0, 0); glRotatef(yaw, 0, 1, 0); glTranslatef(-camX, -camY, -camZ).
+     */
+    public void update(float camX, float camY, float camZ, float yaw, float pitch) {
+        double p = Math.toRadians(pitch);
+        double y = Math.toRadians(yaw);
+        float cp = (float) Math.cos(p), sp = (float) Math.sin(p);
+        float cy = (float) Math.cos(y), sy = (float) Math.sin(y);
+
+        // R = Rx(pitch) * Ry(yaw)
+        float r00 = cy,       r01 = 0.0f, r02 = sy;
+        float r10 = sp * sy,  r11 = cp,   r12 = -sp * cy;
+        float r20 = -cp * sy, r21 = sp,   r22 = cp * cy;
+
+        view[0] = r00; view[4] = r01; view[8] = r02;
+        view[1] = r10; view[5] = r11; view[9] = r12;
+        view[2] = r20; view[6] = r21; view[10] = r22;
+        view[3] = 0.0f; view[7] = 0.0f; view[11] = 0.0f;
+        // Traslación: R * (-cam)
+        view[12] = -(r00 * camX + r01 * camY + r02 * camZ);
+        view[13] = -(r10 * camX + r11 * camY + r12 * camZ);
+        view[14] = -(r20 * camX + r21 * camY + r22 * camZ);
+        view[15] = 1.0f;
+
+        multiply(projection, view, clip);
+        extraerPlanos();
+        calcularLimitesXZ(camX, camZ, r00, r01, r02, r10, r11, r12, r20, r21, r22);
+    }
+
+    private void calcularLimitesXZ(float camX, float camZ,
+                                   float r00, float r01, float r02,
+                                   float r10, float r11, float r12,
+                                   float r20, float r21, float r22) {
+        minX = camX; maxX = camX;
+        minZ = camZ; maxZ = camZ;
+        for (int i = 0; i < 8; i++) {
+            float scale = (i & 4) == 0 ? 1.0f : far / near;
+            float ex = ((i & 1) == 0 ? left : right) * scale;
+            float ey = ((i & 2) == 0 ? bottom : top) * scale;
+            float ez = -near * scale;
+            // mundo = R^T * ojo + cámara
+            float wx = r00 * ex + r10 * ey + r20 * ez + camX;
+            float wz = r02 * ex + r12 * ey + r22 * ez + camZ;
+            minX = Math.min(minX, wx); maxX = Math.max(maxX, wx);
+            minZ = Math.min(minZ, wz); maxZ = Math.max(maxZ, wz);
+        }
+    }
+
+    public float getMinX() { return minX; }
+    public float getMaxX() { return maxX; }
+    public float getMinZ() { return minZ; }
+    public float getMaxZ() { return maxZ; }
+
+    private void multiply(float[] a, float[] b, float[] out) {
+        for (int col = 0; col < 4; col++) {
+            for (int row = 0; row < 4; row++) {
+                tmp[col * 4 + row] = a[row] * b[col * 4]
+                        + a[4 + row] * b[col * 4 + 1]
+                        + a[8 + row] * b[col * 4 + 2]
+                        + a[12 + row] * b[col * 4 + 3];
+            }
+        }
+        System.arraycopy(tmp, 0, out, 0, 16);
+    }
+
+    private void extraerPlanos() {
+        for (int i = 0; i < 3; i++) {
+            // plano "menos" (izquierda/abajo/cerca) = fila3 + fila i; plano "más" = fila3 - fila i
+            setPlane(i * 2,     clip[3] + clip[i], clip[7] + clip[4 + i], clip[11] + clip[8 + i], clip[15] + clip[12 + i]);
+            setPlane(i * 2 + 1, clip[3] - clip[i], clip[7] - clip[4 + i], clip[11] - clip[8 + i], clip[15] - clip[12 + i]);
+        }
+    }
+
+    private void setPlane(int index, float a, float b, float c, float d) {
+        float length = (float) Math.sqrt(a * a + b * b + c * c);
+        int base = index * 4;
+        planes[base] = a / length;
+        planes[base + 1] = b / length;
+        planes[base + 2] = c / length;
+        planes[base + 3] = d / length;
+    }
+
+    /** true si la caja toca el volumen de visión (puede dar falsos positivos en las esquinas). */
+    public boolean intersectsBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        for (int i = 0; i < 6; i++) {
+            int base = i * 4;
+            float a = planes[base], b = planes[base + 1], c = planes[base + 2], d = planes[base + 3];
+            // Vértice más adelantado respecto a la normal del plano
+            float px = a >= 0.0f ? maxX : minX;
+            float py = b >= 0.0f ? maxY : minY;
+            float pz = c >= 0.0f ? maxZ : minZ;
+            if (a * px + b * py + c * pz + d < 0.0f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean intersectsSphere(float x, float y, float z, float radius) {
+        for (int i = 0; i < 6; i++) {
+            int base = i * 4;
+            if (planes[base] * x + planes[base + 1] * y + planes[base + 2] * z + planes[base + 3] < -radius) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,249 @@
+package main;
+
+import com.jogamp.opengl.GL2;
+
+import java.util.Arrays;
+
+/**
+ * Recuerda el estado de OpenGL que se cambia cada cuadro (capacidades activas,
+ * arreglos de cliente, color actual, luces, buffer y programa enlazados, modo de
+ * matriz) y solo reenvía al driver las llamadas que de verdad lo cambian.
+ *
+ * Convención de uso: cada objeto que dibuja pide el estado que necesita a través
+ * de la caché en lugar de restaurar el anterior al terminar; así dos mallas
+ * seguidas con el mismo estado no generan llamadas. Todo lo que se cambie con
+ * el GL2 directamente (p. ej. en init) debe ir seguido de {@link #invalidate()}.
+ * glPushAttrib/glPopAttrib no hacen falta invalidar porque dejan todo como estaba.
+ */
+public class GLStateCache {
+
+    private static final byte UNKNOWN = -1, OFF = 0, ON = 1;
+
+    // Capacidades de glEnable/glDisable que se siguen; las demás se reenvían siempre
+    private static final int[] CAPS = {
+            GL2.GL_LIGHTING, GL2.GL_DEPTH_TEST, GL2.GL_CULL_FACE, GL2.GL_TEXTURE_2D,
+            GL2.GL_ALPHA_TEST, GL2.GL_BLEND, GL2.GL_COLOR_MATERIAL, GL2.GL_LIGHT0
+    };
+    private static final int[] CLIENT_STATES = {
+            GL2.GL_VERTEX_ARRAY, GL2.GL_NORMAL_ARRAY, GL2.GL_COLOR_ARRAY, GL2.GL_TEXTURE_COORD_ARRAY
+    };
+
+    // Luces: GL_LIGHT0..7 con ambiente, difusa y especular (la posición depende de la
+    // matriz activa al llamar, así que siempre se reenvía)
+    private static final int MAX_LIGHTS = 8;
+    private static final int[] LIGHT_PARAMS = { GL2.GL_AMBIENT, GL2.GL_DIFFUSE, GL2.GL_SPECULAR };
+    /** Diferencia por componente por debajo de la cual un color de luz no se reenvía (< medio nivel de 8 bits). */
+    private static final float LIGHT_EPSILON = 1.0f / 1024.0f;
+
+    private GL2 gl;
+    private boolean programsSupported; // contextos GL 1.x no tienen glUseProgram
+
+    private final byte[] caps = new byte[CAPS.length];
+    private final byte[] clientStates = new byte[CLIENT_STATES.length];
+    private boolean colorKnown;
+    private float colorR, colorG, colorB;
+    private final float[] lights = new float[MAX_LIGHTS * LIGHT_PARAMS.length * 4];
+    private final boolean[] lightKnown = new boolean[MAX_LIGHTS * LIGHT_PARAMS.length];
+    private int arrayBuffer;
+    private int elementArrayBuffer;
+    private int program;
+    private int texture2D;
+    private int matrixMode;
+
+    // Contadores para la medición (por cuadro)
+    private int elided, forwarded;
+    private int lastFrameElided, lastFrameForwarded;
+
+    /** Empieza a usar el contexto gl dando todo el estado por desconocido (p. ej. desde init). */
+    public void reset(GL2 gl) {
+        this.gl = gl;
+        this.programsSupported = gl.isFunctionAvailable("glUseProgram");
+        invalidate();
+    }
+
+    /** Olvida todo lo que se sabe del estado; la siguiente llamada de cada tipo se reenvía. */
+    public void invalidate() {
+        Arrays.fill(caps, UNKNOWN);
+        Arrays.fill(clientStates, UNKNOWN);
+        Arrays.fill(lightKnown, false);
+        colorKnown = false;
+        arrayBuffer = -1;
+        elementArrayBuffer = -1;
+        program = -1;
+        texture2D = -1;
+        matrixMode = -1;
+    }
+
+    /** Llamar al principio de cada cuadro: fija el GL2 del cuadro y cierra los contadores del anterior. */
+    public void beginFrame(GL2 gl) {
+        this.gl = gl;
+        lastFrameElided = elided;
+        lastFrameForwarded = forwarded;
+        elided = 0;
+        forwarded = 0;
+    }
+
+    /** El GL2 sin caché, para todo lo que no se sigue aquí. */
+    public GL2 gl() {
+        return gl;
+    }
+
+    // ============================= Capacidades =============================
+
+    public void enable(int cap) {
+        setCap(cap, true);
+    }
+
+    public void disable(int cap) {
+        setCap(cap, false);
+    }
+
+    private void setCap(int cap, boolean on) {
+        int index = indexOf(CAPS, cap);
+        byte wanted = on ? ON : OFF;
+        if (index >= 0 && caps[index] == wanted) {
+            elided++;
+            return;
+        }
+        if (on) gl.glEnable(cap); else gl.glDisable(cap);
+        forwarded++;
+        if (index >= 0) caps[index] = wanted;
+    }
+
+    public void enableClientState(int array) {
+        setClientState(array, true);
+    }
+
+    public void disableClientState(int array) {
+        setClientState(array, false);
+    }
+
+    private void setClientState(int array, boolean on) {
+        int index = indexOf(CLIENT_STATES, array);
+        byte wanted = on ? ON : OFF;
+        if (index >= 0 && clientStates[index] == wanted) {
+            elided++;
+            return;
+        }
+        if (on) gl.glEnableClientState(array); else gl.glDisableClientState(array);
+        forwarded++;
+        if (index >= 0) clientStates[index] = wanted;
+        // Dibujar con arreglo de color deja el color actual indefinido
+        if (array == GL2.GL_COLOR_ARRAY) colorKnown = false;
+    }
+
+    private static int indexOf(int[] values, int value) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] == value) return i;
+        }
+        return -1;
+    }
+
+    // ============================= Color y luces =============================
+
+    public void color3f(float r, float g, float b) {
+        // Mientras el arreglo de color pueda estar activo, cada dibujo cambia el color actual
+        boolean cacheable = clientStates[indexOf(CLIENT_STATES, GL2.GL_COLOR_ARRAY)] == OFF;
+        if (cacheable && colorKnown && r == colorR && g == colorG && b == colorB) {
+            elided++;
+            return;
+        }
+        gl.glColor3f(r, g, b);
+        forwarded++;
+        colorKnown = cacheable;
+        colorR = r;
+        colorG = g;
+        colorB = b;
+    }
+
+    /** glLightfv con 4 valores; ambiente/difusa/especular no se reenvían si casi no cambiaron. */
+    public void lightfv(int light, int pname, float[] params) {
+        int lightIndex = light - GL2.GL_LIGHT0;
+        int paramIndex = indexOf(LIGHT_PARAMS, pname);
+        if (lightIndex < 0 || lightIndex >= MAX_LIGHTS || paramIndex < 0) {
+            gl.glLightfv(light, pname, params, 0);
+            forwarded++;
+            return;
+        }
+
+        int slot = lightIndex * LIGHT_PARAMS.length + paramIndex;
+        int base = slot * 4;
+        if (lightKnown[slot]
+                && Math.abs(lights[base] - params[0]) < LIGHT_EPSILON
+                && Math.abs(lights[base + 1] - params[1]) < LIGHT_EPSILON
+                && Math.abs(lights[base + 2] - params[2]) < LIGHT_EPSILON
+                && Math.abs(lights[base + 3] - params[3]) < LIGHT_EPSILON) {
+            elided++;
+            return;
+        }
+        gl.glLightfv(light, pname, params, 0);
+        forwarded++;
+        // Se guarda lo enviado, así los cambios lentos se acumulan hasta superar el umbral
+        System.arraycopy(params, 0, lights, base, 4);
+        lightKnown[slot] = true;
+    }
+
+    // ============================= Enlaces =============================
+
+    public void bindArrayBuffer(int buffer) {
+        if (arrayBuffer == buffer) {
+            elided++;
+            return;
+        }
+        gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, buffer);
+        forwarded++;
+        arrayBuffer = buffer;
+    }
+
+    public void bindElementArrayBuffer(int buffer) {
+        if (elementArrayBuffer == buffer) {
+            elided++;
+            return;
+        }
+        gl.glBindBuffer(GL2.GL_ELEMENT_ARRAY_BUFFER, buffer);
+        forwarded++;
+        elementArrayBuffer = buffer;
+    }
+
+    public void useProgram(int newProgram) {
+        if (program == newProgram || !programsSupported) {
+            elided++;
+            return;
+        }
+        gl.glUseProgram(newProgram);
+        forwarded++;
+        program = newProgram;
+    }
+
+    public void bindTexture2D(int newTexture) {
+        if (texture2D == newTexture) {
+            elided++;
+            return;
+        }
+        gl.glBindTexture(GL2.GL_TEXTURE_2D, newTexture);
+        forwarded++;
+        texture2D = newTexture;
+    }
+
+    public void matrixMode(int mode) {
+        if (matrixMode == mode) {
+            elided++;
+            return;
+        }
+        gl.glMatrixMode(mode);
+        forwarded++;
+        matrixMode = mode;
+    }
+
+    // ============================= Medición =============================
+
+    /** Llamadas evitadas en el último cuadro completo. */
+    public int getElidedCalls() {
+        return lastFrameElided;
+    }
+
+    /** Llamadas que sí llegaron al driver en el último cuadro completo. */
+    public int getForwardedCalls() {
+        return lastFrameForwarded;
+    }
+}
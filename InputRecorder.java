@@ -0,0 +1,118 @@
+package main;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Graba la entrada de una sesión de Main para reproducirla después con
+ * {@link InputReplay}. Todo se marca con el número de paso fijo de simulación
+ * en que se aplicó, no con la hora: así la reproducción no depende de los FPS.
+ *
+ * Formato (big-endian, versión {@link #VERSION}):
+ *   cabecera: magic "INPT", versión (int), semilla (long), pasos por segundo,
+ *             lado del chunk, árboles por chunk, manzanas por árbol (ints)
+ *   eventos:  pasos desde el evento anterior (varint), tipo (byte) y datos:
+ *             KEY_DOWN/KEY_UP código de tecla (varint), MOUSE dx y dy (varint
+ *             zigzag), CLICK sin datos, END sin datos (último paso grabado)
+ *
+ * Se usa desde el hilo de OpenGL.
+ */
+public final class InputRecorder implements Closeable {
+
+    static final int MAGIC = 0x494E5054; // "INPT"
+    // 2: los árboles salen de un SplittableRandom por árbol; con la misma semilla el bosque ya no es el de la 1
+    // 3: el clic se marca con el paso que lo resuelve (con la cámara al final de ese paso)
+    static final int VERSION = 3;
+
+    static final byte END = 0, KEY_DOWN = 1, KEY_UP = 2, MOUSE = 3, CLICK = 4;
+
+    private final DataOutputStream out;
+    private final long[] previousKeys = new long[InputState.keyWords()];
+    private long lastTick = 0;
+    private long events = 0;
+    private boolean closed = false;
+
+    public InputRecorder(Path file, long worldSeed, int stepsPerSecond, int chunkSize, int treesPerChunk,
+                         int applesPerTree) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(worldSeed);
+        out.writeInt(stepsPerSecond);
+        out.writeInt(chunkSize);
+        out.writeInt(treesPerChunk);
+        out.writeInt(applesPerTree);
+    }
+
+    /**
+     * Anota las teclas que cambiaron desde el paso anterior. currentKeys es la
+     * copia de {@link InputState#copyKeys(long[])} con la que se simula el paso tick.
+     */
+    public void keys(long tick, long[] currentKeys) throws IOException {
+        for (int word = 0; word < currentKeys.length; word++) {
+            long changed = currentKeys[word] ^ previousKeys[word];
+            while (changed != 0) {
+                int bit = Long.numberOfTrailingZeros(changed);
+                changed &= changed - 1;
+                boolean down = (currentKeys[word] & (1L << bit)) != 0;
+                evento(tick, down ? KEY_DOWN : KEY_UP);
+                writeVarLong(word * 64 + bit);
+            }
+            previousKeys[word] = currentKeys[word];
+        }
+    }
+
+    /** Movimiento del ratón aplicado antes de simular el paso tick. */
+    public void mouse(long tick, int dx, int dy) throws IOException {
+        if (dx == 0 && dy == 0) return;
+        evento(tick, MOUSE);
+        writeVarLong(zigzag(dx));
+        writeVarLong(zigzag(dy));
+    }
+
+    /** Clic resuelto en el paso tick, con la cámara al final de ese paso. */
+    public void click(long tick) throws IOException {
+        evento(tick, CLICK);
+    }
+
+    private void evento(long tick, byte type) throws IOException {
+        writeVarLong(tick - lastTick);
+        out.writeByte(type);
+        lastTick = tick;
+        events++;
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long zigzag(int value) {
+        return ((long) value << 1) ^ (value >> 31);
+    }
+
+    public long getEventCount() {
+        return events;
+    }
+
+    /** Cierra el archivo marcando lastStep como el último paso de la grabación. */
+    public void finish(long lastStep) throws IOException {
+        if (closed) return;
+        evento(Math.max(lastStep, lastTick), END);
+        close();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        out.close();
+    }
+}
@@ -0,0 +1,166 @@
+package main;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Reproduce una grabación de {@link InputRecorder}. Se carga entera al abrirla
+ * (eventos en arreglos paralelos) y se consulta paso a paso desde el hilo de
+ * OpenGL: antes de cada paso fijo se entregan las teclas, el ratón y los clics
+ * de ese paso. Quien reproduce avanza exactamente un paso por cuadro,
+ * así todas las corridas dibujan los mismos cuadros.
+ */
+public final class InputReplay {
+
+    /** Por dónde vuelve a entrar cada evento (en Main, los mismos caminos que la entrada real). */
+    public interface Target {
+        void keyPressed(int keyCode);
+        void keyReleased(int keyCode);
+        void mouseDelta(int dx, int dy);
+        void click();
+    }
+
+    private final long worldSeed;
+    private final int stepsPerSecond;
+    private final int chunkSize;
+    private final int treesPerChunk;
+    private final int applesPerTree;
+
+    private long[] ticks = new long[256];
+    private byte[] types = new byte[256];
+    private int[] valuesA = new int[256];
+    private int[] valuesB = new int[256];
+    private int count = 0;
+    private long lastTick = 0;
+    private int cursor = 0; // primer evento con paso >= el que se está reproduciendo
+
+    private InputReplay(DataInputStream in) throws IOException {
+        if (in.readInt() != InputRecorder.MAGIC) throw new IOException("no es una grabación de entrada");
+        int version = in.readInt();
+        if (version != InputRecorder.VERSION) {
+            throw new IOException("versión " + version + " no soportada (se esperaba " + InputRecorder.VERSION + ")");
+        }
+        this.worldSeed = in.readLong();
+        this.stepsPerSecond = in.readInt();
+        this.chunkSize = in.readInt();
+        this.treesPerChunk = in.readInt();
+        this.applesPerTree = in.readInt();
+
+        long tick = 0;
+        while (true) {
+            long delta;
+            try {
+                delta = readVarLong(in);
+            } catch (EOFException e) {
+                // Grabación cortada (el proceso terminó sin cerrarla): vale hasta el último evento
+                break;
+            }
+            tick += delta;
+            byte type = in.readByte();
+            if (type == InputRecorder.END) break;
+            int a = 0, b = 0;
+            if (type == InputRecorder.KEY_DOWN || type == InputRecorder.KEY_UP) {
+                a = (int) readVarLong(in);
+            } else if (type == InputRecorder.MOUSE) {
+                a = unzigzag(readVarLong(in));
+                b = unzigzag(readVarLong(in));
+            } else if (type != InputRecorder.CLICK) {
+                throw new IOException("evento desconocido " + type + " en el paso " + tick);
+            }
+            agregar(tick, type, a, b);
+        }
+        this.lastTick = tick;
+    }
+
+    public static InputReplay open(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            return new InputReplay(in);
+        } catch (IOException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void agregar(long tick, byte type, int a, int b) {
+        if (count == ticks.length) {
+            int capacity = count * 2;
+            ticks = Arrays.copyOf(ticks, capacity);
+            types = Arrays.copyOf(types, capacity);
+            valuesA = Arrays.copyOf(valuesA, capacity);
+            valuesB = Arrays.copyOf(valuesB, capacity);
+        }
+        ticks[count] = tick;
+        types[count] = type;
+        valuesA[count] = a;
+        valuesB[count] = b;
+        count++;
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("varint demasiado largo");
+    }
+
+    private static int unzigzag(long value) {
+        return (int) ((value >>> 1) ^ -(value & 1));
+    }
+
+    // ============================= Reproducción =============================
+
+    /** Teclas, ratón y clics con que se simuló el paso tick. */
+    public void applyInput(long tick, Target target) {
+        while (cursor < count && ticks[cursor] < tick) cursor++;
+        for (int i = cursor; i < count && ticks[i] == tick; i++) {
+            switch (types[i]) {
+                case InputRecorder.KEY_DOWN: target.keyPressed(valuesA[i]); break;
+                case InputRecorder.KEY_UP: target.keyReleased(valuesA[i]); break;
+                case InputRecorder.MOUSE: target.mouseDelta(valuesA[i], valuesB[i]); break;
+                case InputRecorder.CLICK: target.click(); break;
+                default: break;
+            }
+        }
+    }
+
+    /** true cuando ya se simularon todos los pasos de la grabación. */
+    public boolean isFinished(long tick) {
+        return tick >= lastTick;
+    }
+
+    /** Pasos que dura la grabación. */
+    public long getTickCount() {
+        return lastTick;
+    }
+
+    public int getEventCount() {
+        return count;
+    }
+
+    public long getWorldSeed() {
+        return worldSeed;
+    }
+
+    public int getStepsPerSecond() {
+        return stepsPerSecond;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getTreesPerChunk() {
+        return treesPerChunk;
+    }
+
+    public int getApplesPerTree() {
+        return applesPerTree;
+    }
+}
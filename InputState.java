@@ -0,0 +1,119 @@
+package main;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Estado de entrada compartido entre el hilo de AWT y el de simulación.
+ *
+ * - Teclas: un bit por código de tecla (0-255) que se enciende en keyPressed y
+ *   se apaga en keyReleased. La simulación lo consulta en cada paso, así el
+ *   movimiento no depende de la repetición automática del sistema.
+ * - Ratón: los desplazamientos en píxeles se acumulan en un solo AtomicLong
+ *   (x en la mitad alta, y en la baja) y se consumen de una vez por paso.
+ *
+ * No reserva memoria en ninguna operación.
+ */
+public final class InputState {
+
+    private static final int MAX_KEY_CODE = 256;
+
+    private final AtomicLongArray keys = new AtomicLongArray(MAX_KEY_CODE / 64);
+    private final AtomicLong mouseDelta = new AtomicLong();
+
+    // ============================= Teclado =============================
+
+    public void press(int keyCode) {
+        if (keyCode < 0 || keyCode >= MAX_KEY_CODE) return;
+        long bit = 1L << (keyCode & 63);
+        int word = keyCode >>> 6;
+        long current;
+        do {
+            current = keys.get(word);
+        } while ((current & bit) == 0 && !keys.compareAndSet(word, current, current | bit));
+    }
+
+    public void release(int keyCode) {
+        if (keyCode < 0 || keyCode >= MAX_KEY_CODE) return;
+        long bit = 1L << (keyCode & 63);
+        int word = keyCode >>> 6;
+        long current;
+        do {
+            current = keys.get(word);
+        } while ((current & bit) != 0 && !keys.compareAndSet(word, current, current & ~bit));
+    }
+
+    /** Suelta todo (p. ej. al perder el foco, donde no llegan los keyReleased). */
+    public void releaseAll() {
+        for (int i = 0; i < keys.length(); i++) {
+            keys.set(i, 0L);
+        }
+    }
+
+    /** Copia los bits de todas las teclas en out (MAX_KEY_CODE / 64 palabras), p. ej. para grabarlas. */
+    public void copyKeys(long[] out) {
+        for (int i = 0; i < keys.length(); i++) {
+            out[i] = keys.get(i);
+        }
+    }
+
+    public static int keyWords() {
+        return MAX_KEY_CODE / 64;
+    }
+
+    public boolean isDown(int keyCode) {
+        if (keyCode < 0 || keyCode >= MAX_KEY_CODE) return false;
+        return (keys.get(keyCode >>> 6) & (1L << (keyCode & 63))) != 0;
+    }
+
+    /** -1, 0 o 1 según cuál de las dos teclas está pulsada (0 si ambas o ninguna). */
+    public int axis(int negativeKey, int positiveKey) {
+        return (isDown(positiveKey) ? 1 : 0) - (isDown(negativeKey) ? 1 : 0);
+    }
+
+    /** isDown sobre una copia hecha con {@link #copyKeys(long[])}. */
+    public static boolean isDown(long[] keys, int keyCode) {
+        if (keyCode < 0 || keyCode >= MAX_KEY_CODE) return false;
+        return (keys[keyCode >>> 6] & (1L << (keyCode & 63))) != 0;
+    }
+
+    /**
+     * axis sobre una copia: un paso que lee varias teclas de la misma copia no
+     * ve a medias un evento que llega mientras tanto.
+     */
+    public static int axis(long[] keys, int negativeKey, int positiveKey) {
+        return (isDown(keys, positiveKey) ? 1 : 0) - (isDown(keys, negativeKey) ? 1 : 0);
+    }
+
+    // ============================= Ratón =============================
+
+    /** Suma un desplazamiento del ratón (hilo de AWT). */
+    public void addMouseDelta(int dx, int dy) {
+        long current;
+        long next;
+        do {
+            current = mouseDelta.get();
+            next = pack(unpackX(current) + dx, unpackY(current) + dy);
+        } while (!mouseDelta.compareAndSet(current, next));
+    }
+
+    /**
+     * Devuelve y pone a cero el desplazamiento acumulado desde la llamada anterior.
+     * Se separa con {@link #unpackX(long)} y {@link #unpackY(long)}.
+     */
+    public long takeMouseDelta() {
+        return mouseDelta.getAndSet(0L);
+    }
+
+    public static int unpackX(long packed) {
+        return (int) (packed >> 32);
+    }
+
+    public static int unpackY(long packed) {
+        return (int) packed;
+    }
+
+    private static long pack(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+}
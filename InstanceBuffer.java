@@ -0,0 +1,88 @@
+package main;
+
+import com.jogamp.opengl.GL2;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Desplazamientos por instancia (x, y, z) con copia en CPU y en un VBO.
+ * La copia en CPU la usa el camino de respaldo sin instancing.
+ */
+public class InstanceBuffer {
+
+    public static final int FLOATS_PER_INSTANCE = 3;
+
+    private final FloatBuffer data;
+    private final int capacity;
+    private final int[] vbo = new int[1];
+    private int count = 0;
+    private int uploadedCount = -1;
+
+    public InstanceBuffer(int capacity) {
+        this.capacity = capacity;
+        this.data = ByteBuffer.allocateDirect(Math.max(1, capacity) * FLOATS_PER_INSTANCE * Float.BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+    }
+
+    public void clear() {
+        count = 0;
+    }
+
+    public void add(float x, float y, float z) {
+        if (count >= capacity) return;
+        int base = count * FLOATS_PER_INSTANCE;
+        data.put(base, x);
+        data.put(base + 1, y);
+        data.put(base + 2, z);
+        count++;
+    }
+
+    /**
+     * Copia los desplazamientos actuales al VBO. El buffer se reserva una vez
+     * con la capacidad máxima y después solo se actualiza con glBufferSubData.
+     */
+    public void upload(GLStateCache state) {
+        GL2 gl = state.gl();
+        if (vbo[0] == 0) {
+            gl.glGenBuffers(1, vbo, 0);
+            state.bindArrayBuffer(vbo[0]);
+            gl.glBufferData(GL2.GL_ARRAY_BUFFER, (long) data.capacity() * Float.BYTES, null, GL2.GL_DYNAMIC_DRAW);
+        } else {
+            state.bindArrayBuffer(vbo[0]);
+        }
+
+        data.position(0);
+        data.limit(count * FLOATS_PER_INSTANCE);
+        gl.glBufferSubData(GL2.GL_ARRAY_BUFFER, 0, (long) data.remaining() * Float.BYTES, data);
+        data.limit(data.capacity());
+
+        uploadedCount = count;
+    }
+
+    public int getVbo() {
+        return vbo[0];
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /** Instancias presentes en el VBO (puede diferir de getCount() si no se ha llamado a upload). */
+    public int getUploadedCount() {
+        return Math.max(0, uploadedCount);
+    }
+
+    public float getX(int i) { return data.get(i * FLOATS_PER_INSTANCE); }
+    public float getY(int i) { return data.get(i * FLOATS_PER_INSTANCE + 1); }
+    public float getZ(int i) { return data.get(i * FLOATS_PER_INSTANCE + 2); }
+
+    public void dispose(GL2 gl) {
+        if (vbo[0] != 0) {
+            gl.glDeleteBuffers(1, vbo, 0);
+            vbo[0] = 0;
+        }
+    }
+}
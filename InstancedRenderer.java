@@ -0,0 +1,168 @@
+package main;
+
+import com.jogamp.opengl.GL2;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Dibuja muchas copias de una {@link Mesh} con una sola llamada usando
+ * glDrawArraysInstanced y un atributo de desplazamiento por instancia.
+ *
+ * El shader reproduce la iluminación fija de LIGHT0 con GL_COLOR_MATERIAL, así
+ * que el resultado es igual al del pipeline fijo. Si el contexto no tiene
+ * instancing (o el shader no compila) se usa el camino clásico de
+ * glTranslatef + glDrawArrays por instancia.
+ */
+public class InstancedRenderer {
+
+    private static final int OFFSET_ATTRIB = 1;
+
+    private static final String VERTEX_SHADER =
+            "#version 120\n" +
+            "attribute vec3 offset;\n" +
+            "uniform float lighting;\n" +
+            "varying vec4 color;\n" +
+            "void main() {\n" +
+            "    vec4 eye = gl_ModelViewMatrix * (gl_Vertex + vec4(offset, 0.0));\n" +
+            "    gl_Position = gl_ProjectionMatrix * eye;\n" +
+            "    vec3 n = gl_NormalMatrix * gl_Normal;\n" +
+            "    vec3 l = normalize(gl_LightSource[0].position.xyz);\n" +
+            "    vec4 lit = gl_Color * (gl_LightModel.ambient + gl_LightSource[0].ambient)\n" +
+            "             + gl_Color * gl_LightSource[0].diffuse * max(dot(n, l), 0.0);\n" +
+            "    color = mix(gl_Color, vec4(lit.rgb, gl_Color.a), lighting);\n" +
+            "}\n";
+
+    private static final String FRAGMENT_SHADER =
+            "#version 120\n" +
+            "varying vec4 color;\n" +
+            "void main() {\n" +
+            "    gl_FragColor = color;\n" +
+            "}\n";
+
+    private int program = 0;
+    private int lightingUniform = -1;
+    private boolean supported = false;
+
+    public void init(GL2 gl) {
+        supported = false;
+
+        if (!gl.isFunctionAvailable("glDrawArraysInstanced") || !gl.isFunctionAvailable("glVertexAttribDivisor")) {
+            System.err.println("Aviso: el contexto no soporta instancing, se usa el dibujo por objeto.");
+            return;
+        }
+
+        int vs = compilar(gl, GL2.GL_VERTEX_SHADER, VERTEX_SHADER);
+        int fs = compilar(gl, GL2.GL_FRAGMENT_SHADER, FRAGMENT_SHADER);
+        if (vs == 0 || fs == 0) {
+            if (vs != 0) gl.glDeleteShader(vs);
+            if (fs != 0) gl.glDeleteShader(fs);
+            return;
+        }
+
+        program = gl.glCreateProgram();
+        gl.glAttachShader(program, vs);
+        gl.glAttachShader(program, fs);
+        gl.glBindAttribLocation(program, OFFSET_ATTRIB, "offset");
+        gl.glLinkProgram(program);
+        gl.glDeleteShader(vs);
+        gl.glDeleteShader(fs);
+
+        int[] status = new int[1];
+        gl.glGetProgramiv(program, GL2.GL_LINK_STATUS, status, 0);
+        if (status[0] == 0) {
+            System.err.println("Aviso: no se pudo enlazar el shader de instancing, se usa el dibujo por objeto.");
+            gl.glDeleteProgram(program);
+            program = 0;
+            return;
+        }
+
+        lightingUniform = gl.glGetUniformLocation(program, "lighting");
+        supported = true;
+    }
+
+    public boolean isSupported() {
+        return supported;
+    }
+
+    /**
+     * Dibuja mesh una vez por cada desplazamiento de instances.
+     * @param lit true si la malla se ilumina con LIGHT0 (false para objetos sin luz).
+     */
+    public void draw(GLStateCache state, Mesh mesh, InstanceBuffer instances, boolean lit) {
+        if (instances.getUploadedCount() == 0) return;
+        bind(state, mesh, lit);
+        drawBound(state, mesh, instances);
+    }
+
+    /**
+     * Deja listos la malla, el programa y la iluminación. Después se pueden dibujar
+     * varios buffers de instancias de la misma malla con {@link #drawBound}.
+     */
+    public void bind(GLStateCache state, Mesh mesh, boolean lit) {
+        mesh.bind(state);
+
+        if (supported) {
+            state.useProgram(program);
+            state.gl().glUniform1f(lightingUniform, lit ? 1.0f : 0.0f);
+        } else {
+            state.useProgram(0);
+            if (lit) state.enable(GL2.GL_LIGHTING); else state.disable(GL2.GL_LIGHTING);
+        }
+    }
+
+    /** Dibuja instances con la malla enlazada por {@link #bind}. */
+    public void drawBound(GLStateCache state, Mesh mesh, InstanceBuffer instances) {
+        int count = instances.getUploadedCount();
+        if (count == 0) return;
+
+        GL2 gl = state.gl();
+        if (supported) {
+            // Los punteros de la malla ya quedaron fijados con su VBO; cambiar el enlace no los afecta
+            state.bindArrayBuffer(instances.getVbo());
+            gl.glEnableVertexAttribArray(OFFSET_ATTRIB);
+            gl.glVertexAttribPointer(OFFSET_ATTRIB, 3, GL2.GL_FLOAT, false,
+                    InstanceBuffer.FLOATS_PER_INSTANCE * Float.BYTES, 0);
+            gl.glVertexAttribDivisor(OFFSET_ATTRIB, 1);
+
+            mesh.drawInstancedBound(gl, count);
+
+            gl.glVertexAttribDivisor(OFFSET_ATTRIB, 0);
+            gl.glDisableVertexAttribArray(OFFSET_ATTRIB);
+        } else {
+            // Respaldo: una traslación y un glDrawArrays por instancia
+            for (int i = 0; i < count; i++) {
+                gl.glPushMatrix();
+                gl.glTranslatef(instances.getX(i), instances.getY(i), instances.getZ(i));
+                mesh.drawBound(gl);
+                gl.glPopMatrix();
+            }
+        }
+    }
+
+    public void dispose(GL2 gl) {
+        if (program != 0) {
+            gl.glDeleteProgram(program);
+            program = 0;
+        }
+        supported = false;
+    }
+
+    private static int compilar(GL2 gl, int type, String source) {
+        int shader = gl.glCreateShader(type);
+        gl.glShaderSource(shader, 1, new String[] { source }, new int[] { source.length() }, 0);
+        gl.glCompileShader(shader);
+
+        int[] status = new int[1];
+        gl.glGetShaderiv(shader, GL2.GL_COMPILE_STATUS, status, 0);
+        if (status[0] == 0) {
+            byte[] log = new byte[1024];
+            int[] length = new int[1];
+            gl.glGetShaderInfoLog(shader, log.length, length, 0, log, 0);
+            System.err.println("Aviso: error al compilar shader: "
+                    + new String(log, 0, length[0], StandardCharsets.UTF_8));
+            gl.glDeleteShader(shader);
+            return 0;
+        }
+        return shader;
+    }
+}
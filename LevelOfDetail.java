@@ -0,0 +1,50 @@
+package main;
+
+/**
+ * Umbrales de nivel de detalle por distancia a la cámara (en unidades de mundo).
+ * Las comparaciones se hacen con distancias al cuadrado para evitar raíces.
+ */
+public final class LevelOfDetail {
+
+    /** Segmentos de tronco/conos de cada nivel de árbol con malla. */
+    public static final int[] TREE_SEGMENTS = {10, 6, 4};
+    /** Distancia máxima de cada nivel de árbol; más allá se usa el impostor. */
+    public static final float[] TREE_DISTANCES = {20.0f, 45.0f, 80.0f};
+    public static final int TREE_IMPOSTOR = TREE_SEGMENTS.length;
+
+    /** Divisiones (slices = stacks) de la esfera de cada nivel de manzana. */
+    public static final int[] APPLE_DIVISIONS = {10, 6};
+    /** Distancia máxima de cada nivel de manzana; más allá no se dibujan. */
+    public static final float[] APPLE_DISTANCES = {20.0f, 45.0f};
+    public static final int APPLE_NONE = APPLE_DIVISIONS.length;
+
+    /** Celdas por lado de la rejilla de terreno de cada chunk. */
+    public static final int TERRAIN_CELLS = 32;
+    /** Paso entre vértices de cada nivel de terreno (dividen a TERRAIN_CELLS). */
+    public static final int[] TERRAIN_STEPS = {1, 2, 4, 8};
+    /** Distancia máxima (al centro del chunk) de cada nivel de terreno; más allá, el último. */
+    public static final float[] TERRAIN_DISTANCES = {50.0f, 100.0f, 150.0f};
+
+    private LevelOfDetail() { }
+
+    public static int treeLevel(float distanceSq) {
+        return level(TREE_DISTANCES, distanceSq);
+    }
+
+    public static int appleLevel(float distanceSq) {
+        return level(APPLE_DISTANCES, distanceSq);
+    }
+
+    public static int terrainLevel(float distanceSq) {
+        return level(TERRAIN_DISTANCES, distanceSq);
+    }
+
+    private static int level(float[] distances, float distanceSq) {
+        for (int i = 0; i < distances.length; i++) {
+            if (distanceSq < distances[i] * distances[i]) {
+                return i;
+            }
+        }
+        return distances.length;
+    }
+}
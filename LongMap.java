@@ -0,0 +1,218 @@
+package main;
+
+/**
+ * Mapa de claves long a objetos con direccionamiento abierto (sondeo lineal).
+ * Es para las claves de chunk de {@link WorldChunk#key(int, int)}: un HashMap
+ * crearía un Long por cada consulta.
+ *
+ * Con accessOrder las entradas quedan enlazadas de la usada hace más tiempo a
+ * la más reciente (get y put cuentan como uso), como un LinkedHashMap en orden
+ * de acceso; {@link #eldest()} da la primera.
+ *
+ * Para recorrerlo se usan los huecos: de 0 a {@link #capacity()} - 1, saltando
+ * los que {@link #valueAt(int)} da null. Quitar con {@link #removeAt(int)}
+ * puede correr al mismo hueco una entrada que todavía no se vio (hay que volver
+ * a mirarlo) o, al dar la vuelta, una que ya se vio (se verá dos veces).
+ *
+ * Solo reserva memoria al crecer. No es seguro entre hilos.
+ */
+final class LongMap<V> {
+
+    private static final int NONE = -1;
+
+    private final boolean accessOrder;
+    private long[] keys;
+    private Object[] values; // null: hueco libre
+    private int[] before;    // enlaces del orden de acceso (solo con accessOrder)
+    private int[] after;
+    private int head = NONE, tail = NONE;
+    private int size = 0;
+    private int mask;
+
+    LongMap(int expectedSize, boolean accessOrder) {
+        this.accessOrder = accessOrder;
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 4 / 3 + 1) - 1) << 1;
+        reservar(capacity);
+    }
+
+    private void reservar(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        if (accessOrder) {
+            before = new int[capacity];
+            after = new int[capacity];
+        }
+        mask = capacity - 1;
+        head = tail = NONE;
+    }
+
+    private int inicial(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /** Hueco de key, o NONE si no está. */
+    private int buscar(long key) {
+        for (int slot = inicial(key); values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) return slot;
+        }
+        return NONE;
+    }
+
+    public V get(long key) {
+        int slot = buscar(key);
+        if (slot == NONE) return null;
+        if (accessOrder) alFinal(slot);
+        return valueAt(slot);
+    }
+
+    /** Como get, pero sin contar como uso. */
+    public boolean containsKey(long key) {
+        return buscar(key) != NONE;
+    }
+
+    /** @return el valor anterior de key, o null si no estaba */
+    public V put(long key, V value) {
+        if (value == null) throw new NullPointerException("valor nulo para la clave " + key);
+        int slot = inicial(key);
+        for (; values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                V previous = valueAt(slot);
+                values[slot] = value;
+                if (accessOrder) alFinal(slot);
+                return previous;
+            }
+        }
+        if (size + 1 > (mask + 1) * 3 / 4) {
+            crecer();
+            put(key, value);
+            return null;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        if (accessOrder) enlazarAlFinal(slot);
+        return null;
+    }
+
+    /** @return el valor que tenía key, o null si no estaba */
+    public V remove(long key) {
+        int slot = buscar(key);
+        return slot == NONE ? null : removeAt(slot);
+    }
+
+    /** Quita la entrada del hueco slot (ver el recorrido en la descripción de la clase). */
+    public V removeAt(int slot) {
+        V value = valueAt(slot);
+        if (value == null) return null;
+        if (accessOrder) desenlazar(slot);
+        size--;
+
+        // Corre hacia atrás las entradas que quedarían separadas de su hueco inicial
+        int hole = slot;
+        for (int i = (slot + 1) & mask; values[i] != null; i = (i + 1) & mask) {
+            if (((i - inicial(keys[i])) & mask) >= ((i - hole) & mask)) {
+                mover(i, hole);
+                hole = i;
+            }
+        }
+        keys[hole] = 0L;
+        values[hole] = null;
+        return value;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Número de huecos para recorrer el mapa. */
+    public int capacity() {
+        return mask + 1;
+    }
+
+    public long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    /** Valor del hueco slot, o null si está libre. */
+    @SuppressWarnings("unchecked")
+    public V valueAt(int slot) {
+        return (V) values[slot];
+    }
+
+    /** Hueco de la entrada usada hace más tiempo, o -1 si está vacío (solo con accessOrder). */
+    public int eldest() {
+        if (!accessOrder) throw new IllegalStateException("el mapa no guarda el orden de acceso");
+        return head;
+    }
+
+    // ============================= Orden de acceso =============================
+
+    private void enlazarAlFinal(int slot) {
+        before[slot] = tail;
+        after[slot] = NONE;
+        if (tail == NONE) {
+            head = slot;
+        } else {
+            after[tail] = slot;
+        }
+        tail = slot;
+    }
+
+    private void desenlazar(int slot) {
+        int b = before[slot], a = after[slot];
+        if (b == NONE) head = a; else after[b] = a;
+        if (a == NONE) tail = b; else before[a] = b;
+    }
+
+    private void alFinal(int slot) {
+        if (slot == tail) return;
+        desenlazar(slot);
+        enlazarAlFinal(slot);
+    }
+
+    /** Pasa la entrada de from al hueco libre to, con sus enlaces. */
+    private void mover(int from, int to) {
+        keys[to] = keys[from];
+        values[to] = values[from];
+        if (!accessOrder) return;
+        int b = before[from], a = after[from];
+        before[to] = b;
+        after[to] = a;
+        if (b == NONE) head = to; else after[b] = to;
+        if (a == NONE) tail = to; else before[a] = to;
+    }
+
+    private void crecer() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        int[] oldAfter = after;
+        int oldHead = head;
+        size = 0;
+        reservar(oldKeys.length * 2);
+        if (accessOrder) {
+            // En el mismo orden de acceso
+            for (int slot = oldHead; slot != NONE; slot = oldAfter[slot]) {
+                insertarNueva(oldKeys[slot], oldValues[slot]);
+            }
+        } else {
+            for (int slot = 0; slot < oldKeys.length; slot++) {
+                if (oldValues[slot] != null) insertarNueva(oldKeys[slot], oldValues[slot]);
+            }
+        }
+    }
+
+    /** Inserta una clave que no está, sin mirar la capacidad. */
+    private void insertarNueva(long key, Object value) {
+        int slot = inicial(key);
+        while (values[slot] != null) slot = (slot + 1) & mask;
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        if (accessOrder) enlazarAlFinal(slot);
+    }
+}
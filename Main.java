@@ -7,114 +7,302 @@ import com.jogamp.opengl.GLEventListener;
 import com.jogamp.opengl.GLProfile;
 import com.jogamp.opengl.awt.GLCanvas;
 import com.jogamp.opengl.util.FPSAnimator;
-import com.jogamp.opengl.glu.GLU;
 
 import javax.swing.JFrame;
+import javax.swing.Timer;
 import java.awt.Dimension;
-import java.awt.Point;
 import java.awt.Robot; // Necesario para mover el cursor del mouse
 import java.awt.AWTException; 
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
+import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionListener;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Main extends GLCanvas implements GLEventListener, KeyListener, MouseMotionListener {
 
     private static final String TITULO = "Simulación 3D: Ciclo Día y Noche y Controles Mejorados";
-    private static final int FPS = 60;
     private static final int WINDOW_WIDTH = 800;
     private static final int WINDOW_HEIGHT = 600;
     
-    // Variables de control de cámara
+    // Variables de control de cámara (solo las toca la simulación)
     private float camX = 0.0f, camY = 1.7f, camZ = 0.0f; 
+    private float prevCamX = 0.0f, prevCamY = 1.7f, prevCamZ = 0.0f; // paso anterior, para interpolar
+    private float velX = 0.0f, velY = 0.0f, velZ = 0.0f; // unidades por segundo
     private float yaw = 0.0f; 
     private float pitch = 0.0f; 
-    private final float moveSpeed = 0.05f; 
-    private final float mouseSpeed = 0.15f; 
-    private final float turnSpeed = 2.0f; // Velocidad de giro para Q/E
+    
+    // La simulación publica una instantánea por paso; el dibujo toma la última y la interpola en vista,
+    // la cámara de todo el cuadro. El dibujo no lee camX/yaw/... directamente
+    private final TripleBuffer<CameraState> camara = new TripleBuffer<>(CameraState::new);
+    private final CameraState vista = new CameraState();
+    // Unidades por segundo (antes 0.05 por repetición de tecla); -Dcamera.speed la cambia (Benchmark --fly)
+    private final float moveSpeed = Math.max(1, Integer.getInteger("camera.speed", 3));
+    private final float moveAcceleration = moveSpeed / 0.15f; // llega a la velocidad máxima en 0,15 s
+    private final float mouseSpeed = 0.15f; // grados por píxel
+    private final float turnSpeed = 90.0f; // Velocidad de giro para Q/E, grados por segundo
+    // COLISIÓN: cápsula vertical de la cámara contra los troncos (cilindros de WorldChunk.TRUNK_RADIUS)
+    private static final float CAMERA_RADIUS = 0.3f;
+    private static final float CAMERA_BODY = 1.2f; // largo de la cápsula por debajo de los ojos
+    private static final int MAX_ITERACIONES_COLISION = 3;
+    private int[] troncosCercanos = new int[256]; // crece si una consulta no cabe
+    
+    // Teclas pulsadas y movimiento del ratón, escritos por el hilo de AWT
+    private final InputState entrada = new InputState();
+    private final long[] teclasPaso = new long[InputState.keyWords()]; // copia del paso en curso
 
     private Robot robot; // Objeto para reposicionar el cursor
-    private boolean mouseWarped = false; // Bandera para evitar el loop infinito
-    private Point lastMouse = null;
+    private static final int MARGEN_RECENTRADO = 48; // píxeles al borde de la ventana que disparan el recentrado
+    private static final long ESPERA_RECENTRADO_MS = 100; // si el evento del recentrado no llega
+    // Posición del cursor y recentrado pendiente (solo los toca el hilo de AWT; sin Point: no reserva memoria)
+    private boolean hasLastMouse = false;
+    private int lastMouseX, lastMouseY;
+    private boolean recentradoPendiente = false;
+    private long recentradoMs; // marca de tiempo del evento que lo pidió
+    // El hilo de OpenGL habilita un recentrado por cuadro
+    private final AtomicBoolean recentradoPermitido = new AtomicBoolean(true);
+    // Medición del ratón (escribe el hilo de AWT, lee el overlay)
+    private volatile long eventosRaton = 0, eventosPerdidos = 0, recentrados = 0;
     
-    // Generación de Entorno
-    private static final int NUM_TREES = 30;
-    private static final int APPLES_PER_TREE = 8;
-    private static final int FIELD_SIZE = 40;
+    // Generación de Entorno (por chunk: cada chunk es un campo de FIELD_SIZE x FIELD_SIZE)
+    static final int NUM_TREES = 30;
+    static final int APPLES_PER_TREE = 8;
+    static final int FIELD_SIZE = 40;
+    private final int numTrees;      // valores en uso (por defecto las constantes; el benchmark los cambia)
+    private final int applesPerTree;
+    private final int fieldSize;
+    private static final int CHUNK_RADIUS = 3; // chunks cargados alrededor de la cámara en cada eje
+    private static final long CHUNK_MEMORY_BUDGET = 64L * 1024 * 1024;
     
     // VARIABLES DE CICLO DÍA-NOCHE
     private float sunAngle = 0.0f; 
-    private final float sunSpeed = 0.1f; 
+    private float prevSunAngle = 0.0f;  // estado del paso anterior, para interpolar
+    private float renderSunAngle = 0.0f; // ángulo interpolado que se dibuja en este cuadro
+    private final float sunSpeed = 6.0f; // grados por segundo (antes 0.1 por cuadro a 60 FPS)
+    
+    // SIMULACIÓN A PASO FIJO, independiente de los FPS de dibujo
+    private static final int SIM_HZ = 60;
+    private final FixedTimestep timestep = new FixedTimestep(SIM_HZ);
+    
+    // MEDICIÓN POR FASES (F3 muestra/oculta el overlay)
+    private static final int FASE_LUZ = 0, FASE_CIELO = 1, FASE_SELECCION = 2,
+            FASE_COLA = 3, FASE_DIBUJO = 4;
+    private final FrameProfiler profiler =
+            new FrameProfiler("luz", "cielo", "seleccion", "cola", "dibujo");
+    
+    // RITMO ADAPTATIVO: baja la resolución de la escena (FBO escalado) y, si no alcanza, la tasa objetivo
+    final FramePacer pacer = new FramePacer(FramePacer.Settings.fromSystemProperties());
+    private final ScaledFramebuffer escalado = new ScaledFramebuffer();
+    private int anchoVentana = WINDOW_WIDTH, altoVentana = WINDOW_HEIGHT;
+    
+    // GRABACIÓN (F9): PBOs en anillo y codificación en hilos de fondo
+    private final FrameCapture captura = new FrameCapture();
+    
+    // MUNDO POR CHUNKS: generado en segundo plano a partir de la semilla
+    private final long worldSeed;
+    private final Terrain terreno;
+    private final WorldFile mundoGuardado; // -Dworld.file: chunks mapeados del archivo en vez de generados
+    
+    // GRABACIÓN Y REPRODUCCIÓN DE ENTRADA: -Dinput.record=archivo graba la sesión, -Dinput.replay=archivo
+    // la repite en lockstep (un paso fijo por cuadro) para que cada corrida dibuje los mismos cuadros
+    private final InputReplay reproduccion;
+    private InputRecorder grabadora;
+    private boolean finReproduccionAvisado = false;
+    private final InputReplay.Target destinoReproduccion = new InputReplay.Target() {
+        // Directo a pulsar/soltar, sin armar KeyEvents: el hilo de OpenGL no reserva nada por evento
+        @Override
+        public void keyPressed(int keyCode) {
+            pulsar(keyCode);
+        }
+
+        @Override
+        public void keyReleased(int keyCode) {
+            soltar(keyCode);
+        }
+
+        @Override
+        public void mouseDelta(int dx, int dy) {
+            // El mismo punto donde mouseMoved deja el desplazamiento (sin posiciones ni recentrado)
+            entrada.addMouseDelta(dx, dy);
+        }
+
+        @Override
+        public void click() {
+            clicPendiente.set(true);
+        }
+    };
+    private ChunkStreamer streamer;
+    
+    // MALLAS EN VBO (se generan una vez en init), un nivel de detalle por índice
+    private final Mesh[] mallasArbol = new Mesh[LevelOfDetail.TREE_SEGMENTS.length];
+    private final Mesh[] mallasManzana = new Mesh[LevelOfDetail.APPLE_DIVISIONS.length];
+    // TERRENO: un VBO por chunk del radio (se rellena la primera vez que se ve) y los índices de cada nivel,
+    // compartidos. Los VBO se crean en init y pasan de un chunk a otro: el que sale del radio devuelve el suyo
+    private final Map<WorldChunk, Mesh> mallasTerreno = new IdentityHashMap<>(MAX_CHUNKS_ACTIVOS);
+    private final ArrayDeque<Mesh> mallasTerrenoLibres = new ArrayDeque<>(MAX_CHUNKS_ACTIVOS);
+    private TerrainLevels nivelesTerreno;
+    private Mesh mallaMontanas;
+    private Mesh mallaSol, mallaLuna; // sustituyen al gluSphere (y su quadric) de cada cuadro
+    private final TreeImpostor impostor = new TreeImpostor();
+    private float luzImpostor = 1.0f;
+    
+    // INSTANCING: una malla, muchos desplazamientos (un buffer por nivel de detalle)
+    private final InstancedRenderer instancer = new InstancedRenderer();
     
-    // ARREGLOS DE POSICIÓN
-    private final float[][] treePositions;
-    private final float[][][] applePositions; 
+    // ESTADO GL: evita reenviar al driver cambios de estado que no cambian nada
+    private final GLStateCache estado = new GLStateCache();
+    
+    // COLA DE DIBUJO: los dibujar* encolan, se ordena por estado/material/malla y se envía por lotes
+    private static final int MAX_CHUNKS_ACTIVOS = (2 * CHUNK_RADIUS + 1) * (2 * CHUNK_RADIUS + 1);
+    private static final int MAX_COMANDOS = 32 + MAX_CHUNKS_ACTIVOS;
+    private final RenderQueue cola = new RenderQueue(instancer, MAX_COMANDOS);
+    private final InstanceBuffer[] instanciasArboles = new InstanceBuffer[LevelOfDetail.TREE_SEGMENTS.length];
+    private final InstanceBuffer[] instanciasManzanas = new InstanceBuffer[LevelOfDetail.APPLE_DIVISIONS.length];
+    private final Mesh[] terrenoVisible = new Mesh[MAX_CHUNKS_ACTIVOS];
+    private final int[] nivelTerrenoVisible = new int[MAX_CHUNKS_ACTIVOS];
+    private int terrenosVisibles = 0;
+    
+    // CULLING: chunks y rejilla de cada chunk contra el volumen de visión de la cámara
+    private final Frustum frustum = new Frustum();
+    private int[] arbolesVisibles; // crece si un chunk trae más árboles que numTrees
+    // El título lo actualiza un Timer de Swing leyendo estos contadores, fuera del hilo de dibujo
+    private volatile int arbolesDescartados = 0;
+    private volatile int arbolesActivos = 0;
+    
+    // APUNTAR: rayo desde el centro de la vista contra la BVH de cada chunk; clic izquierdo recoge la manzana.
+    // La mira del overlay usa la vista del cuadro; el clic se resuelve dentro del paso fijo (ver pasoFijo)
+    private static final float ALCANCE = 30.0f;
+    private final Ray rayo = new Ray();
+    private int primitivaRayo = -1; // resultado de lanzarRayo()
+    private final AtomicBoolean clicPendiente = new AtomicBoolean(false);
+    private volatile String apuntado = "nada";
+    private volatile long apuntarNanos = 0;
+    private volatile int manzanasRecogidas = 0;
+    
+    // LUZ Y CIELO: curvas del día horneadas una vez; cada cuadro solo se lee la tabla
+    private final Atmosphere atmosfera = crearAtmosfera();
+    private final Atmosphere.State cielo = new Atmosphere.State();
+    private AtmosphereTexture texturaAtmosfera; // la misma tabla para shaders
+    private final float[] lightPosition = new float[4];
     
-    private GLU glu; 
     private Random rand;
 
     public Main(GLCapabilities capabilities) {
+        this(capabilities, NUM_TREES, APPLES_PER_TREE, FIELD_SIZE);
+    }
+    
+    /** Escena con tamaños propios; la usa Benchmark para probar bosques más grandes. */
+    Main(GLCapabilities capabilities, int numTrees, int applesPerTree, int fieldSize) {
         super(capabilities);
+        // Una reproducción o un mundo guardado traen su propia semilla y tamaños; mandan sobre los de la escena
+        this.reproduccion = abrirReproduccion();
+        WorldFile guardado = abrirMundoGuardado();
+        if (reproduccion != null) {
+            numTrees = reproduccion.getTreesPerChunk();
+            applesPerTree = reproduccion.getApplesPerTree();
+            fieldSize = reproduccion.getChunkSize();
+            if (guardado != null && (guardado.getWorldSeed() != reproduccion.getWorldSeed()
+                    || guardado.getTreesPerChunk() != numTrees || guardado.getApplesPerTree() != applesPerTree
+                    || guardado.getChunkSize() != fieldSize)) {
+                System.err.println("Aviso: el mundo guardado no es el de la grabación; se genera.");
+                cerrarMundoGuardado(guardado);
+                guardado = null;
+            }
+            // A resolución y tasa fijas: si no, los cuadros dibujados cambian de una corrida a otra
+            pacer.setAdaptive(false);
+        } else if (guardado != null) {
+            numTrees = guardado.getTreesPerChunk();
+            applesPerTree = guardado.getApplesPerTree();
+            fieldSize = guardado.getChunkSize();
+        }
+        this.mundoGuardado = guardado;
+        this.numTrees = numTrees;
+        this.applesPerTree = applesPerTree;
+        this.fieldSize = fieldSize;
+        this.arbolesVisibles = new int[numTrees];
         
         // Intentar inicializar el Robot para mover el cursor
         try {
             robot = new Robot();
         } catch (AWTException e) {
-            System.err.println("Advertencia: No se pudo inicializar java.awt.Robot. El mouse warping no funcionará.");
+            System.err.println("Advertencia: No se pudo inicializar java.awt.Robot. El cursor no se recentrará.");
         }
         
-        this.treePositions = new float[NUM_TREES][2];
-        this.applePositions = new float[NUM_TREES][APPLES_PER_TREE][3];
         this.rand = new Random();
+        if (reproduccion != null) {
+            this.worldSeed = reproduccion.getWorldSeed();
+        } else if (mundoGuardado != null) {
+            this.worldSeed = mundoGuardado.getWorldSeed();
+        } else {
+            this.worldSeed = Long.getLong("world.seed", rand.nextLong());
+        }
+        this.grabadora = reproduccion == null ? abrirGrabadora() : null;
+        this.terreno = new Terrain(worldSeed);
+        this.camY = terreno.height(camX, camZ) + 1.7f; // a la altura de los ojos sobre el suelo
+        this.prevCamY = camY;
 
         this.setPreferredSize(new Dimension(WINDOW_WIDTH, WINDOW_HEIGHT));
         this.addGLEventListener(this);
         
         this.addKeyListener(this);
         this.addMouseMotionListener(this);
+        this.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                if (e.getButton() == MouseEvent.BUTTON1 && entradaReal()) clicPendiente.set(true);
+            }
+        });
+        this.addFocusListener(new FocusAdapter() {
+            @Override
+            public void focusLost(FocusEvent e) {
+                // Sin foco no llegan los keyReleased: se sueltan todas las teclas
+                if (entradaReal()) entrada.releaseAll();
+            }
+        });
         this.setFocusable(true);
         
-        this.glu = new GLU();
+        profiler.setExtraLines(() -> new String[] {
+                "arboles descartados: " + arbolesDescartados,
+                "estado GL: " + estado.getElidedCalls() + " llamadas evitadas, " + estado.getForwardedCalls() + " enviadas",
+                "cola: " + cola.getCommandCount() + " comandos en " + cola.getBatchCount() + " lotes",
+                "raton: " + eventosRaton + " eventos, " + eventosPerdidos + " perdidos, " + recentrados + " recentrados",
+                "mira: " + apuntado + " (" + apuntarNanos / 1000 + " us), " + manzanasRecogidas + " manzanas recogidas",
+                "chunks: " + streamer.getLoadedCount() + " cargados, " + streamer.getPendingCount() + " en cola",
+                String.format(Locale.ROOT, "ritmo: %d FPS objetivo, escala %.2f, p90 %.2f/%.2f ms",
+                        pacer.getTargetFps(), pacer.getScale(), pacer.getLastP90Nanos() / 1_000_000.0,
+                        pacer.getBudgetMillis()),
+                String.format(Locale.ROOT, "captura: %s, %d escritos, %d descartados, %.2f ms",
+                        captura.isRecording() ? "grabando" : "F9", captura.getWrittenCount(),
+                        captura.getDroppedCount(), captura.getLastNanos() / 1_000_000.0)
+        });
     }
     
-    private void generateWorld() {
-        for (int i = 0; i < NUM_TREES; i++) {
-            treePositions[i][0] = rand.nextFloat() * FIELD_SIZE - (FIELD_SIZE / 2.0f);
-            treePositions[i][1] = rand.nextFloat() * FIELD_SIZE - (FIELD_SIZE / 2.0f);
-        }
-        
-        float totalHeight = 3.0f; 
-        float baseRadius = 1.5f; 
-
-        for (int i = 0; i < NUM_TREES; i++) {
-            for (int j = 0; j < APPLES_PER_TREE; j++) {
-                
-                float y = rand.nextFloat() * totalHeight * 0.8f; 
-                float currentRadiusLimit = baseRadius * (1.0f - y / totalHeight);
-                
-                float angle = rand.nextFloat() * (float) (2.0 * Math.PI);
-                float r = rand.nextFloat() * currentRadiusLimit * 0.8f; 
-
-                float x = (float) (r * Math.cos(angle));
-                float z = (float) (r * Math.sin(angle));
-                
-                applePositions[i][j][0] = x;
-                applePositions[i][j][1] = y + 2.0f; 
-                applePositions[i][j][2] = z;
-            }
-        }
-    }
-
-
     // ============================= GLEventListener Implementación =============================
 
     @Override
     public void init(GLAutoDrawable drawable) {
         GL2 gl = drawable.getGL().getGL2();
+        estado.reset(gl);
+        publicarCamara(); // el primer cuadro puede llegar antes del primer paso
         
-        generateWorld(); 
+        // El mundo ya no se genera aquí: los chunks llegan desde los hilos de fondo
+        streamer = new ChunkStreamer(worldSeed, fieldSize, numTrees, applesPerTree,
+                CHUNK_RADIUS, CHUNK_MEMORY_BUDGET, mundoGuardado);
+        // En la reproducción los chunks no pueden llegar "cuando estén": las colisiones dependen de ellos
+        streamer.setSynchronous(reproduccion != null);
+        int maxArboles = streamer.getMaxActiveTrees();
 
         gl.glEnable(GL2.GL_DEPTH_TEST);
         gl.glEnable(GL2.GL_CULL_FACE); 
@@ -123,70 +311,597 @@ public class Main extends GLCanvas implements GLEventListener, KeyListener, Mous
         gl.glEnable(GL2.GL_LIGHTING);
         gl.glEnable(GL2.GL_LIGHT0);
         gl.glEnable(GL2.GL_COLOR_MATERIAL); 
+        
+        // Geometría estática: se calcula una sola vez y queda en la GPU
+        for (int lod = 0; lod < mallasArbol.length; lod++) {
+            int segments = LevelOfDetail.TREE_SEGMENTS[lod];
+            mallasArbol[lod] = Mesh.upload(gl, MeshFactory.crearArbol(segments).toBuffer(), GL2.GL_TRIANGLES);
+            instanciasArboles[lod] = new InstanceBuffer(maxArboles);
+        }
+        for (int lod = 0; lod < mallasManzana.length; lod++) {
+            int divisions = LevelOfDetail.APPLE_DIVISIONS[lod];
+            mallasManzana[lod] = Mesh.upload(gl,
+                    MeshFactory.crearEsfera(0.15f, divisions, divisions, 1.0f, 0.0f, 0.0f).toBuffer(), GL2.GL_TRIANGLES);
+            instanciasManzanas[lod] = new InstanceBuffer(maxArboles * applesPerTree);
+        }
+        nivelesTerreno = TerrainLevels.upload(gl, LevelOfDetail.TERRAIN_CELLS, LevelOfDetail.TERRAIN_STEPS);
+        for (int i = 0; i < MAX_CHUNKS_ACTIVOS; i++) {
+            mallasTerrenoLibres.push(Mesh.allocate(gl, WorldChunk.TERRAIN_VERTICES, GL2.GL_TRIANGLE_STRIP));
+        }
+        mallaMontanas = Mesh.upload(gl, MeshFactory.crearMontanas().toBuffer(), GL2.GL_TRIANGLES);
+        mallaSol = Mesh.upload(gl, MeshFactory.crearEsfera(10.0f, 20, 20, 1.0f, 0.8f, 0.0f).toBuffer(), GL2.GL_TRIANGLES);
+        mallaLuna = Mesh.upload(gl, MeshFactory.crearEsfera(10.0f, 20, 20, 0.8f, 0.8f, 1.0f).toBuffer(), GL2.GL_TRIANGLES);
+        
+        instancer.init(gl);
+        texturaAtmosfera = AtmosphereTexture.upload(gl, atmosfera);
+        impostor.bake(estado, mallasArbol[0], maxArboles);
+        pacer.init(drawable);
+        pacer.setScalingAvailable(escalado.init(gl));
+        
+        // Las subidas de VBO y el FBO del impostor tocaron el estado directamente
+        estado.invalidate();
+    }
+    
+    /**
+     * Descarta los chunks fuera del volumen de visión, consulta la rejilla de los
+     * demás y reparte los árboles visibles (y sus manzanas) entre los buffers de
+     * cada nivel de detalle según la distancia a la cámara. Los más lejanos pasan
+     * a impostores.
+     */
+    private void actualizarInstanciasVisibles(GL2 gl) {
+        streamer.update(vista.x, vista.z);
+        frustum.update(vista.x, vista.y, vista.z, vista.yaw, vista.pitch);
+        apuntar();
+        
+        for (InstanceBuffer buffer : instanciasArboles) buffer.clear();
+        for (InstanceBuffer buffer : instanciasManzanas) buffer.clear();
+        terrenosVisibles = 0;
+        liberarTerrenosFuera();
+        impostor.clear();
+        
+        // Eje derecho de la cámara en el mundo (primera fila de Ry(yaw))
+        float yawRad = (float) Math.toRadians(vista.yaw);
+        float rightX = (float) Math.cos(yawRad);
+        float rightZ = (float) Math.sin(yawRad);
+        int lodMasSimple = mallasArbol.length - 1;
+        
+        List<WorldChunk> chunks = streamer.getActiveChunks();
+        int activos = 0;
+        int arbolesDibujados = 0;
+        
+        for (int c = 0; c < chunks.size(); c++) {
+            WorldChunk chunk = chunks.get(c);
+            activos += chunk.treeCount;
+            if (!chunk.isVisible(frustum)) continue;
+            
+            agregarTerreno(gl, chunk);
+            
+            int visibles = chunk.getGrid().queryVisible(frustum, arbolesVisibles);
+            if (visibles > arbolesVisibles.length) {
+                arbolesVisibles = new int[Integer.highestOneBit(visibles) << 1];
+                visibles = chunk.getGrid().queryVisible(frustum, arbolesVisibles);
+            }
+            arbolesDibujados += visibles;
+            
+            for (int k = 0; k < visibles; k++) {
+                int i = arbolesVisibles[k];
+                float x = chunk.treeX(i);
+                float y = chunk.treeY(i);
+                float z = chunk.treeZ(i);
+                float dx = x - vista.x;
+                float dz = z - vista.z;
+                float distanceSq = dx * dx + dz * dz;
+                
+                int treeLod = LevelOfDetail.treeLevel(distanceSq);
+                if (treeLod == LevelOfDetail.TREE_IMPOSTOR) {
+                    if (impostor.isReady()) {
+                        impostor.add(x, y, z, rightX, rightZ);
+                    } else {
+                        instanciasArboles[lodMasSimple].add(x, y, z);
+                    }
+                } else {
+                    instanciasArboles[treeLod].add(x, y, z);
+                }
+                
+                int appleLod = LevelOfDetail.appleLevel(distanceSq);
+                if (appleLod == LevelOfDetail.APPLE_NONE) continue;
+                for (int j = 0; j < chunk.applesPerTree; j++) {
+                    if (chunk.isAppleRemoved(i, j)) continue;
+                    instanciasManzanas[appleLod].add(chunk.appleX(i, j), chunk.appleY(i, j), chunk.appleZ(i, j));
+                }
+            }
+        }
+        for (InstanceBuffer buffer : instanciasArboles) buffer.upload(estado);
+        for (InstanceBuffer buffer : instanciasManzanas) buffer.upload(estado);
+        
+        arbolesActivos = activos;
+        arbolesDescartados = activos - arbolesDibujados;
+    }
+    
+    /**
+     * Anota el suelo de un chunk visible con su nivel de detalle por distancia
+     * al centro del chunk; la primera vez copia sus vértices a un VBO libre.
+     */
+    private void agregarTerreno(GL2 gl, WorldChunk chunk) {
+        Mesh mesh = mallasTerreno.get(chunk);
+        if (mesh == null) {
+            FloatBuffer vertices = chunk.sharedTerrainVertices();
+            mesh = mallasTerrenoLibres.poll();
+            if (mesh == null || !mesh.update(gl, vertices)) {
+                // No debería pasar: hay un VBO por chunk del radio, todos del tamaño de un suelo
+                if (mesh != null) mesh.dispose(gl);
+                mesh = Mesh.upload(gl, vertices, GL2.GL_TRIANGLE_STRIP);
+            }
+            mallasTerreno.put(chunk, mesh);
+            estado.invalidate(); // update/upload cambian el buffer enlazado sin pasar por la caché
+        }
+        float dx = chunk.originX + chunk.size / 2.0f - vista.x;
+        float dz = chunk.originZ + chunk.size / 2.0f - vista.z;
+        terrenoVisible[terrenosVisibles] = mesh;
+        nivelTerrenoVisible[terrenosVisibles] = LevelOfDetail.terrainLevel(dx * dx + dz * dz);
+        terrenosVisibles++;
+    }
+    
+    /** Devuelve a los libres los VBO de suelo de los chunks que salieron del radio. */
+    private void liberarTerrenosFuera() {
+        List<WorldChunk> fuera = streamer.getDeactivatedChunks();
+        for (int i = 0; i < fuera.size(); i++) {
+            Mesh mesh = mallasTerreno.remove(fuera.get(i));
+            if (mesh != null) mallasTerrenoLibres.push(mesh);
+        }
+    }
+    
+    /** Lo que hay en la mira de la vista del cuadro, para el overlay. */
+    private void apuntar() {
+        long inicio = System.nanoTime();
+        rayo.setFromCamera(vista.x, vista.y, vista.z, vista.yaw, vista.pitch, ALCANCE);
+        WorldChunk chunkApuntado = lanzarRayo();
+        apuntarNanos = System.nanoTime() - inicio;
+        
+        if (chunkApuntado == null) {
+            apuntado = "nada";
+        } else if (chunkApuntado.isApplePrimitive(primitivaRayo)) {
+            apuntado = "manzana";
+        } else {
+            apuntado = "tronco";
+        }
+    }
+    
+    /**
+     * Clic dentro del paso fijo: apunta con la cámara al final del paso (no con
+     * la interpolada del dibujo, que depende del reloj) y recoge la manzana si la hay.
+     */
+    private void recogerApuntada() {
+        rayo.setFromCamera(camX, camY, camZ, yaw, pitch, ALCANCE);
+        WorldChunk chunk = lanzarRayo();
+        if (chunk != null && chunk.isApplePrimitive(primitivaRayo)
+                && streamer.removeApple(chunk, chunk.appleOf(primitivaRayo))) {
+            manzanasRecogidas++;
+        }
+    }
+    
+    /**
+     * Lanza el rayo ya preparado contra los chunks activos (la BVH de cada uno
+     * descarta casi todo con pocas cajas). Devuelve el chunk del impacto más
+     * cercano, o null, y deja su primitiva en primitivaRayo.
+     */
+    private WorldChunk lanzarRayo() {
+        // El mismo rayo para todos: tMax se acorta con cada impacto y poda los chunks siguientes
+        List<WorldChunk> chunks = streamer.getActiveChunks();
+        WorldChunk chunkApuntado = null;
+        primitivaRayo = -1;
+        for (int c = 0; c < chunks.size(); c++) {
+            int p = chunks.get(c).raycast(rayo);
+            if (p >= 0) {
+                chunkApuntado = chunks.get(c);
+                primitivaRayo = p;
+            }
+        }
+        return chunkApuntado;
+    }
+    
+    /**
+     * Título de la ventana con los árboles descartados y los chunks. Lo llama un
+     * Timer de Swing una vez por segundo, así el hilo de dibujo no arma cadenas.
+     */
+    private void mostrarContadorDescartados(JFrame ventana) {
+        if (streamer == null) return;
+        ventana.setTitle(TITULO + " | Árboles descartados: " + arbolesDescartados + "/" + arbolesActivos
+                + " | Chunks: " + streamer.getLoadedCount() + " (" + streamer.getPendingCount() + " en cola)");
     }
 
     @Override
     public void display(GLAutoDrawable drawable) {
         GL2 gl = drawable.getGL().getGL2();
+        // Los cuadros saltados dejan en pantalla el anterior; la simulación se pone al día en el siguiente
+        if (!pacer.beginFrame()) return;
+        estado.beginFrame(gl);
+        profiler.beginFrame(gl);
         
-        sunAngle = (sunAngle + sunSpeed) % 360.0f;
+        // Teclado, ratón y clic se aplican dentro de cada paso fijo (ver pasoFijo)
+        if (reproduccion != null) {
+            reproducirPaso();
+        } else {
+            recentradoPermitido.set(true);
+            int steps = timestep.advance(System.nanoTime());
+            long primerPaso = timestep.getTotalSteps() - steps;
+            for (int i = 0; i < steps; i++) {
+                pasoFijo(primerPaso + i);
+            }
+        }
+        float alpha = timestep.getAlpha();
+        renderSunAngle = FixedTimestep.lerpAngle(prevSunAngle, sunAngle, alpha);
+        camara.update();
+        vista.interpolate(camara.front(), alpha);
+        
+        profiler.begin(gl, FASE_LUZ);
         updateLightingAndSky(gl);
+        profiler.end(gl, FASE_LUZ);
         
+        // La escena va al FBO escalado si el ritmo lo pide; el overlay siempre a resolución completa
+        escalado.begin(gl, anchoVentana, altoVentana, pacer.getScale());
+        if (!escalado.isSupported()) pacer.setScalingAvailable(false);
         gl.glClear(GL2.GL_COLOR_BUFFER_BIT | GL2.GL_DEPTH_BUFFER_BIT);
         gl.glLoadIdentity();
         
         // Cámara 
-        gl.glRotatef(pitch, 1.0f, 0.0f, 0.0f); 
-        gl.glRotatef(yaw, 0.0f, 1.0f, 0.0f); 
-        gl.glTranslatef(-camX, -camY, -camZ);
+        gl.glRotatef(vista.pitch, 1.0f, 0.0f, 0.0f); 
+        gl.glRotatef(vista.yaw, 0.0f, 1.0f, 0.0f); 
+        gl.glTranslatef(-vista.x, -vista.y, -vista.z);
+        
+        profiler.begin(gl, FASE_SELECCION);
+        actualizarInstanciasVisibles(gl);
+        profiler.end(gl, FASE_SELECCION);
 
         // --- Dibujar la escena ---
         
+        profiler.begin(gl, FASE_CIELO);
         dibujarCielo(gl);
-        dibujarMontañas(gl); 
-        dibujarPlano(gl);
+        profiler.end(gl, FASE_CIELO);
+        
+        // El resto del mundo pasa por la cola (el cielo usa su propia matriz)
+        profiler.begin(gl, FASE_COLA);
+        cola.clear();
+        dibujarMontañas(); 
+        dibujarTerreno();
+        dibujarArboles();
+        profiler.end(gl, FASE_COLA);
         
-        for (int i = 0; i < NUM_TREES; i++) {
-            dibujarArbol(gl, treePositions[i][0], treePositions[i][1], applePositions[i]);
+        profiler.begin(gl, FASE_DIBUJO);
+        cola.flush(estado);
+        escalado.end(gl);
+        profiler.end(gl, FASE_DIBUJO);
+        
+        // El texto del overlay se dibuja con el pipeline fijo
+        estado.useProgram(0);
+        profiler.drawOverlay(gl, drawable.getSurfaceHeight());
+        profiler.endFrame();
+        captura.capture(gl, drawable.getSurfaceWidth(), drawable.getSurfaceHeight());
+        pacer.endFrame(drawable);
+    }
+    
+    /** true cuando ya llegaron todos los chunks alrededor de la cámara (lo usa Benchmark). */
+    boolean mundoListo() {
+        return streamer != null && streamer.getPendingCount() == 0 && streamer.getLoadedCount() > 0;
+    }
+    
+    /** Deja una tecla pulsada como si viniera del teclado (lo usa Benchmark --fly). */
+    void mantenerPulsada(int keyCode) {
+        entrada.press(keyCode);
+    }
+    
+    /** Pasos de la reproducción en curso, o -1 si no se reproduce nada (lo usa Benchmark). */
+    long pasosReproduccion() {
+        return reproduccion != null ? reproduccion.getTickCount() : -1;
+    }
+    
+    // ============================= Grabación y reproducción de entrada =============================
+    
+    /**
+     * Un paso fijo: graba la entrada con que se simula (teclas, ratón y clic), lo
+     * simula y resuelve el clic con la cámara al final del paso. Todo depende solo
+     * del número de paso, así la reproducción hace exactamente lo mismo.
+     */
+    private void pasoFijo(long paso) {
+        // Una sola copia de las teclas por paso: la que se graba es la que se simula
+        entrada.copyKeys(teclasPaso);
+        grabarTeclas(paso);
+        aplicarRaton(paso);
+        boolean clic = clicPendiente.getAndSet(false);
+        if (clic && grabadora != null) {
+            try {
+                grabadora.click(paso);
+            } catch (IOException e) {
+                errorDeGrabacion(e);
+            }
         }
+        actualizarSimulacion(timestep.getStepSeconds());
+        if (clic) recogerApuntada();
     }
     
-    private void updateLightingAndSky(GL2 gl) {
-        float angleRad = (float) Math.toRadians(sunAngle);
+    /**
+     * Reproducción en lockstep: exactamente un paso fijo por cuadro, sin mirar el
+     * reloj. Antes del paso entran las teclas, el ratón y los clics grabados para
+     * ese paso (por keyPressed/keyReleased, el acumulador del ratón y clicPendiente).
+     */
+    private void reproducirPaso() {
+        long paso = timestep.getTotalSteps();
+        reproduccion.applyInput(paso, destinoReproduccion);
+        timestep.step();
+        pasoFijo(paso);
+        if (!finReproduccionAvisado && reproduccion.isFinished(paso + 1)) {
+            finReproduccionAvisado = true;
+            System.out.println("Reproducción terminada en el paso " + (paso + 1));
+        }
+    }
+    
+    /** Con una reproducción en curso solo cuenta la entrada que inyecta ella; la del usuario se ignora. */
+    private boolean entradaReal() {
+        return reproduccion == null;
+    }
+    
+    private void grabarTeclas(long paso) {
+        if (grabadora == null) return;
+        try {
+            grabadora.keys(paso, teclasPaso);
+        } catch (IOException e) {
+            errorDeGrabacion(e);
+        }
+    }
+    
+    private void errorDeGrabacion(IOException e) {
+        System.err.println("Aviso: la grabación de entrada se detuvo: " + e.getMessage());
+        try {
+            grabadora.close();
+        } catch (IOException ignored) {
+            // Ya se avisó del primer error
+        }
+        grabadora = null;
+    }
+    
+    private static InputReplay abrirReproduccion() {
+        String file = System.getProperty("input.replay");
+        if (file == null) return null;
+        try {
+            InputReplay replay = InputReplay.open(Path.of(file));
+            if (replay.getStepsPerSecond() != SIM_HZ) {
+                System.err.println("Aviso: la grabación es de " + replay.getStepsPerSecond() + " pasos por segundo y la simulación de "
+                        + SIM_HZ + "; el recorrido no será el mismo.");
+            }
+            System.out.println("Reproduciendo " + file + ": " + replay.getTickCount() + " pasos, "
+                    + replay.getEventCount() + " eventos");
+            return replay;
+        } catch (IOException e) {
+            System.err.println("Aviso: no se pudo abrir la grabación " + e.getMessage());
+            return null;
+        }
+    }
+    
+    private InputRecorder abrirGrabadora() {
+        String file = System.getProperty("input.record");
+        if (file == null) return null;
+        try {
+            return new InputRecorder(Path.of(file), worldSeed, SIM_HZ, fieldSize, numTrees, applesPerTree);
+        } catch (IOException e) {
+            System.err.println("Aviso: no se pudo crear la grabación " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /** Un paso fijo de simulación de dt segundos. */
+    private void actualizarSimulacion(float dt) {
+        prevSunAngle = sunAngle;
+        sunAngle = (sunAngle + sunSpeed * dt) % 360.0f;
+        moverCamara(dt);
+        publicarCamara();
+    }
+    
+    /**
+     * Integra el movimiento con las teclas que estén pulsadas en este paso: la
+     * velocidad se acerca a la deseada con aceleración limitada, y las diagonales
+     * no son más rápidas que los ejes.
+     */
+    private void moverCamara(float dt) {
+        prevCamX = camX;
+        prevCamY = camY;
+        prevCamZ = camZ;
         
-        float lightX = 0.0f;
-        float lightY = (float) Math.cos(angleRad) * 100.0f;
-        float lightZ = (float) Math.sin(angleRad) * 100.0f;
+        // Giro con teclado (Q y E)
+        yaw += InputState.axis(teclasPaso, KeyEvent.VK_Q, KeyEvent.VK_E) * turnSpeed * dt;
         
-        float[] lightPosition = {lightX, lightY, lightZ, 0.0f}; 
+        // Movimiento (W, S, A, D) y elevación (Espacio, Control)
+        int adelante = InputState.axis(teclasPaso, KeyEvent.VK_S, KeyEvent.VK_W);
+        int lado = InputState.axis(teclasPaso, KeyEvent.VK_A, KeyEvent.VK_D);
+        int vertical = InputState.axis(teclasPaso, KeyEvent.VK_CONTROL, KeyEvent.VK_SPACE);
         
-        float dayFactor = (float) (Math.cos(angleRad) + 1.0) / 2.0f; 
+        float yawRad = (float) Math.toRadians(yaw);
+        float sin = (float) Math.sin(yawRad);
+        float cos = (float) Math.cos(yawRad);
+        float wishX = adelante * sin + lado * cos;
+        float wishZ = -adelante * cos + lado * sin;
+        float wishY = vertical;
+        float length = (float) Math.sqrt(wishX * wishX + wishY * wishY + wishZ * wishZ);
+        if (length > 0.0f) {
+            float scale = moveSpeed / length;
+            wishX *= scale;
+            wishY *= scale;
+            wishZ *= scale;
+        }
         
-        float dr = 0.9f * dayFactor + 0.1f * (1.0f - dayFactor);
-        float dg = 0.9f * dayFactor + 0.2f * (1.0f - dayFactor);
-        float db = 0.8f * dayFactor + 0.5f * (1.0f - dayFactor);
-        float[] diffuseLight = {dr, dg, db, 1.0f};
+        float maxDelta = moveAcceleration * dt;
+        velX = acercar(velX, wishX, maxDelta);
+        velY = acercar(velY, wishY, maxDelta);
+        velZ = acercar(velZ, wishZ, maxDelta);
         
-        float ar = 0.5f * dayFactor + 0.1f * (1.0f - dayFactor);
-        float ag = 0.5f * dayFactor + 0.1f * (1.0f - dayFactor);
-        float ab = 0.5f * dayFactor + 0.3f * (1.0f - dayFactor);
-        float[] ambientLight = {ar, ag, ab, 1.0f};
-
-        float skyR = 0.53f * dayFactor + 0.1f * (1.0f - dayFactor);
-        float skyG = 0.81f * dayFactor + 0.1f * (1.0f - dayFactor);
-        float skyB = 0.92f * dayFactor + 0.3f * (1.0f - dayFactor);
+        camX += velX * dt;
+        camY += velY * dt;
+        camZ += velZ * dt;
+        float suelo = terreno.height(camX, camZ) + 0.1f;
+        if (camY < suelo) {
+            camY = suelo;
+            if (velY < 0.0f) velY = 0.0f;
+        }
+        resolverColisiones();
+    }
+    
+    /**
+     * Saca la cápsula de la cámara de los troncos que toca y quita a la velocidad
+     * la parte que va contra cada tronco, así la cámara se desliza alrededor. La
+     * fase amplia mira solo la rejilla fina de los chunks bajo la cápsula.
+     */
+    private void resolverColisiones() {
+        if (streamer == null) return;
+        float minDist = CAMERA_RADIUS + WorldChunk.TRUNK_RADIUS;
+        float capsuleBottom = camY - CAMERA_BODY - CAMERA_RADIUS;
+        float capsuleTop = camY + CAMERA_RADIUS;
+        
+        // Varias pasadas por si al salir de un tronco se entra en otro
+        for (int iter = 0; iter < MAX_ITERACIONES_COLISION; iter++) {
+            boolean choco = false;
+            int cx0 = streamer.chunkCoord(camX - minDist), cx1 = streamer.chunkCoord(camX + minDist);
+            int cz0 = streamer.chunkCoord(camZ - minDist), cz1 = streamer.chunkCoord(camZ + minDist);
+            for (int ccz = cz0; ccz <= cz1; ccz++) {
+                for (int ccx = cx0; ccx <= cx1; ccx++) {
+                    WorldChunk chunk = streamer.findActive(ccx, ccz);
+                    if (chunk == null) continue;
+                    
+                    int n = chunk.getCollisionGrid().queryNear(camX, camZ, CAMERA_RADIUS, troncosCercanos);
+                    if (n > troncosCercanos.length) {
+                        // Chunk muy denso: se agranda (una sola vez por tamaño) y se repite la consulta
+                        troncosCercanos = new int[Integer.highestOneBit(n) << 1];
+                        n = chunk.getCollisionGrid().queryNear(camX, camZ, CAMERA_RADIUS, troncosCercanos);
+                    }
+                    for (int k = 0; k < n; k++) {
+                        int i = troncosCercanos[k];
+                        float trunkBottom = chunk.treeY(i);
+                        if (capsuleBottom >= trunkBottom + WorldChunk.TRUNK_HEIGHT || capsuleTop <= trunkBottom) continue;
+                        
+                        float dx = camX - chunk.treeX(i);
+                        float dz = camZ - chunk.treeZ(i);
+                        float distSq = dx * dx + dz * dz;
+                        if (distSq >= minDist * minDist) continue;
+                        
+                        // Normal horizontal del tronco hacia la cámara (si está justo en el eje, hacia atrás)
+                        float dist = (float) Math.sqrt(distSq);
+                        float nx, nz;
+                        if (dist > 1e-5f) {
+                            nx = dx / dist;
+                            nz = dz / dist;
+                        } else {
+                            nx = prevCamX - camX;
+                            nz = prevCamZ - camZ;
+                            float len = (float) Math.sqrt(nx * nx + nz * nz);
+                            if (len > 1e-5f) { nx /= len; nz /= len; } else { nx = 1.0f; nz = 0.0f; }
+                        }
+                        camX += nx * (minDist - dist);
+                        camZ += nz * (minDist - dist);
+                        
+                        float contra = velX * nx + velZ * nz;
+                        if (contra < 0.0f) {
+                            velX -= contra * nx;
+                            velZ -= contra * nz;
+                        }
+                        choco = true;
+                    }
+                }
+            }
+            if (!choco) break;
+        }
+    }
+    
+    private static float acercar(float actual, float objetivo, float maxDelta) {
+        if (actual < objetivo) return Math.min(actual + maxDelta, objetivo);
+        return Math.max(actual - maxDelta, objetivo);
+    }
+    
+    /**
+     * Suma a la vista el movimiento del ratón acumulado desde el paso anterior:
+     * un solo evento grabado y un solo límite de pitch por paso, igual en vivo
+     * que en la reproducción.
+     */
+    private void aplicarRaton(long paso) {
+        long delta = entrada.takeMouseDelta();
+        if (delta == 0) return;
+        if (grabadora != null) {
+            try {
+                grabadora.mouse(paso, InputState.unpackX(delta), InputState.unpackY(delta));
+            } catch (IOException e) {
+                errorDeGrabacion(e);
+            }
+        }
+        yaw += InputState.unpackX(delta) * mouseSpeed;
+        pitch += InputState.unpackY(delta) * mouseSpeed;
+        
+        // Limitar Pitch (vertical)
+        if (pitch > 90.0f) pitch = 90.0f;
+        if (pitch < -90.0f) pitch = -90.0f;
+    }
+    
+    /** Publica la cámara del paso (anterior y actual) para el dibujo. */
+    private void publicarCamara() {
+        camara.back().setStep(prevCamX, prevCamY, prevCamZ, camX, camY, camZ, yaw, pitch);
+        camara.publish();
+    }
+    
+    private void updateLightingAndSky(GL2 gl) {
+        // Todo sale de la tabla de la atmósfera: sin trigonometría por cuadro
+        atmosfera.sample(renderSunAngle, cielo);
         
-        gl.glLightfv(GL2.GL_LIGHT0, GL2.GL_AMBIENT, ambientLight, 0);
-        gl.glLightfv(GL2.GL_LIGHT0, GL2.GL_DIFFUSE, diffuseLight, 0);
-        gl.glLightfv(GL2.GL_LIGHT0, GL2.GL_POSITION, lightPosition, 0);
+        lightPosition[0] = 0.0f;
+        lightPosition[1] = cielo.sunCos * 100.0f;
+        lightPosition[2] = cielo.sunSin * 100.0f;
+        lightPosition[3] = 0.0f;
         
-        gl.glClearColor(skyR, skyG, skyB, 1.0f);
+        // Los impostores no se iluminan: se tiñen con la luz aproximada de una cara lateral
+        float[] ambiente = cielo.ambient;
+        float[] difusa = cielo.diffuse;
+        luzImpostor = Math.min(1.0f, (ambiente[0] + ambiente[1] + ambiente[2]) / 3.0f
+                + (difusa[0] + difusa[1] + difusa[2]) / 3.0f * 0.7f);
+        
+        estado.lightfv(GL2.GL_LIGHT0, GL2.GL_AMBIENT, ambiente);
+        estado.lightfv(GL2.GL_LIGHT0, GL2.GL_DIFFUSE, difusa);
+        estado.lightfv(GL2.GL_LIGHT0, GL2.GL_POSITION, lightPosition);
+        
+        gl.glClearColor(cielo.skyR, cielo.skyG, cielo.skyB, 1.0f);
+    }
+    
+    /**
+     * Paleta del bosque: la misma mezcla día/noche de antes para la luz, más
+     * bandas anaranjadas en el cielo y en la luz difusa al amanecer (270) y al
+     * atardecer (90).
+     */
+    private static Atmosphere crearAtmosfera() {
+        Atmosphere.Gradient sky = new Atmosphere.Gradient()
+                .stop(0.0f, 0.53f, 0.81f, 0.92f)     // mediodía
+                .stop(60.0f, 0.42f, 0.63f, 0.77f)
+                .stop(85.0f, 0.75f, 0.55f, 0.45f)
+                .stop(95.0f, 0.85f, 0.45f, 0.25f)    // atardecer
+                .stop(115.0f, 0.25f, 0.18f, 0.35f)
+                .stop(180.0f, 0.10f, 0.10f, 0.30f)   // medianoche
+                .stop(245.0f, 0.25f, 0.18f, 0.35f)
+                .stop(265.0f, 0.90f, 0.55f, 0.30f)   // amanecer
+                .stop(275.0f, 0.75f, 0.60f, 0.50f)
+                .stop(300.0f, 0.42f, 0.63f, 0.77f);
+        Atmosphere.Gradient ambient = Atmosphere.Gradient.dayNight(0.5f, 0.5f, 0.5f, 0.1f, 0.1f, 0.3f);
+        Atmosphere.Gradient diffuse = new Atmosphere.Gradient()
+                .stop(0.0f, 0.90f, 0.90f, 0.80f)
+                .stop(60.0f, 0.70f, 0.73f, 0.73f)
+                .stop(90.0f, 0.80f, 0.50f, 0.35f)
+                .stop(120.0f, 0.30f, 0.38f, 0.58f)
+                .stop(180.0f, 0.10f, 0.20f, 0.50f)
+                .stop(240.0f, 0.30f, 0.38f, 0.58f)
+                .stop(270.0f, 0.80f, 0.55f, 0.40f)
+                .stop(300.0f, 0.70f, 0.73f, 0.73f);
+        Atmosphere.Gradient stars = new Atmosphere.Gradient().stop(0.0f, 0.0f); // el bosque no tiene estrellas
+        return new Atmosphere(sky, ambient, diffuse, stars);
     }
     
     @Override
     public void reshape(GLAutoDrawable drawable, int x, int y, int width, int height) {
         GL2 gl = drawable.getGL().getGL2();
         if (height == 0) height = 1; 
+        anchoVentana = width;
+        altoVentana = height;
         
         float aspect = (float)width / height;
         float near = 0.1f;
@@ -194,7 +909,7 @@ public class Main extends GLCanvas implements GLEventListener, KeyListener, Mous
 
         gl.glViewport(0, 0, width, height);
 
-        gl.glMatrixMode(GL2.GL_PROJECTION);
+        estado.matrixMode(GL2.GL_PROJECTION);
         gl.glLoadIdentity();
         
         final float tanFov = (float) Math.tan(Math.toRadians(30.0)); 
@@ -205,13 +920,67 @@ public class Main extends GLCanvas implements GLEventListener, KeyListener, Mous
         float left = -right;
         
         gl.glFrustumf(left, right, bottom, top, near, far);
+        frustum.setPerspective(left, right, bottom, top, near, far);
 
-        gl.glMatrixMode(GL2.GL_MODELVIEW);
+        estado.matrixMode(GL2.GL_MODELVIEW);
         gl.glLoadIdentity();
     }
     
     @Override
-    public void dispose(GLAutoDrawable drawable) { /* Limpieza */ }
+    public void dispose(GLAutoDrawable drawable) {
+        GL2 gl = drawable.getGL().getGL2();
+        
+        for (Mesh mesh : mallasArbol) if (mesh != null) mesh.dispose(gl);
+        for (Mesh mesh : mallasManzana) if (mesh != null) mesh.dispose(gl);
+        for (InstanceBuffer buffer : instanciasArboles) if (buffer != null) buffer.dispose(gl);
+        for (InstanceBuffer buffer : instanciasManzanas) if (buffer != null) buffer.dispose(gl);
+        for (Mesh mesh : mallasTerreno.values()) mesh.dispose(gl);
+        mallasTerreno.clear();
+        for (Mesh mesh : mallasTerrenoLibres) mesh.dispose(gl);
+        mallasTerrenoLibres.clear();
+        if (nivelesTerreno != null) nivelesTerreno.dispose(gl);
+        if (mallaMontanas != null) mallaMontanas.dispose(gl);
+        if (mallaSol != null) mallaSol.dispose(gl);
+        if (mallaLuna != null) mallaLuna.dispose(gl);
+        impostor.dispose(gl);
+        escalado.dispose(gl);
+        captura.dispose(gl);
+        if (texturaAtmosfera != null) texturaAtmosfera.dispose(gl);
+        instancer.dispose(gl);
+        if (streamer != null) streamer.shutdown();
+        if (mundoGuardado != null) cerrarMundoGuardado(mundoGuardado);
+        if (grabadora != null) {
+            try {
+                grabadora.finish(timestep.getTotalSteps());
+                System.out.println("Entrada grabada: " + grabadora.getEventCount() + " eventos en "
+                        + timestep.getTotalSteps() + " pasos");
+            } catch (IOException e) {
+                System.err.println("Aviso: no se pudo cerrar la grabación de entrada: " + e.getMessage());
+            }
+            grabadora = null;
+        }
+        profiler.dispose(gl);
+    }
+    
+    private static void cerrarMundoGuardado(WorldFile mundo) {
+        try {
+            mundo.close();
+        } catch (IOException e) {
+            System.err.println("Aviso: no se pudo cerrar el mundo guardado: " + e.getMessage());
+        }
+    }
+    
+    /** El mundo de -Dworld.file (ver WorldFile), o null si no se pidió o no se puede abrir. */
+    private static WorldFile abrirMundoGuardado() {
+        String file = System.getProperty("world.file");
+        if (file == null) return null;
+        try {
+            return WorldFile.open(Path.of(file));
+        } catch (IOException e) {
+            System.err.println("Aviso: no se pudo abrir " + file + " (" + e.getMessage() + "); el mundo se genera.");
+            return null;
+        }
+    }
 
 
     // ============================= MÉTODOS DE DIBUJO (sin cambios significativos) =============================
@@ -220,192 +989,46 @@ public class Main extends GLCanvas implements GLEventListener, KeyListener, Mous
         gl.glPushMatrix();
         gl.glLoadIdentity(); 
         
-        float angleRad = (float) Math.toRadians(sunAngle);
-        
-        float objY = (float) Math.cos(angleRad) * 150.0f;
-        float objZ = (float) Math.sin(angleRad) * 150.0f; 
+        // Dirección del sol ya leída de la atmósfera en updateLightingAndSky
+        float objY = cielo.sunCos * 150.0f;
+        float objZ = cielo.sunSin * 150.0f; 
 
         gl.glTranslatef(0.0f, objY, objZ); 
         
-        gl.glDisable(GL2.GL_LIGHTING);
+        // Sin luz; no se vuelve a activar aquí: cada dibujo pide su estado a la caché
+        estado.disable(GL2.GL_LIGHTING);
         
         if (objY > 0) {
-             gl.glColor3f(1.0f, 0.8f, 0.0f); // Sol
+             mallaSol.draw(estado); // Sol
         } else {
-             gl.glColor3f(0.8f, 0.8f, 1.0f); // Luna
+             mallaLuna.draw(estado); // Luna
         }
-
-        glu.gluSphere(glu.gluNewQuadric(), 10.0, 20, 20); 
-        gl.glEnable(GL2.GL_LIGHTING);
         
         gl.glPopMatrix();
     }
     
-    private void dibujarMontañas(GL2 gl) {
-        gl.glDisable(GL2.GL_LIGHTING);
-        
-        float[] brown = {0.4f, 0.25f, 0.15f}; 
-        float[] snow = {0.9f, 0.9f, 0.95f}; 
-        
-        float peakHeight = 80.0f;
-        float baseLevel = 0.0f; 
-        float horizonZ = -300.0f; 
-
-        gl.glBegin(GL2.GL_TRIANGLES);
-        
-        gl.glColor3fv(brown, 0);
-        gl.glVertex3f(-150.0f, baseLevel, horizonZ);
-        
-        gl.glColor3fv(snow, 0); 
-        gl.glVertex3f(-50.0f, peakHeight, horizonZ);
-        
-        gl.glColor3fv(brown, 0);
-        gl.glVertex3f(50.0f, baseLevel, horizonZ);
-
-        gl.glColor3f(brown[0]*0.8f, brown[1]*0.8f, brown[2]*0.8f); 
-        gl.glVertex3f(0.0f, baseLevel, horizonZ);
-        
-        gl.glColor3fv(snow, 0);
-        gl.glVertex3f(100.0f, peakHeight*0.75f, horizonZ);
-        
-        gl.glColor3f(brown[0]*0.8f, brown[1]*0.8f, brown[2]*0.8f);
-        gl.glVertex3f(200.0f, baseLevel, horizonZ);
-
-        gl.glEnd();
-        
-        gl.glEnable(GL2.GL_LIGHTING);
+    private void dibujarMontañas() {
+        // Geometría estática: un solo VBO sin luz
+        cola.submitMesh(mallaMontanas, false);
     }
 
-    private void dibujarPlano(GL2 gl) {
-        float limit = FIELD_SIZE / 2.0f;
-        int patternSize = 4; 
-
-        gl.glNormal3f(0.0f, 1.0f, 0.0f); 
-        
-        for (int i = (int) -limit; i < limit; i += patternSize) {
-            for (int j = (int) -limit; j < limit; j += patternSize) {
-                if ((i + j) % (patternSize * 2) == 0) {
-                    gl.glColor3f(0.15f, 0.6f, 0.15f); 
-                } else {
-                    gl.glColor3f(0.1f, 0.5f, 0.1f); 
-                }
-                
-                gl.glBegin(GL2.GL_QUADS);
-                    gl.glVertex3f(i, 0.0f, j);
-                    gl.glVertex3f(i, 0.0f, j + patternSize);
-                    gl.glVertex3f(i + patternSize, 0.0f, j + patternSize);
-                    gl.glVertex3f(i + patternSize, 0.0f, j);
-                gl.glEnd();
-            }
+    private void dibujarTerreno() {
+        // Un comando por chunk visible, cada uno con el nivel de detalle que le toca
+        for (int i = 0; i < terrenosVisibles; i++) {
+            cola.submitTerrain(terrenoVisible[i], nivelesTerreno, nivelTerrenoVisible[i]);
         }
     }
     
-    private void dibujarArbol(GL2 gl, float x, float z, float[][] apples) {
-        gl.glPushMatrix();
-        gl.glTranslatef(x, 0.0f, z); 
-
-        dibujarTronco(gl, 2.0f, 0.2f, 10, 0.45f, 0.2f, 0.0f); 
-        
-        gl.glTranslatef(0.0f, 2.0f, 0.0f); 
-        dibujarFollajeCapas(gl, 3.0f, 1.5f, 10); 
-        
-        dibujarManzanas(gl, apples);
-        
-        gl.glPopMatrix();
-    }
-    
-    private void dibujarManzanas(GL2 gl, float[][] apples) {
-        gl.glColor3f(1.0f, 0.0f, 0.0f); 
-        float appleRadius = 0.15f; 
-        
-        for (int i = 0; i < apples.length; i++) {
-            gl.glPushMatrix();
-            
-            gl.glTranslatef(apples[i][0], apples[i][1] - 2.0f, apples[i][2]); 
-            
-            glu.gluSphere(glu.gluNewQuadric(), appleRadius, 10, 10); 
-            
-            gl.glPopMatrix();
+    private void dibujarArboles() {
+        // Un comando por nivel de detalle, más uno para todos los impostores
+        for (int lod = 0; lod < mallasArbol.length; lod++) {
+            cola.submitInstanced(mallasArbol[lod], instanciasArboles[lod], true);
         }
-    }
-
-    private void dibujarTronco(GL2 gl, float height, float radius, int segments, float r, float g, float b) {
-        gl.glColor3f(r, g, b); 
-        float segmentAngle = (float) (2.0 * Math.PI / segments);
-        
-        for (int i = 0; i < segments; i++) {
-            float angle1 = i * segmentAngle;
-            float angle2 = (i + 1) * segmentAngle;
-            
-            float x1 = (float) (radius * Math.cos(angle1));
-            float z1 = (float) (radius * Math.sin(angle1));
-            float x2 = (float) (radius * Math.cos(angle2));
-            float z2 = (float) (radius * Math.sin(angle2));
-            
-            gl.glBegin(GL2.GL_QUADS);
-                float normalX = (x1 + x2) / 2.0f;
-                float normalZ = (z1 + z2) / 2.0f;
-                float normalLength = (float) Math.sqrt(normalX * normalX + normalZ * normalZ);
-                gl.glNormal3f(normalX / normalLength, 0.0f, normalZ / normalLength);
-
-                gl.glVertex3f(x1, 0.0f, z1); 
-                gl.glVertex3f(x2, 0.0f, z2); 
-                gl.glVertex3f(x2, height, z2); 
-                gl.glVertex3f(x1, height, z1); 
-            gl.glEnd();
+        for (int lod = 0; lod < mallasManzana.length; lod++) {
+            cola.submitInstanced(mallasManzana[lod], instanciasManzanas[lod], true);
         }
-    }
-    
-    private void dibujarFollajeCapas(GL2 gl, float totalHeight, float baseRadius, int segments) {
-        gl.glColor3f(0.1f, 0.5f, 0.2f); 
-        
-        int numLayers = 3;
-        float layerHeight = totalHeight / numLayers;
-        
-        for (int j = 0; j < numLayers; j++) {
-            gl.glPushMatrix();
-            
-            gl.glTranslatef(0.0f, j * layerHeight * 0.7f, 0.0f); 
-            
-            float currentRadius = baseRadius * (1.0f - (j * 0.2f)); 
-            
-            dibujarCono(gl, layerHeight * 1.5f, currentRadius, segments);
-            
-            gl.glPopMatrix();
-        }
-    }
-    
-    private void dibujarCono(GL2 gl, float height, float radius, int segments) {
-        float segmentAngle = (float) (2.0 * Math.PI / segments);
-        float topY = height;
-        
-        for (int i = 0; i < segments; i++) {
-            float angle1 = i * segmentAngle;
-            float angle2 = (i + 1) * segmentAngle;
-            
-            float x1 = (float) (radius * Math.cos(angle1));
-            float z1 = (float) (radius * Math.sin(angle1));
-            float x2 = (float) (radius * Math.cos(angle2));
-            float z2 = (float) (radius * Math.sin(angle2));
-            
-            gl.glBegin(GL2.GL_TRIANGLES);
-                float normalX = (x1 + x2) / 2.0f;
-                float normalZ = (z1 + z2) / 2.0f;
-                float normalLength = (float) Math.sqrt(normalX * normalX + normalZ * normalZ);
-                gl.glNormal3f(normalX / normalLength, 0.5f, normalZ / normalLength);
-
-                gl.glVertex3f(0.0f, topY, 0.0f); 
-                gl.glVertex3f(x1, 0.0f, z1); 
-                gl.glVertex3f(x2, 0.0f, z2); 
-            gl.glEnd();
-            
-            gl.glBegin(GL2.GL_TRIANGLES);
-                gl.glNormal3f(0.0f, -1.0f, 0.0f); 
-
-                gl.glVertex3f(0.0f, 0.0f, 0.0f); 
-                gl.glVertex3f(x1, 0.0f, z1); 
-                gl.glVertex3f(x2, 0.0f, z2); 
-            gl.glEnd();
+        if (impostor.isReady()) {
+            cola.submitImpostor(impostor, luzImpostor);
         }
     }
 
@@ -413,50 +1036,32 @@ public class Main extends GLCanvas implements GLEventListener, KeyListener, Mous
     
     @Override
     public void keyPressed(KeyEvent e) {
-        float dx = 0.0f;
-        float dz = 0.0f;
-        
-        float yawRad = (float) Math.toRadians(yaw);
+        if (entradaReal()) pulsar(e.getKeyCode());
+    }
 
-        // Movimiento (W, S, A, D)
-        if (e.getKeyCode() == KeyEvent.VK_W) {
-            dx = (float) (moveSpeed * Math.sin(yawRad));
-            dz = (float) (-moveSpeed * Math.cos(yawRad));
-        } 
-        else if (e.getKeyCode() == KeyEvent.VK_S) {
-            dx = (float) (-moveSpeed * Math.sin(yawRad));
-            dz = (float) (moveSpeed * Math.cos(yawRad));
-        }
-        else if (e.getKeyCode() == KeyEvent.VK_A) { 
-            dx = (float) (-moveSpeed * Math.cos(yawRad));
-            dz = (float) (-moveSpeed * Math.sin(yawRad));
-        }
-        else if (e.getKeyCode() == KeyEvent.VK_D) { 
-            dx = (float) (moveSpeed * Math.cos(yawRad));
-            dz = (float) (moveSpeed * Math.sin(yawRad));
-        }
-        // Giro con teclado (Q y E)
-        else if (e.getKeyCode() == KeyEvent.VK_Q) {
-            yaw -= turnSpeed; // Girar a la izquierda
-        }
-        else if (e.getKeyCode() == KeyEvent.VK_E) {
-            yaw += turnSpeed; // Girar a la derecha
-        }
-        // Elevación/Descenso
-        else if (e.getKeyCode() == KeyEvent.VK_SPACE) {
-            camY += moveSpeed;
+    @Override
+    public void keyReleased(KeyEvent e) {
+        if (entradaReal()) soltar(e.getKeyCode());
+    }
+    
+    /** Tecla pulsada, del teclado (hilo de AWT) o de una reproducción (hilo de OpenGL). */
+    private void pulsar(int keyCode) {
+        // El movimiento lo integra la simulación con las teclas que estén pulsadas
+        entrada.press(keyCode);
+        
+        // Overlay de tiempos por fase
+        if (keyCode == KeyEvent.VK_F3) {
+            profiler.toggleOverlay();
         }
-        else if (e.getKeyCode() == KeyEvent.VK_CONTROL) {
-            camY -= moveSpeed;
-            if (camY < 0.1f) camY = 0.1f;
+        // Grabación de la ventana (ver FrameCapture)
+        if (keyCode == KeyEvent.VK_F9) {
+            captura.toggle();
         }
-
-        camX += dx;
-        camZ += dz;
     }
-
-    @Override
-    public void keyReleased(KeyEvent e) { /* No usado */ }
+    
+    private void soltar(int keyCode) {
+        entrada.release(keyCode);
+    }
     
     @Override
     public void keyTyped(KeyEvent e) { /* No usado */ }
@@ -466,51 +1071,64 @@ public class Main extends GLCanvas implements GLEventListener, KeyListener, Mous
         mouseMoved(e);
     }
 
+    /**
+     * Acumula el desplazamiento de cada evento; la rotación se aplica una vez por
+     * paso fijo en el hilo de OpenGL. El cursor solo se recentra cuando se acerca al
+     * borde de la ventana y como mucho una vez por cuadro, en lugar de en cada evento.
+     */
     @Override
     public void mouseMoved(MouseEvent e) {
-        if (robot == null) return; // Si Robot no se pudo inicializar, salimos
-
-        // 1. Evitar procesamiento de eventos de mouse que nosotros mismos generamos
-        if (mouseWarped) {
-            mouseWarped = false;
+        if (!entradaReal()) return;
+        int x = e.getX();
+        int y = e.getY();
+        eventosRaton++;
+        
+        if (!hasLastMouse) {
+            // Primer evento: no hay posición anterior con la que comparar
+            lastMouseX = x;
+            lastMouseY = y;
+            hasLastMouse = true;
+            eventosPerdidos++;
             return;
         }
         
-        if (lastMouse == null) {
-            lastMouse = e.getPoint();
-            return;
+        if (recentradoPendiente) {
+            int centerX = getWidth() / 2;
+            int centerY = getHeight() / 2;
+            int distCentro = Math.abs(x - centerX) + Math.abs(y - centerY);
+            int distAnterior = Math.abs(x - lastMouseX) + Math.abs(y - lastMouseY);
+            if (distCentro < distAnterior) {
+                // Ya se aplicó el salto al centro: solo cuenta lo movido desde allí
+                recentradoPendiente = false;
+                entrada.addMouseDelta(x - centerX, y - centerY);
+                lastMouseX = x;
+                lastMouseY = y;
+                return;
+            }
+            if (e.getWhen() - recentradoMs > ESPERA_RECENTRADO_MS) {
+                recentradoPendiente = false; // el salto no llegó (p. ej. el cursor salió de la ventana)
+            }
+            // Evento anterior al salto: se mide desde la última posición real
         }
-
-        // 2. Calcular diferencia de movimiento
-        float deltaX = (float) (e.getX() - lastMouse.getX());
-        float deltaY = (float) (e.getY() - lastMouse.getY());
-
-        // 3. Aplicar rotación
-        yaw += deltaX * mouseSpeed; 
-        pitch += deltaY * mouseSpeed; 
-
-        // 4. Limitar Pitch (vertical)
-        if (pitch > 90.0f) pitch = 90.0f;
-        if (pitch < -90.0f) pitch = -90.0f;
-
-        // 5. Reposicionar el cursor (Mouse Warping)
         
-        // Coordenadas absolutas del centro de la ventana en la pantalla
-        Point centerScreen = getLocationOnScreen();
-        centerScreen.translate(getWidth() / 2, getHeight() / 2);
-
-        // Si el cursor se ha movido significativamente, lo recentramos
-        if (Math.abs(deltaX) > 1 || Math.abs(deltaY) > 1) {
-             mouseWarped = true; // Establecer la bandera para el siguiente evento
-             robot.mouseMove(centerScreen.x, centerScreen.y);
-             
-             // Actualizar lastMouse al centro de la ventana
-             lastMouse = new Point(getWidth() / 2, getHeight() / 2);
-        } else {
-             // Si el movimiento es pequeño, simplemente actualizamos lastMouse
-             lastMouse = e.getPoint();
+        entrada.addMouseDelta(x - lastMouseX, y - lastMouseY);
+        lastMouseX = x;
+        lastMouseY = y;
+        
+        if (robot != null && !recentradoPendiente && cercaDelBorde(x, y)
+                && recentradoPermitido.compareAndSet(true, false)) {
+            // Centro de la ventana en la pantalla a partir del propio evento (sin getLocationOnScreen)
+            robot.mouseMove(e.getXOnScreen() - x + getWidth() / 2, e.getYOnScreen() - y + getHeight() / 2);
+            recentradoPendiente = true;
+            recentradoMs = e.getWhen();
+            recentrados++;
         }
     }
+    
+    private boolean cercaDelBorde(int x, int y) {
+        return x < MARGEN_RECENTRADO || y < MARGEN_RECENTRADO
+                || x >= getWidth() - MARGEN_RECENTRADO || y >= getHeight() - MARGEN_RECENTRADO;
+    }
 
 
     // ============================= Main (Punto de Entrada) =============================
@@ -537,7 +1155,7 @@ public class Main extends GLCanvas implements GLEventListener, KeyListener, Mous
         JFrame frame = new JFrame(TITULO);
         frame.getContentPane().add(canvas);
         
-        final FPSAnimator animator = new FPSAnimator(canvas, FPS, true);
+        final FPSAnimator animator = new FPSAnimator(canvas, canvas.pacer.getMaxFps(), true);
 
         frame.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE); 
         frame.pack(); 
@@ -550,10 +1168,13 @@ public class Main extends GLCanvas implements GLEventListener, KeyListener, Mous
             public void windowClosing(java.awt.event.WindowEvent windowEvent) {
                 if (animator.isStarted())
                     animator.stop();
+                canvas.destroy(); // dispose(): termina de escribir la grabación
+                canvas.profiler.writeCsvIfRequested();
                 System.exit(0);
             }
         });
 
+        new Timer(1000, ev -> canvas.mostrarContadorDescartados(frame)).start();
         animator.start();
     }
 }
@@ -0,0 +1,124 @@
+package main;
+
+import com.jogamp.opengl.GL2;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Malla almacenada en un Vertex Buffer Object (modo retenido).
+ * Los vértices van intercalados: posición (3), normal (3) y color (3).
+ */
+public class Mesh {
+
+    public static final int FLOATS_PER_VERTEX = 9;
+    public static final int STRIDE = FLOATS_PER_VERTEX * Float.BYTES;
+    private static final long NORMAL_OFFSET = 3 * Float.BYTES;
+    private static final long COLOR_OFFSET = 6 * Float.BYTES;
+
+    private static final AtomicInteger NEXT_ID = new AtomicInteger(1);
+
+    private final int[] vbo = new int[1];
+    private final int vertexCount;
+    private final int mode;
+    private final int id; // identifica la malla en las claves de RenderQueue
+
+    private Mesh(int vertexCount, int mode) {
+        this.vertexCount = vertexCount;
+        this.mode = mode;
+        this.id = NEXT_ID.getAndIncrement();
+    }
+
+    /**
+     * Sube los datos intercalados a un VBO nuevo. Se llama una sola vez desde init().
+     */
+    public static Mesh upload(GL2 gl, FloatBuffer data, int mode) {
+        Mesh mesh = new Mesh(data.remaining() / FLOATS_PER_VERTEX, mode);
+
+        gl.glGenBuffers(1, mesh.vbo, 0);
+        gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, mesh.vbo[0]);
+        gl.glBufferData(GL2.GL_ARRAY_BUFFER, (long) data.remaining() * Float.BYTES, data, GL2.GL_STATIC_DRAW);
+        gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
+
+        return mesh;
+    }
+
+    /**
+     * Activa el VBO y los punteros de vértice/normal/color. Permite dibujar
+     * la misma malla muchas veces con un solo bind. No se desactiva nada al
+     * terminar: el siguiente que dibuje pide su estado a la caché.
+     */
+    public void bind(GLStateCache state) {
+        GL2 gl = state.gl();
+        state.bindArrayBuffer(vbo[0]);
+
+        state.enableClientState(GL2.GL_VERTEX_ARRAY);
+        state.enableClientState(GL2.GL_NORMAL_ARRAY);
+        state.enableClientState(GL2.GL_COLOR_ARRAY);
+        state.disableClientState(GL2.GL_TEXTURE_COORD_ARRAY);
+
+        // Los punteros se fijan siempre: otro VBO pudo cambiarlos aunque este siga enlazado
+        gl.glVertexPointer(3, GL2.GL_FLOAT, STRIDE, 0);
+        gl.glNormalPointer(GL2.GL_FLOAT, STRIDE, NORMAL_OFFSET);
+        gl.glColorPointer(3, GL2.GL_FLOAT, STRIDE, COLOR_OFFSET);
+    }
+
+    /**
+     * VBO de vertexCount vértices sin datos todavía, para rellenarlo (y volver a
+     * rellenarlo) con {@link #update}.
+     */
+    public static Mesh allocate(GL2 gl, int vertexCount, int mode) {
+        Mesh mesh = new Mesh(vertexCount, mode);
+
+        gl.glGenBuffers(1, mesh.vbo, 0);
+        gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, mesh.vbo[0]);
+        gl.glBufferData(GL2.GL_ARRAY_BUFFER, (long) vertexCount * STRIDE, null, GL2.GL_STATIC_DRAW);
+        gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
+
+        return mesh;
+    }
+
+    /**
+     * Reemplaza todos los vértices en el mismo VBO (no lo vuelve a crear ni
+     * reserva memoria). No mueve la posición de data.
+     *
+     * @return false si data no tiene exactamente getVertexCount() vértices
+     */
+    public boolean update(GL2 gl, FloatBuffer data) {
+        if (vbo[0] == 0 || data.remaining() != vertexCount * FLOATS_PER_VERTEX) return false;
+        gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, vbo[0]);
+        gl.glBufferSubData(GL2.GL_ARRAY_BUFFER, 0, (long) data.remaining() * Float.BYTES, data);
+        gl.glBindBuffer(GL2.GL_ARRAY_BUFFER, 0);
+        return true;
+    }
+
+    public void drawBound(GL2 gl) {
+        gl.glDrawArrays(mode, 0, vertexCount);
+    }
+
+    public void drawInstancedBound(GL2 gl, int instances) {
+        gl.glDrawArraysInstanced(mode, 0, vertexCount, instances);
+    }
+
+    /** Dibuja la malla una vez con el pipeline fijo. */
+    public void draw(GLStateCache state) {
+        state.useProgram(0);
+        bind(state);
+        drawBound(state.gl());
+    }
+
+    public void dispose(GL2 gl) {
+        if (vbo[0] != 0) {
+            gl.glDeleteBuffers(1, vbo, 0);
+            vbo[0] = 0;
+        }
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int getId() {
+        return id;
+    }
+}
@@ -0,0 +1,319 @@
+package main;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Genera la geometría procedural de la escena (tronco, conos, terreno y montañas)
+ * en arreglos intercalados listos para subir a un VBO. No depende de OpenGL,
+ * así que todo el trabajo trigonométrico se hace una sola vez al iniciar.
+ */
+public final class MeshFactory {
+
+    private MeshFactory() { }
+
+    /**
+     * Acumula vértices con el formato de {@link Mesh}: posición, normal y color.
+     */
+    public static final class Builder {
+        private float[] data = new float[Mesh.FLOATS_PER_VERTEX * 64];
+        private int size = 0;
+
+        public Builder vertex(float x, float y, float z, float nx, float ny, float nz, float r, float g, float b) {
+            if (size + Mesh.FLOATS_PER_VERTEX > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size++] = x;  data[size++] = y;  data[size++] = z;
+            data[size++] = nx; data[size++] = ny; data[size++] = nz;
+            data[size++] = r;  data[size++] = g;  data[size++] = b;
+            return this;
+        }
+
+        public int vertexCount() {
+            return size / Mesh.FLOATS_PER_VERTEX;
+        }
+
+        /** Copia los datos a un buffer directo (el formato que espera glBufferData). */
+        public FloatBuffer toBuffer() {
+            FloatBuffer buffer = ByteBuffer.allocateDirect(size * Float.BYTES)
+                    .order(ByteOrder.nativeOrder())
+                    .asFloatBuffer();
+            buffer.put(data, 0, size);
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    // ============================= Árbol =============================
+
+    /**
+     * Árbol completo (tronco + follaje en capas) con la base en el origen,
+     * equivalente a lo que dibujaba dibujarArbol en modo inmediato. GL_TRIANGLES.
+     */
+    public static Builder crearArbol(int segments) {
+        Builder b = new Builder();
+        agregarTronco(b, 2.0f, 0.2f, segments, 0.45f, 0.2f, 0.0f);
+        agregarFollajeCapas(b, 2.0f, 3.0f, 1.5f, segments, 0.1f, 0.5f, 0.2f);
+        return b;
+    }
+
+    public static void agregarTronco(Builder b, float height, float radius, int segments, float r, float g, float bl) {
+        float segmentAngle = (float) (2.0 * Math.PI / segments);
+
+        for (int i = 0; i < segments; i++) {
+            float angle1 = i * segmentAngle;
+            float angle2 = (i + 1) * segmentAngle;
+
+            float x1 = (float) (radius * Math.cos(angle1));
+            float z1 = (float) (radius * Math.sin(angle1));
+            float x2 = (float) (radius * Math.cos(angle2));
+            float z2 = (float) (radius * Math.sin(angle2));
+
+            float normalX = (x1 + x2) / 2.0f;
+            float normalZ = (z1 + z2) / 2.0f;
+            float normalLength = (float) Math.sqrt(normalX * normalX + normalZ * normalZ);
+            float nx = normalX / normalLength;
+            float nz = normalZ / normalLength;
+
+            // El quad original se parte en dos triángulos con el mismo sentido de giro
+            b.vertex(x1, 0.0f, z1, nx, 0.0f, nz, r, g, bl);
+            b.vertex(x2, 0.0f, z2, nx, 0.0f, nz, r, g, bl);
+            b.vertex(x2, height, z2, nx, 0.0f, nz, r, g, bl);
+
+            b.vertex(x1, 0.0f, z1, nx, 0.0f, nz, r, g, bl);
+            b.vertex(x2, height, z2, nx, 0.0f, nz, r, g, bl);
+            b.vertex(x1, height, z1, nx, 0.0f, nz, r, g, bl);
+        }
+    }
+
+    public static void agregarFollajeCapas(Builder b, float baseY, float totalHeight, float baseRadius, int segments,
+                                           float r, float g, float bl) {
+        int numLayers = 3;
+        float layerHeight = totalHeight / numLayers;
+
+        for (int j = 0; j < numLayers; j++) {
+            float currentRadius = baseRadius * (1.0f - (j * 0.2f));
+            agregarCono(b, baseY + j * layerHeight * 0.7f, layerHeight * 1.5f, currentRadius, segments, r, g, bl);
+        }
+    }
+
+    public static void agregarCono(Builder b, float baseY, float height, float radius, int segments,
+                                   float r, float g, float bl) {
+        float segmentAngle = (float) (2.0 * Math.PI / segments);
+        float topY = baseY + height;
+
+        for (int i = 0; i < segments; i++) {
+            float angle1 = i * segmentAngle;
+            float angle2 = (i + 1) * segmentAngle;
+
+            float x1 = (float) (radius * Math.cos(angle1));
+            float z1 = (float) (radius * Math.sin(angle1));
+            float x2 = (float) (radius * Math.cos(angle2));
+            float z2 = (float) (radius * Math.sin(angle2));
+
+            float normalX = (x1 + x2) / 2.0f;
+            float normalZ = (z1 + z2) / 2.0f;
+            float normalLength = (float) Math.sqrt(normalX * normalX + normalZ * normalZ);
+            float nx = normalX / normalLength;
+            float nz = normalZ / normalLength;
+
+            // Lateral
+            b.vertex(0.0f, topY, 0.0f, nx, 0.5f, nz, r, g, bl);
+            b.vertex(x1, baseY, z1, nx, 0.5f, nz, r, g, bl);
+            b.vertex(x2, baseY, z2, nx, 0.5f, nz, r, g, bl);
+
+            // Base
+            b.vertex(0.0f, baseY, 0.0f, 0.0f, -1.0f, 0.0f, r, g, bl);
+            b.vertex(x1, baseY, z1, 0.0f, -1.0f, 0.0f, r, g, bl);
+            b.vertex(x2, baseY, z2, 0.0f, -1.0f, 0.0f, r, g, bl);
+        }
+    }
+
+    // ============================= Esfera =============================
+
+    /**
+     * Esfera con normales suaves (sustituto de gluSphere). Los triángulos giran
+     * en sentido antihorario vistos desde fuera. GL_TRIANGLES.
+     */
+    public static Builder crearEsfera(float radius, int slices, int stacks, float r, float g, float bl) {
+        Builder b = new Builder();
+
+        for (int i = 0; i < stacks; i++) {
+            double phi1 = Math.PI * i / stacks;
+            double phi2 = Math.PI * (i + 1) / stacks;
+
+            for (int j = 0; j < slices; j++) {
+                double theta1 = 2.0 * Math.PI * j / slices;
+                double theta2 = 2.0 * Math.PI * (j + 1) / slices;
+
+                agregarPuntoEsfera(b, radius, phi1, theta1, r, g, bl);
+                agregarPuntoEsfera(b, radius, phi1, theta2, r, g, bl);
+                agregarPuntoEsfera(b, radius, phi2, theta1, r, g, bl);
+
+                agregarPuntoEsfera(b, radius, phi1, theta2, r, g, bl);
+                agregarPuntoEsfera(b, radius, phi2, theta2, r, g, bl);
+                agregarPuntoEsfera(b, radius, phi2, theta1, r, g, bl);
+            }
+        }
+        return b;
+    }
+
+    private static void agregarPuntoEsfera(Builder b, float radius, double phi, double theta,
+                                           float r, float g, float bl) {
+        float nx = (float) (Math.sin(phi) * Math.cos(theta));
+        float ny = (float) Math.cos(phi);
+        float nz = (float) (Math.sin(phi) * Math.sin(theta));
+        b.vertex(nx * radius, ny * radius, nz * radius, nx, ny, nz, r, g, bl);
+    }
+
+    // ============================= Círculo 2D =============================
+
+    /**
+     * Contorno de un círculo en el plano XY como pares (x, y): segments + 1 puntos,
+     * el último repite el primero. Con el centro delante sirve para un GL_TRIANGLE_FAN.
+     */
+    public static float[] crearCirculo(float radius, int segments) {
+        float[] xy = new float[(segments + 1) * 2];
+        for (int i = 0; i <= segments; i++) {
+            double angle = 2.0 * Math.PI * i / segments;
+            xy[i * 2] = (float) Math.cos(angle) * radius;
+            xy[i * 2 + 1] = (float) Math.sin(angle) * radius;
+        }
+        return xy;
+    }
+
+    // ============================= Terreno =============================
+
+    /**
+     * Vértices de la porción de terreno de un chunk: una rejilla de (cells + 1)^2
+     * puntos sobre la altura de terrain, seguida de las faldas (una copia de cada
+     * borde bajada skirtDepth) en el orden norte, este, sur, oeste. Los índices
+     * para GL_TRIANGLE_STRIP salen de {@link #crearIndicesTerreno(int, int)}.
+     * Las normales se calculan con diferencias centrales sobre el ruido, así que
+     * coinciden en el borde con las del chunk vecino.
+     */
+    public static Builder crearTerreno(Terrain terrain, float originX, float originZ, float size,
+                                       int cells, float skirtDepth) {
+        Builder b = new Builder();
+        float spacing = size / cells;
+        for (int row = 0; row <= cells; row++) {
+            for (int col = 0; col <= cells; col++) {
+                agregarPuntoTerreno(b, terrain, originX + col * spacing, originZ + row * spacing, spacing, 0.0f);
+            }
+        }
+        for (int edge = 0; edge < 4; edge++) {
+            for (int k = 0; k <= cells; k++) {
+                int row = bordeFila(edge, k, cells);
+                int col = bordeColumna(edge, k, cells);
+                agregarPuntoTerreno(b, terrain, originX + col * spacing, originZ + row * spacing, spacing, skirtDepth);
+            }
+        }
+        return b;
+    }
+
+    private static void agregarPuntoTerreno(Builder b, Terrain terrain, float x, float z, float spacing, float drop) {
+        float h = terrain.height(x, z);
+        float dx = terrain.height(x + spacing, z) - terrain.height(x - spacing, z);
+        float dz = terrain.height(x, z + spacing) - terrain.height(x, z - spacing);
+        float nx = -dx, ny = 2.0f * spacing, nz = -dz;
+        float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+        // Verde más oscuro en los valles y más claro en las lomas (antes el tablero alternaba 0.5 y 0.6)
+        float t = Math.max(0.0f, Math.min(1.0f, (h / Terrain.MAX_HEIGHT + 1.0f) * 0.5f));
+        b.vertex(x, h - drop, z, nx / length, ny / length, nz / length,
+                0.08f + 0.1f * t, 0.42f + 0.22f * t, 0.08f + 0.1f * t);
+    }
+
+    // Recorrido de cada borde (0 norte z mín., 1 este x máx., 2 sur z máx., 3 oeste x mín.)
+    private static int bordeFila(int edge, int k, int cells) {
+        switch (edge) {
+            case 0: return 0;
+            case 1: return k;
+            case 2: return cells;
+            default: return k;
+        }
+    }
+
+    private static int bordeColumna(int edge, int k, int cells) {
+        switch (edge) {
+            case 0: return k;
+            case 1: return cells;
+            case 2: return k;
+            default: return 0;
+        }
+    }
+
+    /**
+     * Índices de GL_TRIANGLE_STRIP para la rejilla de {@link #crearTerreno} tomando
+     * uno de cada step vértices (step divide a cells): una tira por fila más una
+     * por cada falda, unidas con triángulos degenerados. Todas las tiras tienen un
+     * número par de vértices, así el orden de giro se mantiene tras cada unión.
+     *
+     * Las faldas tapan las grietas entre chunks vecinos con distinto step: el
+     * borde del más grueso es una recta entre vértices que el fino sí tiene.
+     */
+    public static int[] crearIndicesTerreno(int cells, int step) {
+        int n = cells / step;
+        int[] indices = new int[n * 2 * (n + 1) + 4 * 2 * (n + 1) + 2 * (n + 4 - 1)];
+        int size = 0;
+        int stride = cells + 1;
+
+        for (int r = 0; r < n; r++) {
+            int row0 = r * step;
+            int row1 = row0 + step;
+            if (size > 0) {
+                indices[size] = indices[size - 1];
+                indices[size + 1] = row0 * stride;
+                size += 2;
+            }
+            for (int c = 0; c <= n; c++) {
+                indices[size++] = row0 * stride + c * step;
+                indices[size++] = row1 * stride + c * step;
+            }
+        }
+
+        int skirtBase = stride * stride;
+        for (int edge = 0; edge < 4; edge++) {
+            // Sur y oeste se recorren con el borde primero; norte y este al revés, así todas miran hacia afuera
+            boolean edgeFirst = edge == 2 || edge == 3;
+            int first = edgeFirst ? bordeFila(edge, 0, cells) * stride + bordeColumna(edge, 0, cells)
+                    : skirtBase + edge * stride;
+            indices[size] = indices[size - 1];
+            indices[size + 1] = first;
+            size += 2;
+            for (int k = 0; k <= n; k++) {
+                int border = bordeFila(edge, k * step, cells) * stride + bordeColumna(edge, k * step, cells);
+                int skirt = skirtBase + edge * stride + k * step;
+                indices[size++] = edgeFirst ? border : skirt;
+                indices[size++] = edgeFirst ? skirt : border;
+            }
+        }
+        return indices;
+    }
+
+    /**
+     * Las dos montañas del horizonte. Se dibujan sin iluminación, así que la normal no importa. GL_TRIANGLES.
+     */
+    public static Builder crearMontanas() {
+        Builder b = new Builder();
+
+        float br = 0.4f, bg = 0.25f, bb = 0.15f;
+        float sr = 0.9f, sg = 0.9f, sb = 0.95f;
+
+        float peakHeight = 80.0f;
+        float baseLevel = 0.0f;
+        float horizonZ = -300.0f;
+
+        b.vertex(-150.0f, baseLevel, horizonZ, 0.0f, 1.0f, 0.0f, br, bg, bb);
+        b.vertex(-50.0f, peakHeight, horizonZ, 0.0f, 1.0f, 0.0f, sr, sg, sb);
+        b.vertex(50.0f, baseLevel, horizonZ, 0.0f, 1.0f, 0.0f, br, bg, bb);
+
+        b.vertex(0.0f, baseLevel, horizonZ, 0.0f, 1.0f, 0.0f, br * 0.8f, bg * 0.8f, bb * 0.8f);
+        b.vertex(100.0f, peakHeight * 0.75f, horizonZ, 0.0f, 1.0f, 0.0f, sr, sg, sb);
+        b.vertex(200.0f, baseLevel, horizonZ, 0.0f, 1.0f, 0.0f, br * 0.8f, bg * 0.8f, bb * 0.8f);
+
+        return b;
+    }
+}
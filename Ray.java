@@ -0,0 +1,81 @@
+package main;
+
+/**
+ * Rayo origen + t * dirección con la dirección unitaria y su inversa ya
+ * calculadas para las pruebas contra cajas. tMax es la distancia máxima que
+ * se acepta y se acorta cada vez que se encuentra un impacto más cercano, así
+ * la misma instancia sirve para recorrer varios chunks seguidos.
+ */
+public final class Ray {
+
+    public float originX, originY, originZ;
+    public float dirX, dirY, dirZ;
+    public float invDirX, invDirY, invDirZ;
+    public float tMax;
+
+    public void set(float originX, float originY, float originZ,
+                    float dirX, float dirY, float dirZ, float maxDistance) {
+        float length = (float) Math.sqrt(dirX * dirX + dirY * dirY + dirZ * dirZ);
+        this.originX = originX;
+        this.originY = originY;
+        this.originZ = originZ;
+        this.dirX = dirX / length;
+        this.dirY = dirY / length;
+        this.dirZ = dirZ / length;
+        // Con componente 0 la inversa es infinita y la prueba de losas sigue funcionando
+        this.invDirX = 1.0f / this.dirX;
+        this.invDirY = 1.0f / this.dirY;
+        this.invDirZ = 1.0f / this.dirZ;
+        this.tMax = maxDistance;
+    }
+
+    /**
+     * Rayo de la cámara de Main (glRotatef(pitch, 1, 0, 0); glRotatef(yaw, 0, 1, 0)):
+     * mira hacia -z de la vista, que en el mundo es (cos p sin y, -sin p, -cos p cos y).
+     */
+    public void setFromCamera(float camX, float camY, float camZ, float yaw, float pitch, float maxDistance) {
+        double y = Math.toRadians(yaw);
+        double p = Math.toRadians(pitch);
+        float cp = (float) Math.cos(p);
+        set(camX, camY, camZ,
+                cp * (float) Math.sin(y), -(float) Math.sin(p), -cp * (float) Math.cos(y), maxDistance);
+    }
+
+    /** Distancia de entrada en la caja, o +inf si no la corta antes de tMax (prueba de losas). */
+    public float intersectBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        float t1 = (minX - originX) * invDirX;
+        float t2 = (maxX - originX) * invDirX;
+        float tNear = Math.min(t1, t2);
+        float tFar = Math.max(t1, t2);
+
+        t1 = (minY - originY) * invDirY;
+        t2 = (maxY - originY) * invDirY;
+        tNear = Math.max(tNear, Math.min(t1, t2));
+        tFar = Math.min(tFar, Math.max(t1, t2));
+
+        t1 = (minZ - originZ) * invDirZ;
+        t2 = (maxZ - originZ) * invDirZ;
+        tNear = Math.max(tNear, Math.min(t1, t2));
+        tFar = Math.min(tFar, Math.max(t1, t2));
+
+        if (tFar < Math.max(tNear, 0.0f) || tNear > tMax) return Float.POSITIVE_INFINITY;
+        return Math.max(tNear, 0.0f);
+    }
+
+    /** Distancia al primer punto de la esfera, o +inf si no la corta antes de tMax. */
+    public float intersectSphere(float centerX, float centerY, float centerZ, float radius) {
+        float ox = originX - centerX;
+        float oy = originY - centerY;
+        float oz = originZ - centerZ;
+        float b = ox * dirX + oy * dirY + oz * dirZ;
+        float c = ox * ox + oy * oy + oz * oz - radius * radius;
+        float disc = b * b - c;
+        if (disc < 0.0f) return Float.POSITIVE_INFINITY;
+
+        float root = (float) Math.sqrt(disc);
+        float t = -b - root;
+        if (t < 0.0f) t = -b + root; // el origen está dentro de la esfera
+        if (t < 0.0f || t > tMax) return Float.POSITIVE_INFINITY;
+        return t;
+    }
+}
@@ -0,0 +1,212 @@
+package main;
+
+import com.jogamp.opengl.GL2;
+
+/**
+ * Cola de dibujo por cuadro. Los métodos dibujar* solo encolan comandos; al
+ * final se ordenan por una clave de 64 bits y se envían agrupados en lotes, de
+ * modo que los cambios de programa, iluminación, textura y malla quedan en el
+ * mínimo posible (uno por combinación distinta).
+ *
+ * Clave (de más a menos significativo):
+ *   capa (4) | estado: programa + luz (4) | material (8) | malla (32) | orden de llegada (16)
+ *
+ * Todo el almacenamiento se reserva en el constructor; clear/submit/flush no
+ * reservan memoria. Los comandos son en espacio de mundo con la matriz de la
+ * cámara ya cargada.
+ */
+public class RenderQueue {
+
+    /** Geometría opaca. */
+    public static final int CAPA_OPACA = 0;
+    /** Geometría con prueba alfa (impostores), después de la opaca. */
+    public static final int CAPA_RECORTE = 1;
+
+    // Estado: bit 1 = programa de instancing, bit 0 = iluminado
+    private static final int ESTADO_FIJO = 0;
+    private static final int ESTADO_INSTANCING = 2;
+
+    private static final int MATERIAL_VERTICES = 0;  // color por vértice
+    private static final int MATERIAL_IMPOSTOR = 1;  // textura del impostor
+    private static final int MATERIAL_TERRENO = 2;   // color por vértice, índices de TerrainLevels
+
+    private static final byte TIPO_MALLA = 0, TIPO_INSTANCIAS = 1, TIPO_IMPOSTOR = 2, TIPO_TERRENO = 3;
+
+    private final InstancedRenderer instancer;
+    private final int capacity;
+
+    // Comandos (estructura de arreglos, índice = orden de llegada)
+    private final byte[] tipos;
+    private final Mesh[] mallas;
+    private final InstanceBuffer[] instancias;
+    private final TreeImpostor[] impostores;
+    private final boolean[] iluminados;
+    private final float[] luces;
+    private final TerrainLevels[] terrenos;
+    private final int[] niveles;
+
+    // Claves y orden de dibujo; se ordenan juntos
+    private final long[] keys;
+    private final int[] order;
+    private int count = 0;
+    private int lastBatchCount = 0;
+
+    public RenderQueue(InstancedRenderer instancer, int capacity) {
+        this.instancer = instancer;
+        this.capacity = capacity;
+        this.tipos = new byte[capacity];
+        this.mallas = new Mesh[capacity];
+        this.instancias = new InstanceBuffer[capacity];
+        this.impostores = new TreeImpostor[capacity];
+        this.iluminados = new boolean[capacity];
+        this.luces = new float[capacity];
+        this.terrenos = new TerrainLevels[capacity];
+        this.niveles = new int[capacity];
+        this.keys = new long[capacity];
+        this.order = new int[capacity];
+    }
+
+    /** Vacía la cola; se llama al principio de cada cuadro. */
+    public void clear() {
+        // Se sueltan las referencias para no retener mallas ya liberadas
+        for (int i = 0; i < count; i++) {
+            mallas[i] = null;
+            instancias[i] = null;
+            impostores[i] = null;
+            terrenos[i] = null;
+        }
+        count = 0;
+    }
+
+    /** Una malla con el pipeline fijo, tal cual está en el VBO. */
+    public void submitMesh(Mesh mesh, boolean lit) {
+        int i = reservar();
+        if (i < 0) return;
+        tipos[i] = TIPO_MALLA;
+        mallas[i] = mesh;
+        iluminados[i] = lit;
+        keys[i] = clave(CAPA_OPACA, ESTADO_FIJO | (lit ? 1 : 0), MATERIAL_VERTICES, mesh.getId(), i);
+    }
+
+    /** Una malla repetida en cada desplazamiento de instances. */
+    public void submitInstanced(Mesh mesh, InstanceBuffer instances, boolean lit) {
+        if (instances.getUploadedCount() == 0) return;
+        int i = reservar();
+        if (i < 0) return;
+        tipos[i] = TIPO_INSTANCIAS;
+        mallas[i] = mesh;
+        instancias[i] = instances;
+        iluminados[i] = lit;
+        int programa = instancer.isSupported() ? ESTADO_INSTANCING : ESTADO_FIJO;
+        keys[i] = clave(CAPA_OPACA, programa | (lit ? 1 : 0), MATERIAL_VERTICES, mesh.getId(), i);
+    }
+
+    /** Todos los impostores acumulados, con la intensidad de luz del momento. */
+    public void submitImpostor(TreeImpostor impostor, float light) {
+        int i = reservar();
+        if (i < 0) return;
+        tipos[i] = TIPO_IMPOSTOR;
+        impostores[i] = impostor;
+        luces[i] = light;
+        keys[i] = clave(CAPA_RECORTE, ESTADO_FIJO, MATERIAL_IMPOSTOR, 0, i);
+    }
+
+    /** La malla de terreno de un chunk con los índices de un nivel de detalle. */
+    public void submitTerrain(Mesh mesh, TerrainLevels levels, int level) {
+        int i = reservar();
+        if (i < 0) return;
+        tipos[i] = TIPO_TERRENO;
+        mallas[i] = mesh;
+        terrenos[i] = levels;
+        niveles[i] = level;
+        keys[i] = clave(CAPA_OPACA, ESTADO_FIJO | 1, MATERIAL_TERRENO, mesh.getId(), i);
+    }
+
+    private int reservar() {
+        if (count >= capacity) return -1;
+        order[count] = count;
+        return count++;
+    }
+
+    private static long clave(int capa, int estado, int material, int malla, int secuencia) {
+        return ((long) (capa & 0xF) << 60)
+                | ((long) (estado & 0xF) << 56)
+                | ((long) (material & 0xFF) << 48)
+                | ((long) malla & 0xFFFFFFFFL) << 16
+                | (secuencia & 0xFFFF);
+    }
+
+    /**
+     * Ordena los comandos y los envía. Los comandos consecutivos con la misma
+     * capa, estado, material y malla forman un lote: la malla y el estado se
+     * preparan una sola vez para todo el lote.
+     */
+    public void flush(GLStateCache state) {
+        ordenar();
+
+        int batches = 0;
+        long loteActual = -1;
+        for (int k = 0; k < count; k++) {
+            int i = order[k];
+            long lote = keys[i] >>> 16; // todo menos el orden de llegada
+            boolean nuevoLote = lote != loteActual;
+            if (nuevoLote) {
+                loteActual = lote;
+                batches++;
+            }
+
+            switch (tipos[i]) {
+                case TIPO_MALLA:
+                    if (nuevoLote) {
+                        state.useProgram(0);
+                        if (iluminados[i]) state.enable(GL2.GL_LIGHTING); else state.disable(GL2.GL_LIGHTING);
+                        mallas[i].bind(state);
+                    }
+                    mallas[i].drawBound(state.gl());
+                    break;
+                case TIPO_TERRENO:
+                    if (nuevoLote) {
+                        state.useProgram(0);
+                        state.enable(GL2.GL_LIGHTING);
+                        mallas[i].bind(state);
+                        terrenos[i].bind(state);
+                    }
+                    terrenos[i].drawBound(state.gl(), niveles[i]);
+                    break;
+                case TIPO_INSTANCIAS:
+                    if (nuevoLote) {
+                        instancer.bind(state, mallas[i], iluminados[i]);
+                    }
+                    instancer.drawBound(state, mallas[i], instancias[i]);
+                    break;
+                default:
+                    impostores[i].draw(state, luces[i]);
+                    break;
+            }
+        }
+        lastBatchCount = batches;
+    }
+
+    /** Inserción: pocos comandos y casi siempre en el mismo orden que el cuadro anterior. */
+    private void ordenar() {
+        for (int a = 1; a < count; a++) {
+            int idx = order[a];
+            long key = keys[idx];
+            int b = a - 1;
+            while (b >= 0 && keys[order[b]] > key) {
+                order[b + 1] = order[b];
+                b--;
+            }
+            order[b + 1] = idx;
+        }
+    }
+
+    public int getCommandCount() {
+        return count;
+    }
+
+    /** Lotes enviados en el último flush. */
+    public int getBatchCount() {
+        return lastBatchCount;
+    }
+}
@@ -0,0 +1,116 @@
+package main;
+
+import com.jogamp.opengl.GL2;
+
+/**
+ * FBO donde se dibuja la escena a una fracción del tamaño de la ventana; al
+ * terminar se copia escalado (filtro lineal) al framebuffer de la ventana con
+ * glBlitFramebuffer. La proyección no cambia porque la relación de aspecto es
+ * la misma, solo el viewport.
+ *
+ * Con escala 1 no se usa el FBO y se dibuja directo en la ventana. Los buffers
+ * se redimensionan solo cuando cambia el tamaño escalado.
+ */
+public class ScaledFramebuffer {
+
+    private final int[] fbo = new int[1];
+    private final int[] color = new int[1];
+    private final int[] depth = new int[1];
+    private boolean supported = false;
+    private int width = 0, height = 0;           // tamaño actual de los buffers
+    private int targetWidth, targetHeight;       // ventana del cuadro en curso
+    private boolean active = false;
+
+    /**
+     * Crea el FBO (todavía sin almacenamiento).
+     * @return false si el contexto no tiene FBOs o glBlitFramebuffer; la escena se dibuja a resolución completa.
+     */
+    public boolean init(GL2 gl) {
+        if (!gl.isFunctionAvailable("glGenFramebuffers") || !gl.isFunctionAvailable("glBlitFramebuffer")) {
+            System.err.println("Aviso: sin glBlitFramebuffer, la resolución dinámica queda desactivada.");
+            return false;
+        }
+        gl.glGenFramebuffers(1, fbo, 0);
+        gl.glGenRenderbuffers(1, color, 0);
+        gl.glGenRenderbuffers(1, depth, 0);
+        supported = true;
+        return true;
+    }
+
+    /**
+     * Empieza el cuadro: con escala menor que 1 enlaza el FBO a
+     * round(ventana * escala) y pone el viewport a ese tamaño.
+     * @return true si el cuadro se dibuja en el FBO.
+     */
+    public boolean begin(GL2 gl, int windowWidth, int windowHeight, float scale) {
+        targetWidth = windowWidth;
+        targetHeight = windowHeight;
+        active = false;
+        if (!supported || scale >= 1.0f) return false;
+
+        int w = Math.max(1, Math.round(windowWidth * scale));
+        int h = Math.max(1, Math.round(windowHeight * scale));
+        gl.glBindFramebuffer(GL2.GL_FRAMEBUFFER, fbo[0]);
+        if ((w != width || h != height) && !redimensionar(gl, w, h)) {
+            gl.glBindFramebuffer(GL2.GL_FRAMEBUFFER, gl.getDefaultDrawFramebuffer());
+            return false;
+        }
+        gl.glViewport(0, 0, w, h);
+        active = true;
+        return true;
+    }
+
+    private boolean redimensionar(GL2 gl, int w, int h) {
+        gl.glBindRenderbuffer(GL2.GL_RENDERBUFFER, color[0]);
+        gl.glRenderbufferStorage(GL2.GL_RENDERBUFFER, GL2.GL_RGBA8, w, h);
+        gl.glFramebufferRenderbuffer(GL2.GL_FRAMEBUFFER, GL2.GL_COLOR_ATTACHMENT0, GL2.GL_RENDERBUFFER, color[0]);
+        gl.glBindRenderbuffer(GL2.GL_RENDERBUFFER, depth[0]);
+        gl.glRenderbufferStorage(GL2.GL_RENDERBUFFER, GL2.GL_DEPTH_COMPONENT16, w, h);
+        gl.glFramebufferRenderbuffer(GL2.GL_FRAMEBUFFER, GL2.GL_DEPTH_ATTACHMENT, GL2.GL_RENDERBUFFER, depth[0]);
+        gl.glBindRenderbuffer(GL2.GL_RENDERBUFFER, 0);
+
+        if (gl.glCheckFramebufferStatus(GL2.GL_FRAMEBUFFER) != GL2.GL_FRAMEBUFFER_COMPLETE) {
+            System.err.println("Aviso: FBO de " + w + "x" + h + " incompleto, la resolución dinámica queda desactivada.");
+            supported = false;
+            width = height = 0;
+            return false;
+        }
+        width = w;
+        height = h;
+        return true;
+    }
+
+    /** Copia el FBO escalado a la ventana y deja enlazado el framebuffer de la ventana con su viewport. */
+    public void end(GL2 gl) {
+        if (!active) return;
+        active = false;
+        gl.glBindFramebuffer(GL2.GL_READ_FRAMEBUFFER, fbo[0]);
+        gl.glBindFramebuffer(GL2.GL_DRAW_FRAMEBUFFER, gl.getDefaultDrawFramebuffer());
+        gl.glBlitFramebuffer(0, 0, width, height, 0, 0, targetWidth, targetHeight,
+                GL2.GL_COLOR_BUFFER_BIT, GL2.GL_LINEAR);
+        gl.glBindFramebuffer(GL2.GL_READ_FRAMEBUFFER, gl.getDefaultReadFramebuffer());
+        gl.glViewport(0, 0, targetWidth, targetHeight);
+    }
+
+    public boolean isSupported() {
+        return supported;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void dispose(GL2 gl) {
+        if (fbo[0] != 0) {
+            gl.glDeleteFramebuffers(1, fbo, 0);
+            gl.glDeleteRenderbuffers(1, color, 0);
+            gl.glDeleteRenderbuffers(1, depth, 0);
+            fbo[0] = color[0] = depth[0] = 0;
+        }
+        supported = false;
+    }
+}
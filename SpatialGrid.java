@@ -0,0 +1,131 @@
+package main;
+
+/**
+ * Rejilla uniforme sobre el plano XZ que agrupa los árboles por celda.
+ * Se construye una sola vez (formato CSR: inicio de cada celda + índices),
+ * así una consulta solo recorre las celdas que tocan el volumen de visión.
+ */
+public class SpatialGrid {
+
+    private final float originX, originZ;
+    private final float cellSize;
+    private final int cellsX, cellsZ;
+    private final float minY, maxY;
+    private final float margin;
+
+    private final int[] cellStart; // cellsX * cellsZ + 1 entradas
+    private final int[] items;
+
+    /**
+     * @param xs, zs   posiciones de los objetos
+     * @param margin   radio horizontal de cada objeto (expande las cajas de las celdas)
+     * @param minY, maxY altura que ocupan los objetos
+     */
+    public SpatialGrid(float[] xs, float[] zs, int count, float originX, float originZ, float size,
+                       float cellSize, float margin, float minY, float maxY) {
+        this.originX = originX;
+        this.originZ = originZ;
+        this.cellSize = cellSize;
+        this.cellsX = Math.max(1, (int) Math.ceil(size / cellSize));
+        this.cellsZ = this.cellsX;
+        this.margin = margin;
+        this.minY = minY;
+        this.maxY = maxY;
+
+        int cellCount = cellsX * cellsZ;
+        cellStart = new int[cellCount + 1];
+        items = new int[count];
+
+        // Conteo por celda, prefijos y reparto
+        int[] cellOf = new int[count];
+        for (int i = 0; i < count; i++) {
+            cellOf[i] = cellIndex(xs[i], zs[i]);
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < cellCount; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] cursor = new int[cellCount];
+        for (int i = 0; i < count; i++) {
+            int c = cellOf[i];
+            items[cellStart[c] + cursor[c]++] = i;
+        }
+    }
+
+    private int cellIndex(float x, float z) {
+        int cx = Math.min(cellsX - 1, Math.max(0, (int) ((x - originX) / cellSize)));
+        int cz = Math.min(cellsZ - 1, Math.max(0, (int) ((z - originZ) / cellSize)));
+        return cz * cellsX + cx;
+    }
+
+    /**
+     * Escribe en out los índices de los objetos cuyas celdas son visibles.
+     * @return cuántos objetos hay en esas celdas; si es mayor que out.length,
+     *         out se quedó corto y solo tiene los primeros out.length.
+     */
+    public int queryVisible(Frustum frustum, int[] out) {
+        // Solo las celdas bajo el rectángulo XZ del volumen de visión
+        int cx0 = clampCell((frustum.getMinX() - margin - originX) / cellSize, cellsX);
+        int cx1 = clampCell((frustum.getMaxX() + margin - originX) / cellSize, cellsX);
+        int cz0 = clampCell((frustum.getMinZ() - margin - originZ) / cellSize, cellsZ);
+        int cz1 = clampCell((frustum.getMaxZ() + margin - originZ) / cellSize, cellsZ);
+
+        int n = 0;
+        for (int cz = cz0; cz <= cz1; cz++) {
+            float z0 = originZ + cz * cellSize;
+            for (int cx = cx0; cx <= cx1; cx++) {
+                int c = cz * cellsX + cx;
+                int start = cellStart[c];
+                int end = cellStart[c + 1];
+                if (start == end) continue;
+
+                float x0 = originX + cx * cellSize;
+                if (!frustum.intersectsBox(x0 - margin, minY, z0 - margin,
+                        x0 + cellSize + margin, maxY, z0 + cellSize + margin)) {
+                    continue;
+                }
+                n = copiar(start, end, out, n);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Escribe en out los índices de los objetos de las celdas que tocan el
+     * círculo (x, z, radius), ensanchado por el margen de cada objeto. El costo
+     * depende de cuántos objetos hay cerca, no del total.
+     * @return cuántos objetos hay en esas celdas; si es mayor que out.length,
+     *         out se quedó corto y solo tiene los primeros out.length.
+     */
+    public int queryNear(float x, float z, float radius, int[] out) {
+        float reach = radius + margin;
+        int cx0 = clampCell((x - reach - originX) / cellSize, cellsX);
+        int cx1 = clampCell((x + reach - originX) / cellSize, cellsX);
+        int cz0 = clampCell((z - reach - originZ) / cellSize, cellsZ);
+        int cz1 = clampCell((z + reach - originZ) / cellSize, cellsZ);
+
+        int n = 0;
+        for (int cz = cz0; cz <= cz1; cz++) {
+            for (int cx = cx0; cx <= cx1; cx++) {
+                int c = cz * cellsX + cx;
+                n = copiar(cellStart[c], cellStart[c + 1], out, n);
+            }
+        }
+        return n;
+    }
+
+    /** Copia items[start, end) a out desde n, lo que quepa; devuelve n + (end - start). */
+    private int copiar(int start, int end, int[] out, int n) {
+        int fit = Math.max(0, Math.min(end - start, out.length - n));
+        System.arraycopy(items, start, out, n, fit);
+        return n + (end - start);
+    }
+
+    private static int clampCell(float cell, int cells) {
+        return Math.min(cells - 1, Math.max(0, (int) Math.floor(cell)));
+    }
+
+    public int getCellCount() {
+        return cellsX * cellsZ;
+    }
+}
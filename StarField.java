@@ -0,0 +1,141 @@
+package main;
+
+import java.util.Random;
+
+/**
+ * Campo de estrellas que bajan por un espacio 2D de worldSize x worldSize. Es la
+ * simulación que comparten DynamicFlight2D y TwoDStarField, sin nada de OpenGL,
+ * para poder medirla aparte (ver jmh/).
+ *
+ * Las velocidades están en unidades por segundo; {@link #update(float)} avanza un
+ * paso fijo y guarda la y anterior para interpolar al dibujar.
+ *
+ * Las estrellas se guardan como estructura de arreglos (x, y, velocidad e y
+ * anterior en float[] separados) para recorrerlas en orden y de a varias. La x
+ * de una estrella que reaparece arriba no sale de un Random compartido sino de
+ * un hash de (índice, paso, semilla): no hay estado que avanzar estrella por
+ * estrella, así que el paso se puede hacer con instrucciones vectoriales.
+ *
+ * Con el módulo jdk.incubator.vector (java --add-modules jdk.incubator.vector,
+ * y StarFieldVector compilado con la misma opción) el paso lo hace
+ * {@link StarFieldVector}; si no, o con -Dstars.vector=false, el bucle escalar
+ * de {@link #actualizar}. Los dos dan exactamente los mismos valores.
+ */
+public final class StarField {
+
+    /** Paso vectorial; procesa desde 0 hasta lo que devuelve y el resto lo hace el bucle escalar. */
+    interface Kernel {
+        int update(float[] x, float[] y, float[] speed, float[] prevY, int count, float dt,
+                   float worldSize, float xScale, int salt);
+    }
+
+    private static final Kernel KERNEL = cargarKernel();
+
+    private final int count;
+    private final float worldSize;
+    private final float minSpeed;
+    private final float maxSpeed;
+    private final float xScale; // de 24 bits de hash a [0, worldSize)
+    private final float[] x;
+    private final float[] y;
+    private final float[] speed;
+    private final float[] prevY; // y del paso anterior
+    private final Random rand;
+    private int seed;
+    private int step = 0;
+
+    public StarField(int count, float worldSize, float minSpeed, float maxSpeed, Random rand) {
+        this.count = count;
+        this.worldSize = worldSize;
+        this.minSpeed = minSpeed;
+        this.maxSpeed = maxSpeed;
+        this.xScale = worldSize * 0x1.0p-24f;
+        this.x = new float[count];
+        this.y = new float[count];
+        this.speed = new float[count];
+        this.prevY = new float[count];
+        this.rand = rand;
+    }
+
+    private static Kernel cargarKernel() {
+        if (!Boolean.parseBoolean(System.getProperty("stars.vector", "true"))) return null;
+        if (!ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) return null;
+        try {
+            return (Kernel) Class.forName("main.StarFieldVector").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // Sin la clase compilada o con una JVM que no la puede enlazar: bucle escalar
+            return null;
+        }
+    }
+
+    /** true si update() usa la API de vectores. */
+    public static boolean isVectorized() {
+        return KERNEL != null;
+    }
+
+    /** Reparte las estrellas al azar por todo el espacio. */
+    public void generate() {
+        for (int i = 0; i < count; i++) {
+            x[i] = rand.nextFloat() * worldSize;
+            y[i] = rand.nextFloat() * worldSize;
+            prevY[i] = y[i];
+            // La velocidad simula la profundidad y la sensación de avance
+            speed[i] = rand.nextFloat() * (maxSpeed - minSpeed) + minSpeed;
+        }
+        seed = rand.nextInt();
+        step = 0;
+    }
+
+    /** Un paso de dt segundos. */
+    public void update(float dt) {
+        int salt = hash(step++, seed);
+        int done = KERNEL != null ? KERNEL.update(x, y, speed, prevY, count, dt, worldSize, xScale, salt) : 0;
+        actualizar(done, dt, salt);
+    }
+
+    private void actualizar(int from, float dt, int salt) {
+        for (int i = from; i < count; i++) {
+            float before = y[i];
+            // Mover la estrella hacia abajo (simulando avance)
+            float after = before - speed[i] * dt;
+
+            // Si sale por la parte inferior, reaparece arriba (sin interpolar el salto)
+            if (after < 0.0f) {
+                x[i] = (hash(i, salt) >>> 8) * xScale;
+                after = worldSize;
+                before = worldSize;
+            }
+            prevY[i] = before;
+            y[i] = after;
+        }
+    }
+
+    /**
+     * Mezcla de 32 bits (la de lowbias32). StarFieldVector hace las mismas
+     * operaciones por carril; si cambia aquí, cambia allí.
+     */
+    static int hash(int i, int salt) {
+        int h = (i * 0x9E3779B9) ^ salt;
+        h = (h ^ (h >>> 16)) * 0x7FEB352D;
+        h = (h ^ (h >>> 15)) * 0x846CA68B;
+        return h ^ (h >>> 16);
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public float getX(int i) {
+        return x[i];
+    }
+
+    /** y interpolada entre el paso anterior y el actual. */
+    public float getY(int i, float alpha) {
+        return prevY[i] + (y[i] - prevY[i]) * alpha;
+    }
+
+    /** Velocidad normalizada a [0, 1]: las más rápidas (cercanas) son las más brillantes. */
+    public float getBrightness(int i) {
+        return (speed[i] - minSpeed) / (maxSpeed - minSpeed);
+    }
+}
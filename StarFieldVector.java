@@ -0,0 +1,54 @@
+package main;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Paso de {@link StarField} con la API de vectores (incubadora): tantas
+ * estrellas por iteración como carriles tenga el registro más ancho de la CPU.
+ * Las que se salen por abajo se reubican con una máscara (compare + blend y un
+ * store enmascarado de x), sin saltos por estrella.
+ *
+ * Compilar y ejecutar con --add-modules jdk.incubator.vector. StarField solo la
+ * carga por reflexión cuando el módulo está presente; sin él se usa el bucle
+ * escalar.
+ */
+final class StarFieldVector implements StarField.Kernel {
+
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    // Mismo ancho de registro: tantos carriles de int como de float
+    private static final VectorSpecies<Integer> INTS = VectorSpecies.of(int.class, FLOATS.vectorShape());
+
+    @Override
+    public int update(float[] x, float[] y, float[] speed, float[] prevY, int count, float dt,
+                      float worldSize, float xScale, int salt) {
+        int bound = FLOATS.loopBound(count);
+        FloatVector top = FloatVector.broadcast(FLOATS, worldSize);
+        IntVector lanes = IntVector.zero(INTS).addIndex(1);
+
+        for (int i = 0; i < bound; i += FLOATS.length()) {
+            FloatVector before = FloatVector.fromArray(FLOATS, y, i);
+            FloatVector after = before.sub(FloatVector.fromArray(FLOATS, speed, i).mul(dt));
+
+            VectorMask<Float> wrapped = after.compare(VectorOperators.LT, 0.0f);
+            if (wrapped.anyTrue()) {
+                // StarField.hash(i + carril, salt) en cada carril
+                IntVector h = lanes.add(i).mul(0x9E3779B9).lanewise(VectorOperators.XOR, salt);
+                h = h.lanewise(VectorOperators.XOR, h.lanewise(VectorOperators.LSHR, 16)).mul(0x7FEB352D);
+                h = h.lanewise(VectorOperators.XOR, h.lanewise(VectorOperators.LSHR, 15)).mul(0x846CA68B);
+                h = h.lanewise(VectorOperators.XOR, h.lanewise(VectorOperators.LSHR, 16));
+                FloatVector newX = ((FloatVector) h.lanewise(VectorOperators.LSHR, 8)
+                        .convert(VectorOperators.I2F, 0)).mul(xScale);
+                newX.intoArray(x, i, wrapped);
+                after = after.blend(top, wrapped);
+                before = before.blend(top, wrapped);
+            }
+            before.intoArray(prevY, i);
+            after.intoArray(y, i);
+        }
+        return bound;
+    }
+}
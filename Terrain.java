@@ -0,0 +1,73 @@
+package main;
+
+/**
+ * Altura del terreno en cualquier punto (x, z) del mundo: ruido de valor
+ * fractal (varias octavas sumadas) a partir de la semilla del mundo. No guarda
+ * tablas, cada consulta hashea las esquinas de su celda, así que da lo mismo
+ * en todos los hilos y los chunks vecinos coinciden exactamente en el borde.
+ */
+public final class Terrain {
+
+    private static final int OCTAVES = 4;
+    private static final float BASE_WAVELENGTH = 120.0f; // unidades de mundo de la octava más grande
+    private static final float BASE_AMPLITUDE = 6.0f;
+    private static final float LACUNARITY = 2.0f;
+    private static final float GAIN = 0.45f;
+    /** Cota de |height|: suma de las amplitudes de todas las octavas. */
+    public static final float MAX_HEIGHT = maxHeight();
+
+    private final long seed;
+
+    public Terrain(long worldSeed) {
+        this.seed = worldSeed;
+    }
+
+    /** Altura en (x, z); entre -MAX_HEIGHT y MAX_HEIGHT. */
+    public float height(float x, float z) {
+        float sum = 0.0f;
+        float frequency = 1.0f / BASE_WAVELENGTH;
+        float amplitude = BASE_AMPLITUDE;
+        for (int octave = 0; octave < OCTAVES; octave++) {
+            sum += amplitude * valueNoise(x * frequency, z * frequency, octave);
+            frequency *= LACUNARITY;
+            amplitude *= GAIN;
+        }
+        return sum;
+    }
+
+    private static float maxHeight() {
+        float sum = 0.0f;
+        float amplitude = BASE_AMPLITUDE;
+        for (int octave = 0; octave < OCTAVES; octave++) {
+            sum += amplitude;
+            amplitude *= GAIN;
+        }
+        return sum;
+    }
+
+    /** Ruido de valor en [-1, 1] con interpolación suave entre las 4 esquinas de la celda. */
+    private float valueNoise(float x, float z, int octave) {
+        int x0 = (int) Math.floor(x);
+        int z0 = (int) Math.floor(z);
+        float tx = suavizar(x - x0);
+        float tz = suavizar(z - z0);
+
+        float a = cornerValue(x0, z0, octave);
+        float b = cornerValue(x0 + 1, z0, octave);
+        float c = cornerValue(x0, z0 + 1, octave);
+        float d = cornerValue(x0 + 1, z0 + 1, octave);
+
+        float top = a + (b - a) * tx;
+        float bottom = c + (d - c) * tx;
+        return top + (bottom - top) * tz;
+    }
+
+    private static float suavizar(float t) {
+        return t * t * t * (t * (t * 6.0f - 15.0f) + 10.0f);
+    }
+
+    private float cornerValue(int x, int z, int octave) {
+        long h = WorldChunk.chunkSeed(seed + octave * 0x632BE59BD9B4E019L, x, z);
+        return (h >>> 40) / (float) (1L << 23) - 1.0f; // 24 bits a [-1, 1)
+    }
+}
@@ -0,0 +1,71 @@
+package main;
+
+import com.jogamp.opengl.GL2;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * Índices de los niveles de detalle del terreno (geomipmapping), compartidos por
+ * todos los chunks: como la rejilla de vértices es igual en todos, cada nivel es
+ * solo otra tira de índices sobre el mismo VBO. Van todos en un único element
+ * buffer, uno detrás de otro.
+ */
+public class TerrainLevels {
+
+    private final int[] ibo = new int[1];
+    private final long[] offsets; // en bytes dentro del element buffer
+    private final int[] counts;
+
+    private TerrainLevels(int levels) {
+        this.offsets = new long[levels];
+        this.counts = new int[levels];
+    }
+
+    /** Crea el element buffer con un nivel por cada step. Se llama una sola vez desde init(). */
+    public static TerrainLevels upload(GL2 gl, int cells, int[] steps) {
+        TerrainLevels levels = new TerrainLevels(steps.length);
+
+        int[][] indices = new int[steps.length][];
+        int total = 0;
+        for (int i = 0; i < steps.length; i++) {
+            indices[i] = MeshFactory.crearIndicesTerreno(cells, steps[i]);
+            levels.offsets[i] = (long) total * Integer.BYTES;
+            levels.counts[i] = indices[i].length;
+            total += indices[i].length;
+        }
+
+        IntBuffer data = ByteBuffer.allocateDirect(total * Integer.BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asIntBuffer();
+        for (int[] level : indices) data.put(level);
+        data.flip();
+
+        gl.glGenBuffers(1, levels.ibo, 0);
+        gl.glBindBuffer(GL2.GL_ELEMENT_ARRAY_BUFFER, levels.ibo[0]);
+        gl.glBufferData(GL2.GL_ELEMENT_ARRAY_BUFFER, (long) total * Integer.BYTES, data, GL2.GL_STATIC_DRAW);
+        gl.glBindBuffer(GL2.GL_ELEMENT_ARRAY_BUFFER, 0);
+        return levels;
+    }
+
+    public void bind(GLStateCache state) {
+        state.bindElementArrayBuffer(ibo[0]);
+    }
+
+    /** Dibuja el nivel con la malla de un chunk ya enlazada (ver {@link Mesh#bind}). */
+    public void drawBound(GL2 gl, int level) {
+        gl.glDrawElements(GL2.GL_TRIANGLE_STRIP, counts[level], GL2.GL_UNSIGNED_INT, offsets[level]);
+    }
+
+    public int getLevelCount() {
+        return counts.length;
+    }
+
+    public void dispose(GL2 gl) {
+        if (ibo[0] != 0) {
+            gl.glDeleteBuffers(1, ibo, 0);
+            ibo[0] = 0;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package main;
+
+import com.jogamp.opengl.GL2;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * Impostor de árbol: la malla se renderiza una vez a una textura (vista lateral,
+ * fondo transparente) y los árboles lejanos se dibujan como quads orientados
+ * hacia la cámara sobre el eje Y.
+ */
+public class TreeImpostor {
+
+    private static final int TEX_WIDTH = 64;
+    private static final int TEX_HEIGHT = 128;
+    // Recuadro del árbol en la textura (el follaje mide 1.5 de radio y unas 5 unidades de alto)
+    private static final float HALF_WIDTH = 1.6f;
+    private static final float HEIGHT = 6.4f;
+
+    // Por vértice: posición (3) + coordenada de textura (2)
+    private static final int FLOATS_PER_VERTEX = 5;
+    private static final int STRIDE = FLOATS_PER_VERTEX * Float.BYTES;
+
+    private final int[] texture = new int[1];
+    private final int[] vbo = new int[1];
+    private FloatBuffer quads;
+    private int capacity = 0;
+    private int quadCount = 0;
+    private boolean ready = false;
+
+    /**
+     * Renderiza la malla del árbol a la textura del impostor a través de un FBO.
+     * @return false si el contexto no tiene FBOs (en ese caso se usa la malla más simple).
+     */
+    public boolean bake(GLStateCache state, Mesh arbol, int maxInstances) {
+        GL2 gl = state.gl();
+        if (!gl.isFunctionAvailable("glGenFramebuffers")) {
+            System.err.println("Aviso: sin soporte de FBO, los árboles lejanos usan la malla de menor detalle.");
+            return false;
+        }
+
+        int[] previousFbo = new int[1];
+        int[] viewport = new int[4];
+        gl.glGetIntegerv(GL2.GL_FRAMEBUFFER_BINDING, previousFbo, 0);
+        gl.glGetIntegerv(GL2.GL_VIEWPORT, viewport, 0);
+
+        gl.glGenTextures(1, texture, 0);
+        gl.glBindTexture(GL2.GL_TEXTURE_2D, texture[0]);
+        gl.glTexParameteri(GL2.GL_TEXTURE_2D, GL2.GL_TEXTURE_MIN_FILTER, GL2.GL_LINEAR);
+        gl.glTexParameteri(GL2.GL_TEXTURE_2D, GL2.GL_TEXTURE_MAG_FILTER, GL2.GL_LINEAR);
+        gl.glTexParameteri(GL2.GL_TEXTURE_2D, GL2.GL_TEXTURE_WRAP_S, GL2.GL_CLAMP_TO_EDGE);
+        gl.glTexParameteri(GL2.GL_TEXTURE_2D, GL2.GL_TEXTURE_WRAP_T, GL2.GL_CLAMP_TO_EDGE);
+        gl.glTexImage2D(GL2.GL_TEXTURE_2D, 0, GL2.GL_RGBA8, TEX_WIDTH, TEX_HEIGHT, 0,
+                GL2.GL_RGBA, GL2.GL_UNSIGNED_BYTE, null);
+
+        int[] fbo = new int[1];
+        int[] depth = new int[1];
+        gl.glGenFramebuffers(1, fbo, 0);
+        gl.glBindFramebuffer(GL2.GL_FRAMEBUFFER, fbo[0]);
+        gl.glFramebufferTexture2D(GL2.GL_FRAMEBUFFER, GL2.GL_COLOR_ATTACHMENT0, GL2.GL_TEXTURE_2D, texture[0], 0);
+        gl.glGenRenderbuffers(1, depth, 0);
+        gl.glBindRenderbuffer(GL2.GL_RENDERBUFFER, depth[0]);
+        gl.glRenderbufferStorage(GL2.GL_RENDERBUFFER, GL2.GL_DEPTH_COMPONENT16, TEX_WIDTH, TEX_HEIGHT);
+        gl.glFramebufferRenderbuffer(GL2.GL_FRAMEBUFFER, GL2.GL_DEPTH_ATTACHMENT, GL2.GL_RENDERBUFFER, depth[0]);
+
+        boolean complete = gl.glCheckFramebufferStatus(GL2.GL_FRAMEBUFFER) == GL2.GL_FRAMEBUFFER_COMPLETE;
+        if (complete) {
+            gl.glViewport(0, 0, TEX_WIDTH, TEX_HEIGHT);
+            gl.glMatrixMode(GL2.GL_PROJECTION);
+            gl.glPushMatrix();
+            gl.glLoadIdentity();
+            gl.glOrtho(-HALF_WIDTH, HALF_WIDTH, 0.0, HEIGHT, -10.0, 10.0);
+            gl.glMatrixMode(GL2.GL_MODELVIEW);
+            gl.glPushMatrix();
+            gl.glLoadIdentity();
+
+            // Solo el color base; la luz del momento se aplica al dibujar con glColor
+            gl.glClearColor(0.0f, 0.0f, 0.0f, 0.0f);
+            gl.glClear(GL2.GL_COLOR_BUFFER_BIT | GL2.GL_DEPTH_BUFFER_BIT);
+            state.disable(GL2.GL_LIGHTING);
+            arbol.draw(state);
+            state.enable(GL2.GL_LIGHTING);
+
+            gl.glPopMatrix();
+            gl.glMatrixMode(GL2.GL_PROJECTION);
+            gl.glPopMatrix();
+            gl.glMatrixMode(GL2.GL_MODELVIEW);
+        }
+
+        gl.glBindFramebuffer(GL2.GL_FRAMEBUFFER, previousFbo[0]);
+        gl.glViewport(viewport[0], viewport[1], viewport[2], viewport[3]);
+        gl.glDeleteFramebuffers(1, fbo, 0);
+        gl.glDeleteRenderbuffers(1, depth, 0);
+        gl.glBindTexture(GL2.GL_TEXTURE_2D, 0);
+
+        if (!complete) {
+            System.err.println("Aviso: FBO incompleto, los árboles lejanos usan la malla de menor detalle.");
+            gl.glDeleteTextures(1, texture, 0);
+            texture[0] = 0;
+            return false;
+        }
+
+        capacity = maxInstances;
+        quads = ByteBuffer.allocateDirect(Math.max(1, capacity) * 4 * STRIDE)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        gl.glGenBuffers(1, vbo, 0);
+        ready = true;
+        return true;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void clear() {
+        quadCount = 0;
+    }
+
+    /**
+     * Agrega un quad vertical centrado en (x, z), girado hacia la cámara.
+     * (rightX, rightZ) es el eje derecho de la cámara en el mundo.
+     */
+    public void add(float x, float y, float z, float rightX, float rightZ) {
+        if (quadCount >= capacity) return;
+
+        float dx = rightX * HALF_WIDTH;
+        float dz = rightZ * HALF_WIDTH;
+        int base = quadCount * 4 * FLOATS_PER_VERTEX;
+
+        putVertex(base,                         x - dx, y,          z - dz, 0.0f, 0.0f);
+        putVertex(base + FLOATS_PER_VERTEX,     x + dx, y,          z + dz, 1.0f, 0.0f);
+        putVertex(base + FLOATS_PER_VERTEX * 2, x + dx, y + HEIGHT, z + dz, 1.0f, 1.0f);
+        putVertex(base + FLOATS_PER_VERTEX * 3, x - dx, y + HEIGHT, z - dz, 0.0f, 1.0f);
+        quadCount++;
+    }
+
+    private void putVertex(int index, float x, float y, float z, float s, float t) {
+        quads.put(index, x);
+        quads.put(index + 1, y);
+        quads.put(index + 2, z);
+        quads.put(index + 3, s);
+        quads.put(index + 4, t);
+    }
+
+    /**
+     * Dibuja todos los impostores acumulados con un solo glDrawArrays.
+     * @param light intensidad de la luz del momento (multiplica la textura).
+     */
+    public void draw(GLStateCache state, float light) {
+        if (!ready || quadCount == 0) return;
+
+        GL2 gl = state.gl();
+        quads.position(0);
+        quads.limit(quadCount * 4 * FLOATS_PER_VERTEX);
+        state.bindArrayBuffer(vbo[0]);
+        gl.glBufferData(GL2.GL_ARRAY_BUFFER, (long) quads.remaining() * Float.BYTES, quads, GL2.GL_STREAM_DRAW);
+        quads.limit(quads.capacity());
+
+        state.useProgram(0);
+        state.disable(GL2.GL_LIGHTING);
+        state.enable(GL2.GL_TEXTURE_2D);
+        state.enable(GL2.GL_ALPHA_TEST);
+        gl.glAlphaFunc(GL2.GL_GREATER, 0.5f);
+        state.bindTexture2D(texture[0]);
+        gl.glTexEnvi(GL2.GL_TEXTURE_ENV, GL2.GL_TEXTURE_ENV_MODE, GL2.GL_MODULATE);
+
+        state.enableClientState(GL2.GL_VERTEX_ARRAY);
+        state.enableClientState(GL2.GL_TEXTURE_COORD_ARRAY);
+        state.disableClientState(GL2.GL_NORMAL_ARRAY);
+        state.disableClientState(GL2.GL_COLOR_ARRAY);
+        state.color3f(light, light, light);
+        gl.glVertexPointer(3, GL2.GL_FLOAT, STRIDE, 0);
+        gl.glTexCoordPointer(2, GL2.GL_FLOAT, STRIDE, 3 * Float.BYTES);
+        gl.glDrawArrays(GL2.GL_QUADS, 0, quadCount * 4);
+
+        // Las mallas no usan textura: se apaga aquí para que no tengan que pedirlo
+        state.disable(GL2.GL_ALPHA_TEST);
+        state.disable(GL2.GL_TEXTURE_2D);
+    }
+
+    public void dispose(GL2 gl) {
+        if (texture[0] != 0) {
+            gl.glDeleteTextures(1, texture, 0);
+            texture[0] = 0;
+        }
+        if (vbo[0] != 0) {
+            gl.glDeleteBuffers(1, vbo, 0);
+            vbo[0] = 0;
+        }
+        ready = false;
+    }
+}
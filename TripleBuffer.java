@@ -0,0 +1,64 @@
+package main;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Triple búfer sin bloqueos para pasar un estado de un productor (la simulación,
+ * que publica una instantánea por paso fijo) a un consumidor (el dibujo, que
+ * toma la última una vez por cuadro). Hoy los dos corren en display(), pero el
+ * intercambio es seguro también con la simulación en otro hilo.
+ *
+ * Hay tres objetos: el productor escribe siempre en el suyo ({@link #back()}) y
+ * lo publica intercambiándolo con el intermedio; el consumidor, una vez por
+ * cuadro, cambia el suyo ({@link #front()}) por el intermedio si hay uno nuevo.
+ * Ninguno espera al otro y el consumidor nunca ve un estado a medio escribir.
+ *
+ * Solo admite un productor y un consumidor. El productor debe escribir el estado
+ * completo antes de cada publicación, porque el objeto que recibe puede ser
+ * cualquiera de los tres.
+ */
+public final class TripleBuffer<T> {
+
+    private static final int INDEX_MASK = 0b11;
+    private static final int NUEVO = 0b100; // el intermedio tiene datos que el consumidor no vio
+
+    private final Object[] slots = new Object[3];
+    private final AtomicInteger middle = new AtomicInteger(1);
+    private int back = 0;  // solo el productor
+    private int front = 2; // solo el consumidor
+
+    public TripleBuffer(Supplier<T> factory) {
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = factory.get();
+        }
+    }
+
+    /** Objeto donde escribe el productor. */
+    @SuppressWarnings("unchecked")
+    public T back() {
+        return (T) slots[back];
+    }
+
+    /** Hace visible lo escrito en {@link #back()}; el productor recibe otro objeto. */
+    public void publish() {
+        back = middle.getAndSet(back | NUEVO) & INDEX_MASK;
+    }
+
+    /**
+     * Toma la última publicación, si hay una nueva. Se llama una vez por cuadro
+     * desde el consumidor.
+     * @return true si {@link #front()} cambió.
+     */
+    public boolean update() {
+        if ((middle.get() & NUEVO) == 0) return false;
+        front = middle.getAndSet(front) & INDEX_MASK;
+        return true;
+    }
+
+    /** Copia estable para el consumidor hasta el siguiente {@link #update()}. */
+    @SuppressWarnings("unchecked")
+    public T front() {
+        return (T) slots[front];
+    }
+}
@@ -11,6 +11,8 @@ import com.jogamp.opengl.glu.GLU;
 
 import javax.swing.JFrame;
 import java.awt.Dimension;
+import java.awt.event.FocusAdapter;
+import java.awt.event.FocusEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.util.Random;
@@ -18,47 +20,75 @@ import java.util.Random;
 public class TwoDStarField extends GLCanvas implements GLEventListener, KeyListener {
 
     private static final String TITULO = "Trabajo Final de Gráficos: Campo Estelar 2D";
-    private static final int FPS = 60;
     private static final int WORLD_SIZE = 100; // Espacio 2D virtual 100x100
     
-    // Variables del jugador
+    // Variables del jugador (solo las toca la simulación)
     private float playerX;
     private float playerY;
-    private final float playerSpeed = 0.5f; 
+    private float prevPlayerX, prevPlayerY; // paso anterior, para interpolar
+    private float velX = 0.0f, velY = 0.0f; // unidades por segundo
+    // La simulación publica la nave de cada paso; el dibujo toma la última y la interpola en jugador
+    private final TripleBuffer<CameraState> nave = new TripleBuffer<>(CameraState::new);
+    private final CameraState jugador = new CameraState();
+    // Teclas pulsadas, escritas por el hilo de AWT
+    private final InputState entrada = new InputState();
+    private final float playerSpeed = 15.0f; // unidades por segundo (antes 0.5 por repetición de tecla)
+    private final float playerAcceleration = 100.0f; // unidades por segundo al cuadrado
     
     // Variables del campo de estrellas
-    private static final int STAR_COUNT = 300;
-    private final float[][] starPositions = new float[STAR_COUNT][3]; // x, y, velocidad
-    private final float starMinSpeed = 0.1f;
-    private final float starMaxSpeed = 0.8f;
+    static final int STAR_COUNT = 300;
+    private static final float STAR_MIN_SPEED = 6.0f; // unidades/segundo (antes 0.1 por cuadro a 60 FPS)
+    private static final float STAR_MAX_SPEED = 48.0f; // antes 0.8 por cuadro a 60 FPS
+    private final StarField stars;
+    
+    // SIMULACIÓN A PASO FIJO, independiente de los FPS de dibujo
+    private static final int SIM_HZ = 60;
+    private final FixedTimestep timestep = new FixedTimestep(SIM_HZ);
+    private float alpha = 0.0f;
+    
+    // MEDICIÓN POR FASES (F3 muestra/oculta el overlay)
+    private static final int FASE_UPDATE = 0, FASE_DIBUJO = 1;
+    private final FrameProfiler profiler = new FrameProfiler("update", "dibujo");
+    
+    // RITMO: sin resolución dinámica (la escena 2D es barata), solo baja la tasa objetivo si no llega
+    final FramePacer pacer = new FramePacer(FramePacer.Settings.fromSystemProperties());
+    
+    // GRABACIÓN (F9): PBOs en anillo y codificación en hilos de fondo
+    private final FrameCapture captura = new FrameCapture();
     
     private GLU glu; 
     private Random rand;
 
     public TwoDStarField(GLCapabilities capabilities) {
+        this(capabilities, STAR_COUNT);
+    }
+    
+    /** Escena con un número de estrellas propio; la usa Benchmark. */
+    TwoDStarField(GLCapabilities capabilities, int starCount) {
         super(capabilities);
-        
         this.rand = new Random();
+        this.stars = new StarField(starCount, WORLD_SIZE, STAR_MIN_SPEED, STAR_MAX_SPEED, rand);
         this.playerX = WORLD_SIZE / 2.0f;
         this.playerY = 10.0f; 
+        this.prevPlayerX = playerX;
+        this.prevPlayerY = playerY;
         
         this.setPreferredSize(new Dimension(800, 600));
         this.addGLEventListener(this);
         
         this.addKeyListener(this);
+        this.addFocusListener(new FocusAdapter() {
+            @Override
+            public void focusLost(FocusEvent e) {
+                // Sin foco no llegan los keyReleased: se sueltan todas las teclas
+                entrada.releaseAll();
+            }
+        });
         this.setFocusable(true);
         
         this.glu = new GLU();
     }
     
-    private void generateStarField() {
-        for (int i = 0; i < STAR_COUNT; i++) {
-            starPositions[i][0] = rand.nextFloat() * WORLD_SIZE; 
-            starPositions[i][1] = rand.nextFloat() * WORLD_SIZE; 
-            starPositions[i][2] = rand.nextFloat() * (starMaxSpeed - starMinSpeed) + starMinSpeed;
-        }
-    }
-
 
     // ============================= GLEventListener Implementación =============================
 
@@ -66,7 +96,10 @@ public class TwoDStarField extends GLCanvas implements GLEventListener, KeyListe
     public void init(GLAutoDrawable drawable) {
         GL2 gl = drawable.getGL().getGL2();
         
-        generateStarField();
+        stars.generate();
+        publicarJugador(); // el primer cuadro puede llegar antes del primer paso
+        pacer.init(drawable);
+        pacer.setScalingAvailable(false);
 
         gl.glDisable(GL2.GL_DEPTH_TEST);
         gl.glDisable(GL2.GL_CULL_FACE);
@@ -79,14 +112,36 @@ public class TwoDStarField extends GLCanvas implements GLEventListener, KeyListe
     public void display(GLAutoDrawable drawable) {
         // --- CORRECCIÓN CRÍTICA: Usar getGL2() para obtener el contexto ---
         GL2 gl = drawable.getGL().getGL2();
+        // Los cuadros saltados dejan en pantalla el anterior; la simulación se pone al día en el siguiente
+        if (!pacer.beginFrame()) return;
+        
+        profiler.beginFrame(gl);
+        
+        // --- Animación a paso fijo ---
+        profiler.begin(gl, FASE_UPDATE);
+        int steps = timestep.advance(System.nanoTime());
+        for (int i = 0; i < steps; i++) {
+            stars.update(timestep.getStepSeconds());
+            moverJugador(timestep.getStepSeconds());
+        }
+        alpha = timestep.getAlpha();
+        nave.update();
+        jugador.interpolate(nave.front(), alpha);
+        profiler.end(gl, FASE_UPDATE);
         
+        // --- Dibujo (interpolado entre los dos últimos pasos) ---
+        profiler.begin(gl, FASE_DIBUJO);
         gl.glClear(GL2.GL_COLOR_BUFFER_BIT);
         gl.glLoadIdentity();
         
-        // --- Animación y Dibujo ---
-        updateStarField();
         dibujarEstrellas(gl);
         dibujarJugador(gl);
+        profiler.end(gl, FASE_DIBUJO);
+        
+        profiler.drawOverlay(gl, drawable.getSurfaceHeight());
+        profiler.endFrame();
+        captura.capture(gl, drawable.getSurfaceWidth(), drawable.getSurfaceHeight());
+        pacer.endFrame(drawable);
     }
     
     @Override
@@ -105,46 +160,76 @@ public class TwoDStarField extends GLCanvas implements GLEventListener, KeyListe
     }
     
     @Override
-    public void dispose(GLAutoDrawable drawable) { /* Limpieza */ }
+    public void dispose(GLAutoDrawable drawable) {
+        GL2 gl = drawable.getGL().getGL2();
+        captura.dispose(gl);
+        profiler.dispose(gl);
+    }
 
 
     // ============================= MÉTODOS DE ANIMACIÓN Y DIBUJO =============================
 
-    private void updateStarField() {
-        for (int i = 0; i < STAR_COUNT; i++) {
-            // Mover la estrella hacia abajo (simulando que la nave avanza)
-            starPositions[i][1] -= starPositions[i][2]; 
-            
-            // Si la estrella sale por la parte inferior, resetearla en la parte superior
-            if (starPositions[i][1] < 0.0f) {
-                starPositions[i][1] = WORLD_SIZE;
-                starPositions[i][0] = rand.nextFloat() * WORLD_SIZE;
-            }
-        }
-    }
-
     private void dibujarEstrellas(GL2 gl) {
         gl.glPointSize(2.0f); 
 
         gl.glBegin(GL2.GL_POINTS);
         
-        for (int i = 0; i < STAR_COUNT; i++) {
-            float speed = starPositions[i][2];
-            
+        for (int i = 0; i < stars.getCount(); i++) {
             // Color más brillante para estrellas más rápidas (simula cercanía/profundidad)
-            float brightness = (speed - starMinSpeed) / (starMaxSpeed - starMinSpeed); 
-            float color = 0.5f + 0.5f * brightness; 
+            float color = 0.5f + 0.5f * stars.getBrightness(i); 
             
             gl.glColor3f(color, color, color);
-            gl.glVertex2f(starPositions[i][0], starPositions[i][1]);
+            gl.glVertex2f(stars.getX(i), stars.getY(i, alpha));
         }
         
         gl.glEnd();
     }
     
+    /**
+     * Mueve la nave con las teclas pulsadas en este paso (W, S, A, D, también en
+     * diagonal): la velocidad se acerca a la deseada con aceleración limitada.
+     */
+    private void moverJugador(float dt) {
+        prevPlayerX = playerX;
+        prevPlayerY = playerY;
+        
+        float wishX = entrada.axis(KeyEvent.VK_A, KeyEvent.VK_D);
+        float wishY = entrada.axis(KeyEvent.VK_S, KeyEvent.VK_W);
+        float length = (float) Math.sqrt(wishX * wishX + wishY * wishY);
+        if (length > 0.0f) {
+            wishX *= playerSpeed / length;
+            wishY *= playerSpeed / length;
+        }
+        
+        float maxDelta = playerAcceleration * dt;
+        velX = acercar(velX, wishX, maxDelta);
+        velY = acercar(velY, wishY, maxDelta);
+        
+        // Limitar movimiento dentro de la pantalla (con un pequeño margen); contra el borde se detiene
+        float margin = 2.0f;
+        float newX = playerX + velX * dt;
+        float newY = playerY + velY * dt;
+        if (newX < margin || newX > WORLD_SIZE - margin) velX = 0.0f;
+        if (newY < margin || newY > WORLD_SIZE - margin) velY = 0.0f;
+        playerX = Math.max(margin, Math.min(newX, WORLD_SIZE - margin));
+        playerY = Math.max(margin, Math.min(newY, WORLD_SIZE - margin));
+        publicarJugador();
+    }
+    
+    private static float acercar(float actual, float objetivo, float maxDelta) {
+        if (actual < objetivo) return Math.min(actual + maxDelta, objetivo);
+        return Math.max(actual - maxDelta, objetivo);
+    }
+    
+    /** Publica la nave del paso (anterior y actual) para el dibujo. */
+    private void publicarJugador() {
+        nave.back().setStep(prevPlayerX, prevPlayerY, 0.0f, playerX, playerY, 0.0f, 0.0f, 0.0f);
+        nave.publish();
+    }
+    
     private void dibujarJugador(GL2 gl) {
         gl.glPushMatrix();
-        gl.glTranslatef(playerX, playerY, 0.0f); 
+        gl.glTranslatef(jugador.x, jugador.y, 0.0f); 
 
         // Color del jugador (Azul/Cian brillante)
         gl.glColor3f(0.0f, 0.7f, 1.0f); 
@@ -167,30 +252,23 @@ public class TwoDStarField extends GLCanvas implements GLEventListener, KeyListe
     
     @Override
     public void keyPressed(KeyEvent e) {
-        float newX = playerX;
-        float newY = playerY;
-
-        if (e.getKeyCode() == KeyEvent.VK_W) {
-            newY += playerSpeed;
-        } 
-        else if (e.getKeyCode() == KeyEvent.VK_S) {
-            newY -= playerSpeed;
-        }
-        else if (e.getKeyCode() == KeyEvent.VK_A) { 
-            newX -= playerSpeed;
+        // El movimiento lo integra la simulación con las teclas que estén pulsadas
+        entrada.press(e.getKeyCode());
+        
+        // Overlay de tiempos por fase
+        if (e.getKeyCode() == KeyEvent.VK_F3) {
+            profiler.toggleOverlay();
         }
-        else if (e.getKeyCode() == KeyEvent.VK_D) { 
-            newX += playerSpeed;
+        // Grabación de la ventana (ver FrameCapture)
+        if (e.getKeyCode() == KeyEvent.VK_F9) {
+            captura.toggle();
         }
-        
-        // Limitar movimiento dentro del WORLD_SIZE (100x100)
-        float margin = 2.0f;
-        playerX = Math.max(margin, Math.min(newX, WORLD_SIZE - margin));
-        playerY = Math.max(margin, Math.min(newY, WORLD_SIZE - margin));
     }
 
     @Override
-    public void keyReleased(KeyEvent e) { /* No usado */ }
+    public void keyReleased(KeyEvent e) {
+        entrada.release(e.getKeyCode());
+    }
     
     @Override
     public void keyTyped(KeyEvent e) { /* No usado */ }
@@ -217,7 +295,7 @@ public class TwoDStarField extends GLCanvas implements GLEventListener, KeyListe
         JFrame frame = new JFrame(TITULO);
         frame.getContentPane().add(canvas);
         
-        final FPSAnimator animator = new FPSAnimator(canvas, FPS, true);
+        final FPSAnimator animator = new FPSAnimator(canvas, canvas.pacer.getMaxFps(), true);
 
         frame.setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE); 
         frame.pack(); 
@@ -230,6 +308,8 @@ public class TwoDStarField extends GLCanvas implements GLEventListener, KeyListe
             public void windowClosing(java.awt.event.WindowEvent windowEvent) {
                 if (animator.isStarted())
                     animator.stop();
+                canvas.destroy(); // dispose(): termina de escribir la grabación
+                canvas.profiler.writeCsvIfRequested();
                 System.exit(0);
             }
         });
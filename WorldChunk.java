@@ -0,0 +1,388 @@
+package main;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Una porción cuadrada del bosque (chunkSize x chunkSize) identificada por sus
+ * coordenadas enteras. El contenido depende solo de (semilla del mundo, cx, cz),
+ * así que un chunk descartado se puede regenerar idéntico más tarde.
+ *
+ * Las posiciones son inmutables una vez construido: se genera en un hilo de
+ * fondo y se publica al hilo de OpenGL a través de una cola concurrente. Lo
+ * único que cambia después son las manzanas recogidas, y solo desde el hilo de
+ * OpenGL.
+ *
+ * El suelo es la porción del terreno de alturas ({@link Terrain}) bajo el chunk;
+ * sus vértices se generan aquí, en el hilo de fondo, y los árboles se apoyan
+ * sobre la superficie.
+ *
+ * La generación se reparte con fork/join: la malla del suelo y los árboles van
+ * en tareas aparte, y los árboles se parten en bloques de {@link #TREES_PER_TASK}.
+ * Cada árbol saca sus números de su propio SplittableRandom (semilla del chunk
+ * e índice del árbol), así el resultado no depende de cuántos hilos haya ni del
+ * orden en que terminen. Desde un hilo del ForkJoinPool (ChunkStreamer) las
+ * tareas se quedan en ese pool; desde cualquier otro van al pool común.
+ *
+ * Para apuntar con un rayo hay una BVH sobre los troncos (cajas) y las manzanas
+ * (esferas). Primitivas 0..treeCount-1: troncos; treeCount + tree * applesPerTree + j: manzanas.
+ */
+public final class WorldChunk {
+
+    public static final int FLOATS_PER_POSITION = 3;
+
+    // Dimensiones del árbol usadas para las cajas envolventes
+    public static final float TREE_CELL_SIZE = 8.0f;
+    public static final float TREE_RADIUS = 1.5f;
+    public static final float TREE_HEIGHT = 5.0f;
+    // Lo que se puede apuntar: el tronco (el follaje deja ver las manzanas) y las manzanas
+    public static final float TRUNK_RADIUS = 0.2f;
+    public static final float TRUNK_HEIGHT = 2.0f;
+    public static final float APPLE_RADIUS = 0.15f;
+    // Rejilla fina para colisiones: unos pocos troncos por celda sea cual sea la densidad
+    private static final float TREES_PER_COLLISION_CELL = 2.0f;
+    private static final float MIN_COLLISION_CELL = 0.5f;
+    /** Cuánto bajan las faldas del borde del terreno (tapan las grietas entre niveles de detalle). */
+    public static final float TERRAIN_SKIRT_DEPTH = 2.0f;
+    /** Vértices del suelo de todo chunk: la rejilla más las cuatro faldas (ver MeshFactory.crearTerreno). */
+    public static final int TERRAIN_VERTICES =
+            (LevelOfDetail.TERRAIN_CELLS + 1) * (LevelOfDetail.TERRAIN_CELLS + 1) + 4 * (LevelOfDetail.TERRAIN_CELLS + 1);
+    /** Árboles (con sus manzanas) por tarea de fork/join; con menos no compensa repartir. */
+    static final int TREES_PER_TASK = 64;
+
+    public final int cx, cz;
+    public final float originX, originZ; // esquina mínima
+    public final int size;
+    public final int treeCount;
+    public final int applesPerTree;
+    public final float groundMinY, groundMaxY; // alturas extremas del suelo y de los pies de los árboles
+
+    // Posiciones en coordenadas de mundo (x, y, z) empaquetadas
+    private final FloatBuffer trees;
+    private final FloatBuffer apples;
+    private final FloatBuffer terrainVertices; // formato de Mesh, ver MeshFactory.crearTerreno
+    private final SpatialGrid grid;
+    private final SpatialGrid collisionGrid;
+    private final BoundingVolumeHierarchy bvh;
+    private final BoundingVolumeHierarchy.Intersector intersector = this::probarPrimitiva;
+    private int removedApples = 0;
+
+    private WorldChunk(int cx, int cz, int size, int treeCount, int applesPerTree,
+                       FloatBuffer trees, FloatBuffer apples, FloatBuffer terrainVertices,
+                       float groundMinY, float groundMaxY,
+                       SpatialGrid grid, SpatialGrid collisionGrid, BoundingVolumeHierarchy bvh) {
+        this.cx = cx;
+        this.cz = cz;
+        this.size = size;
+        this.originX = cx * (float) size - size / 2.0f;
+        this.originZ = cz * (float) size - size / 2.0f;
+        this.treeCount = treeCount;
+        this.applesPerTree = applesPerTree;
+        this.trees = trees;
+        this.apples = apples;
+        this.terrainVertices = terrainVertices;
+        this.groundMinY = groundMinY;
+        this.groundMaxY = groundMaxY;
+        this.grid = grid;
+        this.collisionGrid = collisionGrid;
+        this.bvh = bvh;
+    }
+
+    public static long key(int cx, int cz) {
+        return ((long) cx << 32) | (cz & 0xFFFFFFFFL);
+    }
+
+    public long key() {
+        return key(cx, cz);
+    }
+
+    /** Semilla propia del chunk, mezclada para que chunks vecinos no se parezcan. */
+    static long chunkSeed(long worldSeed, int cx, int cz) {
+        return mezclar(worldSeed ^ (cx * 0x9E3779B97F4A7C15L) ^ (cz * 0xC2B2AE3D27D4EB4FL));
+    }
+
+    /** Semilla del árbol i del chunk: no depende de cuántos árboles se generaron antes. */
+    static long treeSeed(long chunkSeed, int i) {
+        return mezclar(chunkSeed + (i + 1) * 0xD1B54A32D192ED03L);
+    }
+
+    private static long mezclar(long h) {
+        h ^= (h >>> 33);
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= (h >>> 33);
+        return h;
+    }
+
+    /**
+     * Genera el chunk (cx, cz). Mismo reparto que el antiguo generateWorld() de Main,
+     * pero restringido al cuadrado del chunk y con cada árbol sobre el terreno.
+     */
+    public static WorldChunk generate(long worldSeed, int cx, int cz, int size, int treeCount, int applesPerTree) {
+        final Terrain terrain = new Terrain(worldSeed);
+        final float originX = cx * (float) size - size / 2.0f;
+        final float originZ = cz * (float) size - size / 2.0f;
+
+        FloatBuffer trees = newBuffer(treeCount * FLOATS_PER_POSITION);
+        FloatBuffer apples = newBuffer(treeCount * applesPerTree * FLOATS_PER_POSITION);
+
+        // El suelo en otra tarea mientras este hilo reparte los árboles
+        ForkJoinTask<FloatBuffer> suelo = ForkJoinTask.adapt(() -> MeshFactory.crearTerreno(terrain, originX, originZ,
+                size, LevelOfDetail.TERRAIN_CELLS, TERRAIN_SKIRT_DEPTH).toBuffer()).fork();
+        new GenerarArboles(chunkSeed(worldSeed, cx, cz), terrain, originX, originZ, size, applesPerTree,
+                trees, apples, 0, treeCount).invoke();
+        FloatBuffer terrainVertices = suelo.join();
+
+        float groundMin = Float.MAX_VALUE;
+        float groundMax = -Float.MAX_VALUE;
+        int gridVertices = (LevelOfDetail.TERRAIN_CELLS + 1) * (LevelOfDetail.TERRAIN_CELLS + 1);
+        for (int v = 0; v < gridVertices; v++) {
+            float y = terrainVertices.get(v * Mesh.FLOATS_PER_VERTEX + 1);
+            groundMin = Math.min(groundMin, y);
+            groundMax = Math.max(groundMax, y);
+        }
+
+        for (int i = 0; i < treeCount; i++) {
+            float y = trees.get(i * 3 + 1);
+            groundMin = Math.min(groundMin, y);
+            groundMax = Math.max(groundMax, y);
+        }
+
+        return fromData(cx, cz, size, treeCount, applesPerTree, trees, apples, terrainVertices, groundMin, groundMax);
+    }
+
+    /**
+     * Árboles [from, to) del chunk con sus manzanas. Cada tarea escribe solo sus
+     * posiciones de los buffers (put absoluto), así que no comparten nada; el
+     * join publica lo escrito al hilo que llamó a generate.
+     */
+    private static final class GenerarArboles extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private static final float TOTAL_HEIGHT = 3.0f;
+        private static final float BASE_RADIUS = 1.5f;
+
+        private final long chunkSeed;
+        private final Terrain terrain;
+        private final float originX, originZ;
+        private final int size, applesPerTree;
+        private final FloatBuffer trees, apples;
+        private final int from, to;
+
+        GenerarArboles(long chunkSeed, Terrain terrain, float originX, float originZ, int size, int applesPerTree,
+                       FloatBuffer trees, FloatBuffer apples, int from, int to) {
+            this.chunkSeed = chunkSeed;
+            this.terrain = terrain;
+            this.originX = originX;
+            this.originZ = originZ;
+            this.size = size;
+            this.applesPerTree = applesPerTree;
+            this.trees = trees;
+            this.apples = apples;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > TREES_PER_TASK) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new GenerarArboles(chunkSeed, terrain, originX, originZ, size, applesPerTree,
+                                trees, apples, from, mid),
+                        new GenerarArboles(chunkSeed, terrain, originX, originZ, size, applesPerTree,
+                                trees, apples, mid, to));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                generarArbol(i);
+            }
+        }
+
+        private void generarArbol(int i) {
+            SplittableRandom rand = new SplittableRandom(treeSeed(chunkSeed, i));
+            float treeX = originX + nextFloat(rand) * size;
+            float treeZ = originZ + nextFloat(rand) * size;
+            float treeY = terrain.height(treeX, treeZ);
+            trees.put(i * 3, treeX);
+            trees.put(i * 3 + 1, treeY);
+            trees.put(i * 3 + 2, treeZ);
+
+            for (int j = 0; j < applesPerTree; j++) {
+                float y = nextFloat(rand) * TOTAL_HEIGHT * 0.8f;
+                float currentRadiusLimit = BASE_RADIUS * (1.0f - y / TOTAL_HEIGHT);
+
+                float angle = nextFloat(rand) * (float) (2.0 * Math.PI);
+                float r = nextFloat(rand) * currentRadiusLimit * 0.8f;
+
+                int base = (i * applesPerTree + j) * 3;
+                apples.put(base, treeX + (float) (r * Math.cos(angle)));
+                apples.put(base + 1, treeY + y + 2.0f);
+                apples.put(base + 2, treeZ + (float) (r * Math.sin(angle)));
+            }
+        }
+
+        /** Uniforme en [0, 1) con 24 bits, como Random.nextFloat. */
+        private static float nextFloat(SplittableRandom rand) {
+            return rand.nextInt(1 << 24) * 0x1.0p-24f;
+        }
+    }
+
+    /**
+     * Arma el chunk a partir de posiciones ya calculadas (recién generadas o leídas
+     * de un {@link WorldFile}); solo construye las rejillas y la BVH. Los buffers
+     * se usan tal cual, sin copiarlos.
+     */
+    static WorldChunk fromData(int cx, int cz, int size, int treeCount, int applesPerTree,
+                               FloatBuffer trees, FloatBuffer apples, FloatBuffer terrainVertices,
+                               float groundMin, float groundMax) {
+        float originX = cx * (float) size - size / 2.0f;
+        float originZ = cz * (float) size - size / 2.0f;
+        return new WorldChunk(cx, cz, size, treeCount, applesPerTree, trees, apples, terrainVertices,
+                groundMin, groundMax,
+                buildGrid(trees, treeCount, originX, originZ, size, TREE_CELL_SIZE, TREE_RADIUS,
+                        groundMin, groundMax + TREE_HEIGHT),
+                buildGrid(trees, treeCount, originX, originZ, size, collisionCellSize(size, treeCount),
+                        TRUNK_RADIUS, groundMin, groundMax + TRUNK_HEIGHT),
+                buildBvh(trees, apples, treeCount, treeCount * applesPerTree));
+    }
+
+    /** Lado de celda con unos TREES_PER_COLLISION_CELL troncos de media por celda. */
+    private static float collisionCellSize(int size, int treeCount) {
+        if (treeCount == 0) return TREE_CELL_SIZE;
+        float cell = size * (float) Math.sqrt(TREES_PER_COLLISION_CELL / treeCount);
+        return Math.max(MIN_COLLISION_CELL, Math.min(TREE_CELL_SIZE, cell));
+    }
+
+    private static SpatialGrid buildGrid(FloatBuffer trees, int treeCount, float originX, float originZ, int size,
+                                         float cellSize, float radius, float minY, float maxY) {
+        float[] xs = new float[treeCount];
+        float[] zs = new float[treeCount];
+        for (int i = 0; i < treeCount; i++) {
+            xs[i] = trees.get(i * 3);
+            zs[i] = trees.get(i * 3 + 2);
+        }
+        return new SpatialGrid(xs, zs, treeCount, originX, originZ, size,
+                cellSize, radius, minY, maxY);
+    }
+
+    private static BoundingVolumeHierarchy buildBvh(FloatBuffer trees, FloatBuffer apples, int treeCount, int appleCount) {
+        int count = treeCount + appleCount;
+        float[] bounds = new float[count * 6];
+        for (int i = 0; i < treeCount; i++) {
+            float x = trees.get(i * 3), y = trees.get(i * 3 + 1), z = trees.get(i * 3 + 2);
+            setBox(bounds, i, x - TRUNK_RADIUS, y, z - TRUNK_RADIUS, x + TRUNK_RADIUS, y + TRUNK_HEIGHT, z + TRUNK_RADIUS);
+        }
+        for (int a = 0; a < appleCount; a++) {
+            float x = apples.get(a * 3), y = apples.get(a * 3 + 1), z = apples.get(a * 3 + 2);
+            setBox(bounds, treeCount + a, x - APPLE_RADIUS, y - APPLE_RADIUS, z - APPLE_RADIUS,
+                    x + APPLE_RADIUS, y + APPLE_RADIUS, z + APPLE_RADIUS);
+        }
+        return new BoundingVolumeHierarchy(bounds, count);
+    }
+
+    private static void setBox(float[] bounds, int i, float minX, float minY, float minZ,
+                               float maxX, float maxY, float maxZ) {
+        bounds[i * 6] = minX;
+        bounds[i * 6 + 1] = minY;
+        bounds[i * 6 + 2] = minZ;
+        bounds[i * 6 + 3] = maxX;
+        bounds[i * 6 + 4] = maxY;
+        bounds[i * 6 + 5] = maxZ;
+    }
+
+    private static FloatBuffer newBuffer(int floats) {
+        return ByteBuffer.allocateDirect(Math.max(1, floats) * Float.BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+    }
+
+    public float treeX(int i) { return trees.get(i * 3); }
+    public float treeY(int i) { return trees.get(i * 3 + 1); }
+    public float treeZ(int i) { return trees.get(i * 3 + 2); }
+
+    public float appleX(int tree, int j) { return apples.get((tree * applesPerTree + j) * 3); }
+    public float appleY(int tree, int j) { return apples.get((tree * applesPerTree + j) * 3 + 1); }
+    public float appleZ(int tree, int j) { return apples.get((tree * applesPerTree + j) * 3 + 2); }
+
+    // ============================= Rayos y manzanas recogidas (hilo de OpenGL) =============================
+
+    /**
+     * Tronco o manzana más cercano que corta el rayo antes de ray.tMax, o -1.
+     * Si hay impacto, ray.tMax queda en su distancia.
+     */
+    public int raycast(Ray ray) {
+        return bvh.raycast(ray, intersector);
+    }
+
+    private float probarPrimitiva(int primitive, Ray ray) {
+        if (primitive < treeCount) {
+            float x = treeX(primitive), y = treeY(primitive), z = treeZ(primitive);
+            return ray.intersectBox(x - TRUNK_RADIUS, y, z - TRUNK_RADIUS,
+                    x + TRUNK_RADIUS, y + TRUNK_HEIGHT, z + TRUNK_RADIUS);
+        }
+        int base = (primitive - treeCount) * 3;
+        return ray.intersectSphere(apples.get(base), apples.get(base + 1), apples.get(base + 2), APPLE_RADIUS);
+    }
+
+    public boolean isApplePrimitive(int primitive) {
+        return primitive >= treeCount;
+    }
+
+    /** Índice de manzana (tree * applesPerTree + j) de una primitiva de manzana. */
+    public int appleOf(int primitive) {
+        return primitive - treeCount;
+    }
+
+    /** Quita la manzana del dibujo y de los rayos. @return false si ya estaba recogida. */
+    public boolean removeApple(int apple) {
+        if (!bvh.remove(treeCount + apple)) return false;
+        removedApples++;
+        return true;
+    }
+
+    public boolean isAppleRemoved(int tree, int j) {
+        return removedApples > 0 && bvh.isRemoved(treeCount + tree * applesPerTree + j);
+    }
+
+    public int getRemovedAppleCount() {
+        return removedApples;
+    }
+
+    /** Vértices del suelo para subir a un VBO (una vista nueva; el contenido no cambia). */
+    public FloatBuffer getTerrainVertices() {
+        return terrainVertices.duplicate();
+    }
+
+    /**
+     * Los mismos vértices sin crear una vista, para pasarlos a GL (que los lee
+     * sin mover la posición). No se puede cambiar ni la posición ni el contenido.
+     */
+    FloatBuffer sharedTerrainVertices() {
+        return terrainVertices;
+    }
+
+    public SpatialGrid getGrid() {
+        return grid;
+    }
+
+    /** Rejilla fina de troncos para la fase amplia de colisiones (ver {@link SpatialGrid#queryNear}). */
+    public SpatialGrid getCollisionGrid() {
+        return collisionGrid;
+    }
+
+    /** true si alguna parte del chunk (con los árboles que sobresalen del borde) entra en el volumen. */
+    public boolean isVisible(Frustum frustum) {
+        return frustum.intersectsBox(originX - TREE_RADIUS, groundMinY - TERRAIN_SKIRT_DEPTH, originZ - TREE_RADIUS,
+                originX + size + TREE_RADIUS, groundMaxY + TREE_HEIGHT, originZ + size + TREE_RADIUS);
+    }
+
+    /** Memoria aproximada que ocupa el chunk, para el presupuesto del LRU. */
+    public long sizeInBytes() {
+        long positions = (long) (trees.capacity() + apples.capacity() + terrainVertices.capacity()) * Float.BYTES;
+        long gridBytes = (grid.getCellCount() + collisionGrid.getCellCount() + 2 + 2L * treeCount) * Integer.BYTES;
+        return positions + gridBytes + bvh.sizeInBytes() + 128;
+    }
+}
@@ -0,0 +1,304 @@
+package main;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Mundo guardado en un archivo binario (little-endian) para no regenerarlo en
+ * cada arranque. Cubre un rectángulo de chunks; los de fuera se siguen generando
+ * a partir de la misma semilla.
+ *
+ * Formato, versión {@link #VERSION}:
+ *   cabecera de {@link #HEADER_BYTES} bytes:
+ *     magic "BOSQ", versión, semilla (long), lado del chunk, árboles por chunk,
+ *     manzanas por árbol, celdas del terreno, cx mínimo, cz mínimo, ancho, alto (ints)
+ *   un registro de tamaño fijo por chunk, fila por fila (cz, luego cx):
+ *     cx, cz (ints), suelo mínimo y máximo, árboles (x, y, z), manzanas (x, y, z)
+ *     y vértices del terreno en el formato de {@link Mesh} (floats)
+ *
+ * Al tamaño fijo, la posición de cada chunk se calcula sin índice. Cada chunk
+ * se lee mapeando solo su registro con un MappedByteBuffer: los FloatBuffer del
+ * chunk son vistas sobre el mapeo (no se copia nada al heap) y los vértices del
+ * terreno se suben al VBO directamente desde ahí. Lo único que se construye al
+ * cargar son las rejillas y la BVH del chunk.
+ *
+ * Uso para guardar un mundo:
+ *   java main.WorldFile --out=bosque.bin [--seed=N] [--radius=10] [--size=40] [--trees=30] [--apples=8]
+ * y para cargarlo: java -Dworld.file=bosque.bin main.Main
+ */
+public final class WorldFile implements Closeable {
+
+    private static final int MAGIC = 0x51534F42; // "BOSQ" en little-endian
+    public static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int RECORD_HEADER_BYTES = 16;
+
+    private final FileChannel channel;
+    private final long worldSeed;
+    private final int chunkSize;
+    private final int treesPerChunk;
+    private final int applesPerTree;
+    private final int minCx, minCz, width, depth;
+    private final long recordBytes;
+
+    private WorldFile(FileChannel channel, ByteBuffer header) {
+        this.channel = channel;
+        this.worldSeed = header.getLong(8);
+        this.chunkSize = header.getInt(16);
+        this.treesPerChunk = header.getInt(20);
+        this.applesPerTree = header.getInt(24);
+        this.minCx = header.getInt(32);
+        this.minCz = header.getInt(36);
+        this.width = header.getInt(40);
+        this.depth = header.getInt(44);
+        this.recordBytes = recordBytes(treesPerChunk, applesPerTree);
+    }
+
+    /** Floats de los vértices del terreno de un chunk. */
+    private static int terrainFloats() {
+        return WorldChunk.TERRAIN_VERTICES * Mesh.FLOATS_PER_VERTEX;
+    }
+
+    /** @throws ArithmeticException si no cabe en un long (solo con una cabecera dañada). */
+    private static long recordBytes(int trees, int apples) {
+        long floats = Math.addExact(Math.multiplyExact((long) trees * WorldChunk.FLOATS_PER_POSITION, 1L + apples),
+                terrainFloats());
+        return Math.addExact(RECORD_HEADER_BYTES, Math.multiplyExact(floats, Float.BYTES));
+    }
+
+    // ============================= Lectura =============================
+
+    /** Abre un mundo guardado y valida la cabecera. El archivo queda abierto hasta close(). */
+    public static WorldFile open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) { }
+            if (header.hasRemaining() || header.getInt(0) != MAGIC) {
+                throw new IOException(file + " no es un mundo guardado");
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException(file + ": versión " + header.getInt(4) + " no soportada (se esperaba " + VERSION + ")");
+            }
+            if (header.getInt(28) != LevelOfDetail.TERRAIN_CELLS) {
+                throw new IOException(file + ": terreno de " + header.getInt(28) + " celdas, se esperaban "
+                        + LevelOfDetail.TERRAIN_CELLS);
+            }
+            validarCabecera(file, header);
+            WorldFile world = new WorldFile(channel, header);
+            long expected = HEADER_BYTES + (long) world.width * world.depth * world.recordBytes;
+            if (channel.size() < expected) {
+                throw new IOException(file + " está truncado (" + channel.size() + " de " + expected + " bytes)");
+            }
+            return world;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Tamaños de la cabecera: un archivo dañado debe dar IOException (ChunkStreamer
+     * genera el chunk) y no desbordes ni excepciones de índices al mapear.
+     */
+    private static void validarCabecera(Path file, ByteBuffer header) throws IOException {
+        int chunkSize = header.getInt(16);
+        int trees = header.getInt(20);
+        int apples = header.getInt(24);
+        int minCx = header.getInt(32), minCz = header.getInt(36);
+        int width = header.getInt(40), depth = header.getInt(44);
+        if (chunkSize <= 0 || trees < 0 || apples < 0) {
+            throw new IOException(file + ": cabecera dañada (chunk " + chunkSize + ", " + trees + " árboles, "
+                    + apples + " manzanas)");
+        }
+        if (width <= 0 || depth <= 0 || (long) minCx + width - 1 > Integer.MAX_VALUE
+                || (long) minCz + depth - 1 > Integer.MAX_VALUE) {
+            throw new IOException(file + ": cabecera dañada (rectángulo " + minCx + ", " + minCz + " de "
+                    + width + "x" + depth + ")");
+        }
+        long record;
+        try {
+            record = recordBytes(trees, apples);
+            Math.addExact(HEADER_BYTES, Math.multiplyExact(Math.multiplyExact((long) width, depth), record));
+        } catch (ArithmeticException e) {
+            throw new IOException(file + ": cabecera dañada (tamaño fuera de rango)");
+        }
+        // Los registros se mapean y se cortan con índices int
+        if (record > Integer.MAX_VALUE) {
+            throw new IOException(file + ": registros de " + record + " bytes, el máximo es " + Integer.MAX_VALUE);
+        }
+    }
+
+    public boolean contains(int cx, int cz) {
+        return cx >= minCx && cx < (long) minCx + width && cz >= minCz && cz < (long) minCz + depth;
+    }
+
+    private long offsetOf(int cx, int cz) {
+        return HEADER_BYTES + ((long) (cz - minCz) * width + (cx - minCx)) * recordBytes;
+    }
+
+    /**
+     * Mapea el registro del chunk (cx, cz) y arma el chunk sobre el mapeo. Se
+     * puede llamar desde varios hilos a la vez.
+     */
+    public WorldChunk load(int cx, int cz) throws IOException {
+        if (!contains(cx, cz)) throw new IllegalArgumentException("Chunk fuera del archivo: " + cx + ", " + cz);
+        MappedByteBuffer record = channel.map(FileChannel.MapMode.READ_ONLY, offsetOf(cx, cz), recordBytes);
+        record.order(ByteOrder.LITTLE_ENDIAN);
+        if (record.getInt(0) != cx || record.getInt(4) != cz) {
+            throw new IOException("Registro del chunk " + cx + ", " + cz + " dañado");
+        }
+
+        int treeFloats = treesPerChunk * WorldChunk.FLOATS_PER_POSITION;
+        int appleFloats = treeFloats * applesPerTree;
+        int offset = RECORD_HEADER_BYTES;
+        FloatBuffer trees = vista(record, offset, treeFloats);
+        offset += treeFloats * Float.BYTES;
+        FloatBuffer apples = vista(record, offset, appleFloats);
+        offset += appleFloats * Float.BYTES;
+        FloatBuffer terrain = vista(record, offset, terrainFloats());
+
+        return WorldChunk.fromData(cx, cz, chunkSize, treesPerChunk, applesPerTree, trees, apples, terrain,
+                record.getFloat(8), record.getFloat(12));
+    }
+
+    /**
+     * Floats del mapeo como FloatBuffer. En máquinas little-endian es una vista
+     * (OpenGL lee el mismo orden de bytes); en las big-endian hay que copiar.
+     */
+    private static FloatBuffer vista(MappedByteBuffer record, int byteOffset, int floats) {
+        ByteBuffer slice = record.slice(byteOffset, floats * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        if (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN) {
+            return slice.asFloatBuffer();
+        }
+        FloatBuffer copy = ByteBuffer.allocateDirect(Math.max(1, floats) * Float.BYTES)
+                .order(ByteOrder.nativeOrder())
+                .asFloatBuffer();
+        copy.put(slice.asFloatBuffer()).flip();
+        return copy;
+    }
+
+    public long getWorldSeed() {
+        return worldSeed;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getTreesPerChunk() {
+        return treesPerChunk;
+    }
+
+    public int getApplesPerTree() {
+        return applesPerTree;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // Los mapeos ya entregados siguen siendo válidos después de cerrar el canal
+        channel.close();
+    }
+
+    // ============================= Escritura =============================
+
+    /**
+     * Genera los chunks de -radius a radius en cada eje y los guarda. Cada fila
+     * se genera en paralelo y se escribe en orden.
+     */
+    public static void write(Path file, long worldSeed, int radius, int chunkSize, int treesPerChunk,
+                             int applesPerTree) throws IOException {
+        int side = 2 * radius + 1;
+        long record = recordBytes(treesPerChunk, applesPerTree);
+        if (record > Integer.MAX_VALUE) throw new IllegalArgumentException("Chunk demasiado grande para un registro");
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putLong(worldSeed)
+                    .putInt(chunkSize).putInt(treesPerChunk).putInt(applesPerTree).putInt(LevelOfDetail.TERRAIN_CELLS)
+                    .putInt(-radius).putInt(-radius).putInt(side).putInt(side);
+            header.clear();
+            escribirCompleto(channel, header, 0);
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect((int) record).order(ByteOrder.LITTLE_ENDIAN);
+            long offset = HEADER_BYTES;
+            for (int cz = -radius; cz <= radius; cz++) {
+                final int row = cz;
+                WorldChunk[] chunks = IntStream.rangeClosed(-radius, radius).parallel()
+                        .mapToObj(cx -> WorldChunk.generate(worldSeed, cx, row, chunkSize, treesPerChunk, applesPerTree))
+                        .toArray(WorldChunk[]::new);
+                for (WorldChunk chunk : chunks) {
+                    buffer.clear();
+                    escribirChunk(chunk, buffer);
+                    buffer.flip();
+                    escribirCompleto(channel, buffer, offset);
+                    offset += record;
+                }
+            }
+        }
+    }
+
+    private static void escribirChunk(WorldChunk chunk, ByteBuffer out) {
+        out.putInt(chunk.cx).putInt(chunk.cz).putFloat(chunk.groundMinY).putFloat(chunk.groundMaxY);
+        for (int i = 0; i < chunk.treeCount; i++) {
+            out.putFloat(chunk.treeX(i)).putFloat(chunk.treeY(i)).putFloat(chunk.treeZ(i));
+        }
+        for (int i = 0; i < chunk.treeCount; i++) {
+            for (int j = 0; j < chunk.applesPerTree; j++) {
+                out.putFloat(chunk.appleX(i, j)).putFloat(chunk.appleY(i, j)).putFloat(chunk.appleZ(i, j));
+            }
+        }
+        FloatBuffer terrain = chunk.getTerrainVertices();
+        if (terrain.remaining() != terrainFloats()) {
+            throw new IllegalStateException("Terreno de " + terrain.remaining() + " floats, se esperaban " + terrainFloats());
+        }
+        while (terrain.hasRemaining()) out.putFloat(terrain.get());
+    }
+
+    private static void escribirCompleto(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) continue;
+            int eq = arg.indexOf('=');
+            options.put(eq < 0 ? arg.substring(2) : arg.substring(2, eq), eq < 0 ? "" : arg.substring(eq + 1));
+        }
+        String out = options.get("out");
+        if (out == null) {
+            System.err.println("Uso: java main.WorldFile --out=archivo [--seed=N] [--radius=10] [--size="
+                    + Main.FIELD_SIZE + "] [--trees=" + Main.NUM_TREES + "] [--apples=" + Main.APPLES_PER_TREE + "]");
+            System.exit(2);
+            return;
+        }
+        long seed = Long.parseLong(options.getOrDefault("seed", Long.toString(System.nanoTime())));
+        int radius = Integer.parseInt(options.getOrDefault("radius", "10"));
+        int size = Integer.parseInt(options.getOrDefault("size", Integer.toString(Main.FIELD_SIZE)));
+        int trees = Integer.parseInt(options.getOrDefault("trees", Integer.toString(Main.NUM_TREES)));
+        int apples = Integer.parseInt(options.getOrDefault("apples", Integer.toString(Main.APPLES_PER_TREE)));
+
+        long start = System.nanoTime();
+        write(Path.of(out), seed, radius, size, trees, apples);
+        long side = 2L * radius + 1;
+        System.out.printf(Locale.ROOT, "%s: %d chunks, %d árboles, semilla %d, %.1f MB en %.1f s%n", out,
+                side * side, side * side * trees, seed,
+                (HEADER_BYTES + side * side * recordBytes(trees, apples)) / (1024.0 * 1024.0),
+                (System.nanoTime() - start) / 1e9);
+    }
+}
@@ -0,0 +1,37 @@
+package main;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Ejecuta los benchmarks JMH de la parte de CPU (sin contexto OpenGL) con el
+ * perfilador de asignaciones activado (equivale a -prof gc), así cada resultado
+ * trae también gc.alloc.rate.norm en bytes por operación.
+ *
+ * Compilar jmh/*.java junto con las clases sin OpenGL de la raíz (StarField,
+ * StarFieldVector, MeshFactory, WorldChunk, Terrain, LevelOfDetail, SpatialGrid,
+ * BoundingVolumeHierarchy, Ray, Frustum, Atmosphere) con jmh-core y
+ * jmh-generator-annprocess en el classpath y --add-modules jdk.incubator.vector,
+ * y lanzar:
+ *
+ *   java main.BenchmarkRunner [regex de benchmarks, por defecto todos]
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        String include = args.length > 0 ? args[0] : "main\\..*Benchmark";
+
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .forks(1)
+                // Para que StarField use la API de vectores en el fork
+                .jvmArgsAppend("--add-modules", "jdk.incubator.vector")
+                .build();
+
+        new Runner(options).run();
+    }
+}
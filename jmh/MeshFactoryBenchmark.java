@@ -0,0 +1,51 @@
+package main;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generación de vértices con trigonometría: árbol (tronco y conos del follaje),
+ * esfera y círculo del sol/luna 2D. Es el trabajo que antes se repetía cada
+ * cuadro en dibujarTronco, dibujarCono y dibujarSolLuna.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MeshFactoryBenchmark {
+
+    @Param({"4", "10", "32"})
+    public int segments;
+
+    @Benchmark
+    public MeshFactory.Builder arbol() {
+        return MeshFactory.crearArbol(segments);
+    }
+
+    /** Incluye la copia al FloatBuffer directo que se sube al VBO. */
+    @Benchmark
+    public FloatBuffer arbolBuffer() {
+        return MeshFactory.crearArbol(segments).toBuffer();
+    }
+
+    @Benchmark
+    public MeshFactory.Builder esfera() {
+        return MeshFactory.crearEsfera(1.0f, segments * 2, segments, 1.0f, 1.0f, 1.0f);
+    }
+
+    @Benchmark
+    public float[] circulo() {
+        return MeshFactory.crearCirculo(8.0f, segments * 5);
+    }
+}
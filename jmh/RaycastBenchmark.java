@@ -0,0 +1,63 @@
+package main;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rayo de la cámara contra la BVH de un chunk (troncos y manzanas), como al
+ * apuntar en Main. Con 30000 árboles hay 240000 manzanas en el mismo chunk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class RaycastBenchmark {
+
+    private static final int RAYS = 1024;
+
+    @Param({"30", "3000", "30000"})
+    public int trees;
+
+    @Param({"8"})
+    public int applesPerTree;
+
+    @Param({"400"})
+    public int chunkSize;
+
+    private WorldChunk chunk;
+    private final Ray ray = new Ray();
+    private final float[] rays = new float[RAYS * 5]; // x, y, z, yaw, pitch
+    private int next = 0;
+
+    @Setup
+    public void setup() {
+        chunk = WorldChunk.generate(42L, 0, 0, chunkSize, trees, applesPerTree);
+        Random rand = new Random(7L);
+        for (int i = 0; i < RAYS; i++) {
+            rays[i * 5] = (rand.nextFloat() - 0.5f) * chunkSize;
+            rays[i * 5 + 1] = 0.5f + rand.nextFloat() * 4.0f;
+            rays[i * 5 + 2] = (rand.nextFloat() - 0.5f) * chunkSize;
+            rays[i * 5 + 3] = rand.nextFloat() * 360.0f;
+            rays[i * 5 + 4] = rand.nextFloat() * 60.0f - 30.0f;
+        }
+    }
+
+    @Benchmark
+    public int raycast() {
+        int i = (next++ & (RAYS - 1)) * 5;
+        ray.setFromCamera(rays[i], rays[i + 1], rays[i + 2], rays[i + 3], rays[i + 4], 30.0f);
+        return chunk.raycast(ray);
+    }
+}
@@ -0,0 +1,46 @@
+package main;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Un paso de simulación del campo de estrellas (lo que hacían los updateStarField
+ * de DynamicFlight2D y TwoDStarField) con distintos tamaños. Con
+ * -Dstars.vector=false en el fork se mide el bucle escalar.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class StarFieldBenchmark {
+
+    @Param({"300", "3000", "30000", "300000", "3000000"})
+    public int stars;
+
+    private StarField field;
+
+    @Setup
+    public void setup() {
+        // Mismos rangos de velocidad que DynamicFlight2D
+        field = new StarField(stars, 100.0f, 30.0f, 90.0f, new Random(42));
+        field.generate();
+    }
+
+    @Benchmark
+    public StarField update() {
+        field.update(1.0f / 60.0f);
+        return field;
+    }
+}
@@ -0,0 +1,43 @@
+package main;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generación de un chunk del bosque (posiciones de árboles y manzanas más la
+ * rejilla espacial), el sustituto del antiguo Main.generateWorld.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class WorldChunkBenchmark {
+
+    @Param({"30", "300", "3000"})
+    public int trees;
+
+    @Param({"8"})
+    public int applesPerTree;
+
+    @Param({"40"})
+    public int chunkSize;
+
+    private int next = 0;
+
+    @Benchmark
+    public WorldChunk generate() {
+        // Un chunk distinto cada vez, como al recorrer el mundo
+        int cx = next++;
+        return WorldChunk.generate(42L, cx, -cx, chunkSize, trees, applesPerTree);
+    }
+}